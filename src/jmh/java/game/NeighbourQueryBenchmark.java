@@ -0,0 +1,168 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the neighbour queries of {@link Level} with the query used before levels were stored in
+ * their {@link LevelLayout}, which allocated a new array every tick and caught an exception for
+ * every cell outside the level. The cube follows the border of the level, half of the time outside
+ * of it, which is the worst case for the old query. Run with {@code ./gradlew jmh}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NeighbourQueryBenchmark {
+
+  /** The number of cells on each side of the level. */
+  private static final int LEVEL_SIZE = 120;
+  /** The size of a block. */
+  private static final int BLOCK_SIZE = 50;
+  /** The number of positions of the trajectory. */
+  private static final int TRAJECTORY_LENGTH = 4096;
+
+  /** The level queried by the new methods. */
+  private Level level;
+  /** The grid of the old level, one block per non-empty cell. */
+  private Block[][] grid;
+  /** The buffer owned by the caller. */
+  private final NeighbourBuffer buffer = new NeighbourBuffer();
+  /** The x positions of the trajectory. */
+  private final double[] xs = new double[TRAJECTORY_LENGTH];
+  /** The y positions of the trajectory. */
+  private final double[] ys = new double[TRAJECTORY_LENGTH];
+  /** The next position of the trajectory. */
+  private int next = 0;
+
+  /** Creates a level with white borders and a few platforms, and the trajectory along its border. */
+  @Setup
+  public void setUp() {
+    StringBuilder levelData = new StringBuilder();
+    for (int i = 0; i < LEVEL_SIZE; i++) {
+      for (int j = 0; j < LEVEL_SIZE; j++) {
+        boolean border = i == 0 || j == 0 || i == LEVEL_SIZE - 1 || j == LEVEL_SIZE - 1;
+        levelData.append(border ? '1' : i % 7 == 0 && j % 5 != 0 ? '2' : '0');
+      }
+      levelData.append('\n');
+    }
+    LevelLayout layout = new LevelLayout("benchmark", "easy", levelData.toString());
+    this.level = new Level(layout, BLOCK_SIZE);
+
+    this.grid = new Block[LEVEL_SIZE][LEVEL_SIZE];
+    for (int i = 0; i < LEVEL_SIZE; i++) {
+      for (int j = 0; j < LEVEL_SIZE; j++) {
+        this.grid[i][j] = this.level.getBlock(j, i);
+      }
+    }
+
+    // Around the border, alternating between the inside and the outside of the level
+    double perimeter = 4.0 * LEVEL_SIZE * BLOCK_SIZE;
+    for (int k = 0; k < TRAJECTORY_LENGTH; k++) {
+      double distance = perimeter * k / TRAJECTORY_LENGTH;
+      double along = distance % (LEVEL_SIZE * BLOCK_SIZE);
+      double offset = (k % 2 == 0 ? 1 : -1) * BLOCK_SIZE / 2.0;
+      double far = LEVEL_SIZE * BLOCK_SIZE - offset;
+      switch ((int) (distance / (LEVEL_SIZE * BLOCK_SIZE))) {
+        case 0 -> {
+          this.xs[k] = along;
+          this.ys[k] = offset;
+        }
+        case 1 -> {
+          this.xs[k] = far;
+          this.ys[k] = along;
+        }
+        case 2 -> {
+          this.xs[k] = along;
+          this.ys[k] = far;
+        }
+        default -> {
+          this.xs[k] = offset;
+          this.ys[k] = along;
+        }
+      }
+    }
+  }
+
+  /**
+   * The query before levels were stored in their layout.
+   *
+   * @param x The x position
+   * @param y The y position
+   * @return The nine blocks neighbouring the position
+   */
+  private Block[] legacyNeighbourBlocks(double x, double y) {
+    int xIndex = (int) Math.floor(x / BLOCK_SIZE);
+    int yIndex = (int) Math.floor(y / BLOCK_SIZE);
+
+    Block[] neighbours = new Block[9];
+
+    for (int i = -1; i < 2; i++) {
+      for (int j = -1; j < 2; j++) {
+        try {
+          neighbours[(i + 1) * 3 + j + 1] = this.grid[yIndex + i][xIndex + j];
+        } catch (ArrayIndexOutOfBoundsException e) {
+          neighbours[(i + 1) * 3 + j + 1] = null;
+        }
+      }
+    }
+    return neighbours;
+  }
+
+  /**
+   * Advances along the trajectory.
+   *
+   * @return the index of the position
+   */
+  private int nextPosition() {
+    int position = this.next;
+    this.next = (position + 1) & (TRAJECTORY_LENGTH - 1);
+    return position;
+  }
+
+  /**
+   * A new array per query, exceptions for the cells outside the level.
+   *
+   * @param blackhole Consumes the blocks
+   */
+  @Benchmark
+  public void allocatingQuery(Blackhole blackhole) {
+    int position = this.nextPosition();
+    blackhole.consume(this.legacyNeighbourBlocks(this.xs[position], this.ys[position]));
+  }
+
+  /**
+   * The buffer owned by the level.
+   *
+   * @param blackhole Consumes the blocks
+   */
+  @Benchmark
+  public void levelBufferQuery(Blackhole blackhole) {
+    int position = this.nextPosition();
+    blackhole.consume(this.level.getNeighbourBlocks(this.xs[position], this.ys[position]));
+  }
+
+  /**
+   * A buffer owned by the caller, as used by the games.
+   *
+   * @param blackhole Consumes the blocks
+   */
+  @Benchmark
+  public void callerBufferQuery(Blackhole blackhole) {
+    int position = this.nextPosition();
+    blackhole.consume(
+        this.level.getNeighbourBlocks(this.xs[position], this.ys[position], this.buffer));
+  }
+}
@@ -0,0 +1,124 @@
+package util;
+
+import client.ClientProtocol;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import server.ServerProtocol;
+
+/**
+ * Compares {@link ProtocolTokenizer} and {@link ProtocolNames} with the former decoding of the
+ * commands: {@link String#split(String)}, {@link Enum#valueOf(Class, String)} (trying the server
+ * protocol, then the client one) and parsing the numbers of game updates from strings. The lines
+ * in {@code synthetic-traffic.txt} are written by hand, not recorded from a server: they imitate
+ * the mix of commands of a game of a few players, mostly position updates, with the arguments of
+ * the current protocol. Run with {@code ./gradlew jmh}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolTokenizerBenchmark {
+
+  /** The separator of the fields. */
+  private static final String SEPARATOR = ServerProtocol.SEPARATOR.toString();
+
+  /** The lines of the sample. */
+  private String[] lines;
+  /** The tokenizer reused for every line. */
+  private final ProtocolTokenizer tokenizer = new ProtocolTokenizer(SEPARATOR);
+
+  /**
+   * Reads the sample.
+   *
+   * @throws IOException If the sample can't be read
+   */
+  @Setup
+  public void setUp() throws IOException {
+    List<String> sample = new ArrayList<>();
+    try (InputStream stream = getClass().getResourceAsStream("/synthetic-traffic.txt");
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        sample.add(line);
+      }
+    }
+    this.lines = sample.toArray(new String[0]);
+  }
+
+  /**
+   * Decodes the sample as before.
+   *
+   * @param blackhole Consumes the decoded values
+   */
+  @Benchmark
+  public void splitAndValueOf(Blackhole blackhole) {
+    for (String line : this.lines) {
+      String[] command = line.split(SEPARATOR, -1);
+      Enum<?> protocol;
+      try {
+        protocol = ServerProtocol.valueOf(command[0]);
+      } catch (IllegalArgumentException e) {
+        protocol = ClientProtocol.valueOf(command[0]);
+      }
+      blackhole.consume(protocol);
+      if (protocol == ServerProtocol.POSITION_UPDATE) {
+        for (int i = 1; i <= 4; i++) {
+          blackhole.consume(Double.parseDouble(command[i]));
+        }
+        blackhole.consume(Integer.parseInt(command[5]));
+        blackhole.consume(Long.parseLong(command[6]));
+        blackhole.consume(Boolean.parseBoolean(command[7]));
+      } else {
+        blackhole.consume(command);
+      }
+    }
+  }
+
+  /**
+   * Decodes the sample with the tokenizer, creating strings only for the doubles.
+   *
+   * @param blackhole Consumes the decoded values
+   */
+  @Benchmark
+  public void tokenizer(Blackhole blackhole) {
+    for (String line : this.lines) {
+      this.tokenizer.tokenize(line);
+      CharSequence name = this.tokenizer.field(0);
+      Enum<?> protocol = ServerProtocol.fromName(name);
+      if (protocol == null) {
+        protocol = ClientProtocol.fromName(name);
+      }
+      blackhole.consume(protocol);
+      if (protocol == ServerProtocol.POSITION_UPDATE) {
+        for (int i = 1; i <= 4; i++) {
+          blackhole.consume(this.tokenizer.parseDouble(i));
+        }
+        blackhole.consume(this.tokenizer.parseInt(5));
+        blackhole.consume(this.tokenizer.parseLong(6));
+        blackhole.consume(this.tokenizer.parseBoolean(7));
+      } else {
+        blackhole.consume(this.tokenizer.size());
+      }
+    }
+  }
+}
@@ -1,4 +1,5 @@
 import client.Client;
+import java.util.Arrays;
 import javafx.application.Application;
 import server.ServerMain;
 
@@ -21,13 +22,14 @@ public class Main {
     if (args.length >= 1) {
       switch (args[0]) {
         case "server" -> {
-          if (args.length == 2) {
-            String port = args[1];
-            ServerMain.main(new String[] {port});
+          // The options after the mode are checked by ServerMain
+          if (args.length >= 2) {
+            ServerMain.main(Arrays.copyOfRange(args, 1, args.length));
           } else {
             LOGGER.error(
                 "Wrong number of arguments for option <server>. Please try again in the following format: "
-                    + "<server PORT>");
+                    + "<server PORT>, <server PORT MODE> or <server PORT MODE [deterministic]"
+                    + " [broadcast=POLICY]>");
           }
         }
         case "client" -> {
@@ -28,6 +28,10 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import server.Server;
 import server.ServerProtocol;
+import util.ListDelta;
+import util.ProtocolTokenizer;
+import util.SortHighscores;
+import util.VersionedList;
 
 /**
  * The client class. This class creates a window and handles the connection to the server. It also
@@ -37,8 +41,6 @@ public class Client extends Application {
 
   // Status of the client
   boolean connectedToServer = false;
-  boolean serverHasPonged = true;
-  int noAnswerCounter = 0;
   int receivedNullCounter = 0;
   boolean shuttingDown = false;
   /** The instance of the client. Set upon startup. */
@@ -53,6 +55,15 @@ public class Client extends Application {
 
   String lobbyName = "";
 
+  /** The lobbies and their clients, kept up to date by the deltas of the server. */
+  private final VersionedList lobbyInfoList = new VersionedList(-1);
+  /** The clients connected to the server, kept up to date by the deltas of the server. */
+  private final VersionedList clientInfoList = new VersionedList(-1);
+  /** The games played on the server, kept up to date by the deltas and sorted by score. */
+  private final VersionedList gameInfoList = new VersionedList(-1, SortHighscores.ORDER);
+  /** The full menu lists have been requested and haven't been received yet. */
+  private boolean menuListsRequested = false;
+
   // Server info
   private static int SERVER_PORT;
   private static String SERVER_IP;
@@ -61,6 +72,10 @@ public class Client extends Application {
   // Input and output streams
   private ServerIn inputSocket;
   private ServerOut outputSocket;
+  /** Pings the server and measures the round-trip time. */
+  ClientPingSender pingSender;
+  /** Measures the jitter of the position updates, recorded by {@link ServerIn}. */
+  final JitterMeter jitterMeter = new JitterMeter();
 
   // Controllers
   /** The login controller. */
@@ -316,9 +331,6 @@ public class Client extends Application {
     // Set controller
     this.menuController = loader.getController();
 
-    // Request the lobby list, the client list and the game list
-    this.requestMenuLists();
-
     // Play menu music
     this.playMenuMusic();
 
@@ -326,6 +338,17 @@ public class Client extends Application {
     this.menuScreen = true;
     this.lobbyScreen = false;
     this.connectedToServer = true;
+
+    // The lists are kept up to date by the deltas: they are only requested the first time
+    if (this.lobbyInfoList.isSynced()
+        && this.clientInfoList.isSynced()
+        && this.gameInfoList.isSynced()) {
+      this.showLobbyInfo();
+      this.showClientInfo();
+      this.showGameList();
+    } else {
+      this.requestMenuLists();
+    }
     LOGGER.info("Menu screen loaded.");
   }
 
@@ -361,9 +384,10 @@ public class Client extends Application {
   /**
    * Loads the game screen from the fxml file.
    *
+   * @param deterministic whether the server simulates the game in the deterministic mode
    * @throws IOException if the fxml file could not be found
    */
-  public void loadGameScreen() throws IOException {
+  public void loadGameScreen(boolean deterministic) throws IOException {
     this.LOGGER.info("Loading game screen.");
     FXMLLoader loader = new FXMLLoader(getClass().
             getResource("/layout/game/Game.fxml"));
@@ -373,7 +397,7 @@ public class Client extends Application {
     // Set controller
     this.gameController = loader.getController();
     this.gameController.setClient(this);
-    this.gameController.startGame();
+    this.gameController.startGame(deterministic);
 
     this.lobbyScreen = false;
     this.gameScreen = true;
@@ -421,19 +445,26 @@ public class Client extends Application {
       if (this.socket.isConnected()) {
         this.inputSocket = new ServerIn(socket, this);
         this.outputSocket = new ServerOut(socket, this);
+        // Announced before anything else, the server rejects clients speaking another version
+        this.outputSocket.sendToServer(
+            ClientProtocol.PROTOCOL_VERSION.toString()
+                + ServerProtocol.SEPARATOR
+                + ServerProtocol.VERSION);
 
         // Create threads for sockets
         Thread inputThread = new Thread(this.inputSocket);
         Thread outputThread = new Thread(this.outputSocket);
-        Thread pingSender = new Thread(new ClientPingSender(this));
+        this.pingSender = new ClientPingSender(this);
 
         // Start threads
         inputThread.start();
         outputThread.start();
-        pingSender.start();
+        this.pingSender.start();
 
         LOGGER.info("Connected to server.");
-        this.serverHasPonged = true;
+
+        // Game updates are smaller in binary
+        this.outputSocket.sendToServer(ClientProtocol.REQUEST_BINARY_PROTOCOL.toString());
 
         this.setUsername(username);
 
@@ -461,6 +492,42 @@ public class Client extends Application {
       this.outputSocket.sendToServer(command);
     }
   }
+
+  /**
+   * Shows the round-trip time to the server and the jitter of the updates in the game. Called by
+   * {@link ClientPingSender} on every pong.
+   *
+   * @param roundTripTime the smoothed round-trip time in milliseconds
+   */
+  void roundTripTimeUpdated(double roundTripTime) {
+    if (this.gameScreen) {
+      double jitter = this.getJitter() * 1000;
+      Platform.runLater(
+          () -> {
+            if (this.gameController != null) {
+              this.gameController.updateRoundTripTime(roundTripTime, jitter);
+            }
+          });
+    }
+  }
+
+  /**
+   * Returns the round-trip time to the server.
+   *
+   * @return the smoothed round-trip time in milliseconds, negative if it hasn't been measured yet
+   */
+  public double getRoundTripTime() {
+    return this.pingSender == null ? -1 : this.pingSender.getRoundTripTime();
+  }
+
+  /**
+   * Returns the jitter of the position updates sent by the server.
+   *
+   * @return the smoothed jitter in seconds
+   */
+  public double getJitter() {
+    return this.jitterMeter.getJitter();
+  }
   /**
    * Starts the client and sets the IP and the port
    *
@@ -610,6 +677,9 @@ public class Client extends Application {
       }
 
       // Close the socket and stop the threads
+      if (this.pingSender != null) {
+        this.pingSender.stop();
+      }
       try {
         this.socket.close();
       } catch (IOException e) {
@@ -618,6 +688,7 @@ public class Client extends Application {
 
       this.inputSocket.running = false;
       this.outputSocket.running = false;
+      LOGGER.info("Commands received from the server: " + ServerIn.COMMANDS);
     }
 
     try {
@@ -695,8 +766,9 @@ public class Client extends Application {
    */
   protected void updateLobbyList(String clientList) {
     if (this.isInLobby) {
-      this.lobbyController.updateLobbyList(
-          clientList.split(ServerProtocol.SUBSEPARATOR.toString()));
+      ProtocolTokenizer clients = new ProtocolTokenizer(ServerProtocol.SUBSEPARATOR.toString());
+      clients.tokenize(clientList);
+      this.lobbyController.updateLobbyList(clients.toArray());
     }
   }
 
@@ -705,12 +777,49 @@ public class Client extends Application {
    * or have been completed.
    * These are passed on to the game tab controller in the menu.
    *
+   * @param seq The sequence number of the list
    * @param gameList The list of games in the format from the server command
    */
-  protected void updateGameList(String gameList) {
+  protected void updateGameList(int seq, String gameList) {
+    this.gameInfoList.reset(
+        seq, ListDelta.split(gameList, ServerProtocol.SUBSEPARATOR.toString()));
+    this.menuListsRequested = false;
+    this.showGameList();
+  }
+
+  /**
+   * The client has received the changes to the list of games.
+   *
+   * @param seq The sequence number of the changes
+   * @param added The games which have been added or have changed
+   * @param removed The games which have been removed or have changed
+   */
+  protected void updateGameListDelta(int seq, String added, String removed) {
+    this.applyListDelta(this.gameInfoList, seq, added, removed);
+    this.showGameList();
+  }
+
+  /** Passes the list of games to the game tab controller if the menu is shown. */
+  private void showGameList() {
     if (this.menuScreen) {
-      String[] games = gameList.split(ServerProtocol.SUBSEPARATOR.toString());
-      this.menuController.setGameList(games);
+      this.menuController.setGameList(this.gameInfoList.getEntries().toArray(new String[0]));
+    }
+  }
+
+  /**
+   * Applies changes to one of the menu lists. If a change has been missed, the full lists are
+   * requested again.
+   *
+   * @param list The list to change
+   * @param seq The sequence number of the changes
+   * @param added The entries which have been added
+   * @param removed The entries which have been removed
+   */
+  private void applyListDelta(VersionedList list, int seq, String added, String removed) {
+    ListDelta delta = ListDelta.decode(added, removed, ServerProtocol.SUBSEPARATOR.toString());
+    if (!list.apply(seq, delta) && !this.menuListsRequested) {
+      LOGGER.info("Missed an update of the menu lists. Requesting the full lists.");
+      this.requestMenuLists();
     }
   }
 
@@ -718,6 +827,7 @@ public class Client extends Application {
    * The client has entered the menu screen and wants to update all the lists available to them.
    **/
   protected void requestMenuLists() {
+    this.menuListsRequested = true;
     String command = ClientProtocol.GET_FULL_MENU_LISTS.toString();
     this.outputSocket.sendToServer(command);
   }
@@ -785,12 +895,33 @@ public class Client extends Application {
    * given in the following format: <code>
    * lobbyName1 client1 client2 client3&#60;&#38;&#63;&#62;lobbyName2</code>
    *
+   * @param seq The sequence number of the list
    * @param command The command containing the list of lobbies and their respective clients
    */
-  public void updateLobbyInfo(String command) {
+  public void updateLobbyInfo(int seq, String command) {
+    this.lobbyInfoList.reset(
+        seq, ListDelta.split(command, ServerProtocol.SUBSEPARATOR.toString()));
+    this.menuListsRequested = false;
+    this.showLobbyInfo();
+  }
+
+  /**
+   * Applies the changes to the list of lobbies received from the server.
+   *
+   * @param seq The sequence number of the changes
+   * @param added The lobbies which have been added or have changed
+   * @param removed The lobbies which have been removed or have changed
+   */
+  public void updateLobbyInfoDelta(int seq, String added, String removed) {
+    this.applyListDelta(this.lobbyInfoList, seq, added, removed);
+    this.showLobbyInfo();
+  }
+
+  /** Passes the lobbies and their clients to the menu if it is shown. */
+  private void showLobbyInfo() {
     if (this.menuScreen) {
       ArrayList<ArrayList<String>> lobbyInfos = new ArrayList<>();
-      for (String lobbyInfo : command.split(ServerProtocol.SUBSEPARATOR.toString())) {
+      for (String lobbyInfo : this.lobbyInfoList.getEntries()) {
         // Split the lobby info into the lobby name and the clients
         String[] split = lobbyInfo.split(" ");
         ArrayList<String> lobbyInfoList = new ArrayList<>(Arrays.asList(split));
@@ -806,12 +937,31 @@ public class Client extends Application {
   /**
    * Updates the clientList in the server.
    *
+   * @param seq The sequence number of the list
    * @param command The command received from the server containing the list of clients
    */
-  public void updateClientInfo(String command) {
+  public void updateClientInfo(int seq, String command) {
+    this.clientInfoList.reset(seq, ListDelta.split(command, " "));
+    this.menuListsRequested = false;
+    this.showClientInfo();
+  }
+
+  /**
+   * Applies the changes to the list of clients received from the server.
+   *
+   * @param seq The sequence number of the changes
+   * @param added The clients which have been added or have changed
+   * @param removed The clients which have been removed or have changed
+   */
+  public void updateClientInfoDelta(int seq, String added, String removed) {
+    this.applyListDelta(this.clientInfoList, seq, added, removed);
+    this.showClientInfo();
+  }
+
+  /** Passes the list of clients to the menu if it is shown. */
+  private void showClientInfo() {
     if (this.menuScreen) {
-      String[] clients = command.split(" ");
-      this.menuController.setUsersList(clients);
+      this.menuController.setUsersList(this.clientInfoList.getEntries().toArray(new String[0]));
     }
   }
 
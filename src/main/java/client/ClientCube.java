@@ -5,18 +5,40 @@ import game.Colours;
 import game.Cube;
 import game.Vector2D;
 import javafx.scene.layout.Pane;
+import javafx.scene.shape.Rectangle;
 
 /** Represents the cube in the game. */
 public class ClientCube extends Cube {
+  /** The rectangle which represents the cube on the screen, see {@link #render}. */
+  public final Rectangle rectangle;
+
   /**
-   * Creates a cube.
+   * Creates a cube and adds its rectangle to the game pane.
    *
    * @param gameRoot The pane which the cube will be moving on
    * @param spawnPosition The position which the cube will spawn at
    */
   public ClientCube(Pane gameRoot, Vector2D spawnPosition) {
-    super(gameRoot, spawnPosition);
+    super(spawnPosition);
+    this.rectangle = new Rectangle(cubeSize, cubeSize);
     this.rectangle.setFill(Colours.WHITE.getHex());
+    this.rectangle.setTranslateX(spawnPosition.getX());
+    this.rectangle.setTranslateY(spawnPosition.getY());
+    gameRoot.getChildren().add(this.rectangle);
+  }
+
+  /**
+   * Draws the cube. The rectangle doesn't follow the simulated state directly: it is drawn slightly
+   * in the past, see {@link SnapshotBuffer}.
+   *
+   * @param x the x position to draw the cube at
+   * @param y the y position to draw the cube at
+   * @param angle the rotation to draw the cube with, in degrees
+   */
+  public void render(double x, double y, double angle) {
+    this.rectangle.setTranslateX(x);
+    this.rectangle.setTranslateY(y);
+    this.rectangle.setRotate(angle);
   }
 
   /**
@@ -9,8 +9,10 @@ import java.util.HashMap;
 
 import game.Block;
 import game.Colours;
+import game.CubeState;
 import game.GameConstants;
 import game.Level;
+import game.NeighbourBuffer;
 import game.Vector2D;
 import javafx.animation.AnimationTimer;
 import javafx.scene.image.Image;
@@ -20,9 +22,33 @@ import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.transform.Scale;
-
-/** The game class which the client uses to handle the game logic. */
+import server.ServerProtocol;
+
+/**
+ * The game class which the client uses to handle the game logic. The cube is simulated with the
+ * fixed ticks of the server, running ahead of the server by the round-trip time, so that the inputs
+ * of the player take effect immediately and reach the server by the tick at which they have been
+ * predicted. The states sent by the server are reconciled with the predicted ones, see {@link
+ * PredictionHistory}. In the deterministic mode, the state is also rounded after every tick, as on
+ * the server. The cube is drawn slightly in the past, between the states of the last ticks, see
+ * {@link SnapshotBuffer}.
+ */
 public class ClientGame {
+  /** The duration of a tick, the same as on the server. */
+  static final double TICK_DURATION = 1.0 / GameConstants.TICK_RATE.getValue();
+  /** The maximum number of ticks simulated in one frame to catch up with the clock. */
+  private static final int MAX_CATCH_UP_TICKS = 5;
+  /** The number of ticks by which the inputs should reach the server before their tick. */
+  private static final int TICK_MARGIN = 2;
+  /** The largest difference between the tick of the client and the intended one that is kept. */
+  private static final int MAX_TICK_DRIFT = 12;
+  /** The largest difference between a prediction and the state of the server that is ignored. */
+  private static final double TOLERANCE = 1e-6;
+  /** The drawing delay in multiples of the jitter, so that most corrections fall within it. */
+  private static final double JITTER_DELAY_FACTOR = 2;
+  /** The longest delay in seconds with which the cube is drawn, however large the jitter. */
+  private static final double MAX_DELAY = 0.1;
+
   /** The keys that are pressed. */
   public HashMap<KeyCode, Boolean> keys = new HashMap<>();
 
@@ -38,7 +64,33 @@ public class ClientGame {
 
   /** The level that is currently being played. */
   public Level level;
+  /** The rectangles drawing the blocks of the level, null where there is no block. */
+  private Rectangle[][] blockRectangles = new Rectangle[0][0];
   private ClientCube player;
+  /** The blocks around the cube, refilled every frame. */
+  private final NeighbourBuffer neighbourBuffer = new NeighbourBuffer();
+
+  /** Whether the state of the cube is rounded to fixed-point values after every tick. */
+  private final boolean deterministic;
+  /** The tick which the cube has been simulated up to. */
+  private long tick = 0;
+  /** Time which has passed but hasn't been simulated yet. */
+  private double accumulator = 0;
+  /** Whether the tick has been aligned with the server since the level has been loaded. */
+  private boolean synchronised = false;
+
+  /** The states of the last ticks, from which the cube is drawn. */
+  private final SnapshotBuffer snapshots = new SnapshotBuffer();
+  /** The predicted states and the inputs of the player. */
+  private final PredictionHistory history = new PredictionHistory();
+  /** The sequence number of the last input of the player. */
+  private int inputSequence = 0;
+  /** Whether the server has applied an input at another tick than predicted. */
+  private boolean replayNeeded = false;
+  /** The tick of the last jump reported by the server and not reconciled yet, -1 if none. */
+  private long serverJumpTick = -1;
+  /** The rotation point of the last jump reported by the server. */
+  private final Vector2D serverRotationPoint = new Vector2D(0, 0);
 
   private ControllerManager controllers;
 
@@ -49,8 +101,20 @@ public class ClientGame {
    * @param backgroundPane the pane on which the game is displayed
    */
   public ClientGame(Client client, Pane backgroundPane) {
+    this(client, backgroundPane, false);
+  }
+
+  /**
+   * Creates a new game, optionally in the deterministic mode.
+   *
+   * @param client the client that is playing the game
+   * @param backgroundPane the pane on which the game is displayed
+   * @param deterministic whether the server simulates the game in the deterministic mode
+   */
+  public ClientGame(Client client, Pane backgroundPane, boolean deterministic) {
     this.client = client;
     this.appRoot = backgroundPane;
+    this.deterministic = deterministic;
   }
 
   /**
@@ -64,7 +128,7 @@ public class ClientGame {
 
     if (currState.isConnected) {
       if (currState.aJustPressed || currState.bJustPressed || currState.xJustPressed || currState.yJustPressed) {
-        client.sendGameCommand(ClientProtocol.SPACE_BAR_PRESSED.toString());
+        this.pressSpaceBar();
       }
     }
     this.gameUpdate(dt);
@@ -74,11 +138,55 @@ public class ClientGame {
   private void gameUpdate(double dt) {
     this.analyseKeys();
 
-    if (player != null) {
-      Block[] neighbourBlocks =
-          this.level.getNeighbourBlocks(player.getPosition().getX(), player.getPosition().getY());
-      player.move(neighbourBlocks, dt);
+    if (player == null) {
+      return;
+    }
+
+    this.accumulator += dt;
+    int ticks = 0;
+    while (this.accumulator >= TICK_DURATION && ticks < MAX_CATCH_UP_TICKS) {
+      this.step();
+      this.accumulator -= TICK_DURATION;
+      ticks++;
+    }
+    // Drop the backlog rather than freezing the frame, the tick is realigned by the next update
+    this.accumulator %= TICK_DURATION;
+    this.render();
+  }
+
+  /**
+   * Draws the cube at the current time minus the delay of the snapshots, which grows with the
+   * jitter of the updates of the server.
+   */
+  private void render() {
+    this.snapshots.setDelay(
+        Math.min(
+            Math.max(SnapshotBuffer.DEFAULT_DELAY, JITTER_DELAY_FACTOR * client.getJitter()),
+            MAX_DELAY));
+    double time = (this.tick + this.accumulator / TICK_DURATION) * TICK_DURATION;
+    if (this.snapshots.sample(time - this.snapshots.getDelay())) {
+      player.render(this.snapshots.getX(), this.snapshots.getY(), this.snapshots.getRotation());
+    }
+  }
+
+  /** Simulates one tick and saves the predicted state. */
+  private void step() {
+    Block[] neighbourBlocks =
+        this.level.getNeighbourBlocks(
+            player.getPosition().getX(), player.getPosition().getY(), this.neighbourBuffer);
+    player.move(neighbourBlocks, TICK_DURATION);
+    if (deterministic) {
+      player.quantise();
     }
+    this.tick++;
+    this.history.save(this.tick, player);
+    this.snapshots.add(
+        this.tick * TICK_DURATION,
+        player.getPosition().getX(),
+        player.getPosition().getY(),
+        player.getVelocity().getX(),
+        player.getVelocity().getY(),
+        player.getRotation());
   }
 
   /**
@@ -89,29 +197,148 @@ public class ClientGame {
     // Possibility to add a pause method
     if (spaceBarPressed()) {
       if (!jumpRequestSent) {
-        client.sendGameCommand(ClientProtocol.SPACE_BAR_PRESSED.toString());
+        this.pressSpaceBar();
         jumpRequestSent = true;
       }
     }
   }
+
+  /**
+   * Sends a space bar input to the server and predicts its effect with the rules of the server, see
+   * {@link game.Cube#applyInput(Color)}. The input is tagged with a sequence number and the current
+   * tick, at which the server applies it too if it arrives in time.
+   */
+  private void pressSpaceBar() {
+    this.inputSequence++;
+    client.sendGameCommand(
+        ClientProtocol.SPACE_BAR_PRESSED.toString()
+            + ServerProtocol.SEPARATOR
+            + this.inputSequence
+            + ServerProtocol.SEPARATOR
+            + this.tick);
+
+    Color colour = client.getColour();
+    if (player != null && synchronised && colour != null) {
+      this.history.addInput(this.inputSequence, this.tick);
+      player.applyInput(colour);
+    }
+  }
+
+  /**
+   * The server has applied an input of the player. If it has been applied at another tick than
+   * predicted, the cube is simulated again with the next state of the server.
+   *
+   * @param sequence the sequence number of the input
+   * @param appliedTick the tick at which the server has applied it
+   */
+  public void inputAcknowledged(int sequence, long appliedTick) {
+    if (this.history.acknowledge(sequence, appliedTick)) {
+      this.replayNeeded = true;
+    }
+  }
+
   /**
-   * update the position of the player
+   * Reconciles the cube with the state sent by the server. If the state predicted for that tick
+   * matches, nothing changes. Otherwise, the cube is rewound to that tick, corrected and simulated
+   * again up to the current tick, applying the inputs which the server hasn't included yet. If the
+   * tick hasn't been predicted, the tick of the client is aligned with the server first.
    *
-   * @param positionX - the x component of the cube's position
-   * @param positionY - the y component of the cube's position
-   * @param velocityX - the x component of the cube's velocity
-   * @param velocityY - the y component of the cube's velocity
-   * @param accelerationAngle - the angle of the acceleration
+   * @param positionX the x coordinate of the cube
+   * @param positionY the y coordinate of the cube
+   * @param velocityX the x component of the velocity
+   * @param velocityY the y component of the velocity
+   * @param accelerationAngle the angle of the acceleration in degrees
+   * @param serverTick the tick of the server at which the cube was in this state
+   * @param moving whether the cube has been started
    */
   protected void updatePosition(
-      String positionX,
-      String positionY,
-      String velocityX,
-      String velocityY,
-      String accelerationAngle) {
-    player.setPositionTo(Double.parseDouble(positionX), Double.parseDouble(positionY));
-    player.setVelocityTo(Double.parseDouble(velocityX), Double.parseDouble(velocityY));
-    player.onlySetAccelerationAngle(Integer.parseInt(accelerationAngle));
+      double positionX,
+      double positionY,
+      double velocityX,
+      double velocityY,
+      int accelerationAngle,
+      long serverTick,
+      boolean moving) {
+    if (player == null) {
+      return;
+    }
+    long target = serverTick + this.tickLead();
+    CubeState predicted = this.synchronised ? this.history.get(serverTick) : null;
+
+    long end = this.tick;
+    if (predicted == null || Math.abs(this.tick - target) > MAX_TICK_DRIFT) {
+      // Not predicted: start again from the state of the server
+      end = target;
+      this.synchronised = true;
+      this.snapshots.clear();
+    } else if (!this.replayNeeded
+        && this.serverJumpTick < 0
+        && predicted.matches(
+            positionX,
+            positionY,
+            velocityX,
+            velocityY,
+            accelerationAngle,
+            moving,
+            deterministic ? 0 : TOLERANCE)) {
+      this.history.discardInputsBefore(serverTick);
+      return;
+    } else {
+      predicted.restore(player);
+    }
+
+    player.setPositionTo(positionX, positionY);
+    player.setVelocityTo(velocityX, velocityY);
+    player.onlySetAccelerationAngle(accelerationAngle);
+    player.moving = moving;
+    if (this.serverJumpTick >= 0 && this.serverJumpTick < serverTick) {
+      player.rotationPoint = this.serverRotationPoint.copy();
+      player.jumping = true;
+      player.rotating = true;
+      player.canRotate = true;
+      this.serverJumpTick = -1;
+    }
+    this.replayNeeded = false;
+    this.replay(serverTick, end);
+  }
+
+  /**
+   * Simulates the cube again from the state of the server, applying the inputs of the player which
+   * the server hasn't included in that state.
+   *
+   * @param from the tick of the state of the server
+   * @param to the tick to simulate up to
+   */
+  private void replay(long from, long to) {
+    Color colour = client.getColour();
+    this.history.discardInputsBefore(from);
+    this.history.save(from, player);
+    this.tick = from;
+    while (this.tick < to) {
+      this.history.applyInputs(this.tick, player, colour);
+      this.step();
+    }
+    this.history.applyInputs(this.tick, player, colour);
+  }
+
+  /**
+   * Returns the number of ticks by which the client runs ahead of the states it receives: the
+   * round-trip time, so that its inputs reach the server before their tick.
+   *
+   * @return the lead in ticks
+   */
+  private int tickLead() {
+    double roundTripTime = Math.max(client.getRoundTripTime(), 0) / 1000;
+    return (int) Math.ceil(roundTripTime / TICK_DURATION) + TICK_MARGIN;
+  }
+
+  /**
+   * Returns the tick which the cube has been simulated up to.
+   *
+   * @return the current tick
+   */
+  public long getTick() {
+    return this.tick;
   }
 
   /** Returns whether a key has been pressed by the user or not. */
@@ -155,7 +382,13 @@ public class ClientGame {
   public void loadLevel(String levelPath) {
     this.gameRoot.getChildren().clear();
 
-    this.level = new Level(levelPath, 50, gameRoot);
+    this.level = new Level(levelPath, 50);
+    this.history.clear();
+    this.synchronised = false;
+    this.serverJumpTick = -1;
+    this.replayNeeded = false;
+    this.snapshots.clear();
+    this.drawLevel();
     this.client.requestCriticalBlocks();
 
     try {
@@ -173,6 +406,43 @@ public class ClientGame {
     this.setGameRootScale();
   }
 
+  /** Creates a rectangle for every block of the level and adds it to the game root. */
+  private void drawLevel() {
+    blockRectangles = new Rectangle[level.getBlockHeight()][level.getBlockWidth()];
+
+    for (int y = 0; y < level.getBlockHeight(); y++) {
+      for (int x = 0; x < level.getBlockWidth(); x++) {
+        Block block = level.getBlock(x, y);
+        if (block != null) {
+          Rectangle rectangle =
+              new Rectangle(block.getX(), block.getY(), block.getSize(), block.getSize());
+          if (block.getColour() != null) {
+            rectangle.setFill(block.getColour());
+          }
+          blockRectangles[y][x] = rectangle;
+          gameRoot.getChildren().add(rectangle);
+        }
+      }
+    }
+  }
+
+  /**
+   * Fills the rectangles of the blocks with the colours of their platforms. Called once the colours
+   * of the platforms have been received.
+   */
+  public void drawBlockColours() {
+    for (int y = 0; y < blockRectangles.length; y++) {
+      for (int x = 0; x < blockRectangles[y].length; x++) {
+        if (blockRectangles[y][x] != null) {
+          Color colour = level.getColour(x, y);
+          if (colour != null) {
+            blockRectangles[y][x].setFill(colour);
+          }
+        }
+      }
+    }
+  }
+
   /** Loads the player */
   private void load_player(Vector2D spawnPosition) {
     player = new ClientCube(gameRoot, spawnPosition); // creates the player
@@ -248,14 +518,15 @@ public class ClientGame {
   }
 
   /**
-   * Set the colour of a block and its neighbours to a given colour.
+   * Set the colour of the platform of a block. The rectangles are filled by {@link
+   * #drawBlockColours()}.
    *
    * @param x the x index in the grid
    * @param y the y index in the grid
-   * @param colour the colour to set the block to
+   * @param colour the colour to set the platform to
    */
   public void setBlockColour(int x, int y, Color colour) {
-    this.level.setNeighbourColours(x, y, colour);
+    this.level.setPlatformColour(x, y, colour);
   }
 
   /** The player has moved. Get the position at which the level should be drawn. */
@@ -269,18 +540,17 @@ public class ClientGame {
   }
 
   /**
-   * The cube has successfully jumped. The client has now just been informed of the coordinates of
-   * the point around which the cube should rotate.
+   * The cube has successfully jumped. The jump is applied when the position update sent with it is
+   * reconciled, see {@link #updatePosition(double, double, double, double, int, long,
+   * boolean)}.
    *
    * @param rotationPointX the x coordinate of the rotation point
    * @param rotationPointY the y coordinate of the rotation point
+   * @param tick the tick of the server at which the cube jumped, followed by a position update
    */
-  public void updateJump(String rotationPointX, String rotationPointY) {
-    player.rotationPoint =
-        new Vector2D(Double.parseDouble(rotationPointX), Double.parseDouble(rotationPointY));
-    player.jumping = true;
-    player.rotating = true;
-    player.canRotate = true;
+  public void updateJump(double rotationPointX, double rotationPointY, long tick) {
+    this.serverRotationPoint.set(rotationPointX, rotationPointY);
+    this.serverJumpTick = tick;
   }
 
   /** Sets the game root size such that a fixed number of blocks are seen on the screen. */
@@ -1,45 +1,111 @@
 package client;
 
-/** Class that sends pings to the server. */
-public class ClientPingSender implements Runnable {
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-  Client client;
-  boolean running = true;
+/**
+ * Sends pings to the server at a fixed rate from a scheduled thread, which sleeps between two
+ * pings. The pongs of the server are used to measure the round-trip time to the server.
+ */
+public class ClientPingSender {
+
+  /** The time between two pings in milliseconds. */
+  static final long PING_INTERVAL_MILLIS = 300;
+  /** The number of intervals a ping may stay unanswered before the client logs out. */
+  private static final int MAX_UNANSWERED_INTERVALS = 4;
+  /** The weight of a new measurement in the smoothed round-trip time (as in TCP). */
+  private static final double ROUND_TRIP_GAIN = 0.125;
+
+  private final Client client;
+  /** The thread sending the pings. */
+  private final ScheduledExecutorService scheduler;
+
+  /** When the unanswered ping was sent, as given by {@link System#nanoTime()}. */
+  private long pingSentAt;
+  /** A ping has been sent and its pong hasn't been received yet. */
+  private boolean awaitingPong = false;
+  /** The number of intervals the current ping has been unanswered. */
+  private int unansweredIntervals = 0;
+  /** The smoothed round-trip time in milliseconds, negative until the first pong. */
+  private volatile double roundTripTime = -1;
 
   /**
-   * Initialises the ClientPingSender by setting the client
-   * @param client The client to send pings to
+   * Initialises the ClientPingSender. The pings are only sent once it is started.
+   *
+   * @param client The client to send pings for
    */
   public ClientPingSender(Client client) {
     this.client = client;
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            task -> {
+              Thread thread = new Thread(task, "client-ping");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** Starts sending pings every {@link #PING_INTERVAL_MILLIS} milliseconds. */
+  public void start() {
+    this.scheduler.scheduleAtFixedRate(
+        this::tick, PING_INTERVAL_MILLIS, PING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops sending pings. Called when the client exits. */
+  public void stop() {
+    this.scheduler.shutdownNow();
+  }
+
+  /**
+   * Sends a ping if the previous one has been answered. If the server hasn't answered for {@link
+   * #MAX_UNANSWERED_INTERVALS} intervals, the client logs out.
+   */
+  private void tick() {
+    synchronized (this) {
+      if (!this.awaitingPong) {
+        this.awaitingPong = true;
+        this.pingSentAt = System.nanoTime();
+      } else if (++this.unansweredIntervals <= MAX_UNANSWERED_INTERVALS) {
+        return;
+      } else {
+        System.out.println(
+            "[CLIENT_PING_SENDER] Server didn't respond to pings. Logging out.");
+        this.stop();
+        this.client.exit();
+        return;
+      }
+    }
+    this.client.ping();
   }
 
   /**
-   * Method from Runnable interface.
-   * Sends a ping to the server every 300ms. If the server doesn't respond to 3 pings, the client
-   * logs out.
+   * Called by {@link ServerIn} as soon as a pong has been received, before it is handed to the
+   * JavaFX thread, so that the round-trip time doesn't include the time spent waiting for it.
    */
-  public void run() {
-    long currentTime = System.currentTimeMillis();
-
-    while (this.running) {
-      if (System.currentTimeMillis() - currentTime > 300) {
-        currentTime = System.currentTimeMillis();
-
-        if (client.serverHasPonged) {
-          client.serverHasPonged = false;
-          client.ping();
-        } else {
-          if (client.noAnswerCounter > 3) {
-            System.out.println(
-                    "[CLIENT_PING_SENDER] Server didn't respond to 3 pings. Logging out.");
-            this.client.exit();
-          } else {
-            client.noAnswerCounter++;
-            client.serverHasPonged = true;
-          }
-        }
+  public void pongReceived() {
+    double measured;
+    synchronized (this) {
+      if (!this.awaitingPong) {
+        return;
       }
+      this.awaitingPong = false;
+      this.unansweredIntervals = 0;
+      measured = (System.nanoTime() - this.pingSentAt) / 1e6;
     }
+
+    double previous = this.roundTripTime;
+    this.roundTripTime =
+        previous < 0 ? measured : previous + ROUND_TRIP_GAIN * (measured - previous);
+    this.client.roundTripTimeUpdated(this.roundTripTime);
+  }
+
+  /**
+   * Returns the smoothed round-trip time to the server.
+   *
+   * @return the round-trip time in milliseconds, negative if it hasn't been measured yet
+   */
+  public double getRoundTripTime() {
+    return this.roundTripTime;
   }
 }
@@ -1,6 +1,7 @@
 package client;
 
 import server.ServerProtocol;
+import util.ProtocolNames;
 
 /**
  * The Client protocol for Hues in the Air
@@ -47,8 +48,11 @@ public enum ClientProtocol {
   CLIENT_PING(0),
   /** Signal sent to server upon receiving a PING from the server. */
   CLIENT_PONG(0),
-  /** Client wants to jump */
-  SPACE_BAR_PRESSED(0),
+  /**
+   * Client wants to jump (or to start the cube), followed by the sequence number of the input and
+   * the tick at which the client has predicted it.
+   */
+  SPACE_BAR_PRESSED(2),
   /** Client game is opened and is ready to start */
   READY_UP(0),
   /** Client has loaded the level successfully, wants to request the critical blocks */
@@ -60,7 +64,21 @@ public enum ClientProtocol {
   /** The clients in game want to become immortal. */
   SET_IMMORTAL(0),
   /** The clients in game want to be mortal again. */
-  SET_MORTAL(0);
+  SET_MORTAL(0),
+  /**
+   * Client understands the {@link util.WireCodec} framing and asks the server to use it. Until
+   * then, the server sends text.
+   */
+  REQUEST_BINARY_PROTOCOL(0),
+  /**
+   * The first command of the client: the version of the protocol it speaks, see {@link
+   * ServerProtocol#VERSION}. The server closes the connections of the clients speaking another
+   * version.
+   */
+  PROTOCOL_VERSION(1);
+
+  /** The commands by their name. */
+  private static final ProtocolNames<ClientProtocol> NAMES = new ProtocolNames<>(values());
 
   private final int numArgs;
 
@@ -79,4 +97,14 @@ public enum ClientProtocol {
   public int getNumArgs() {
     return this.numArgs;
   }
+
+  /**
+   * Returns the command with the given name, e.g. the first field of a received line.
+   *
+   * @param name The name of the command
+   * @return the command, or null if there is no command with this name
+   */
+  public static ClientProtocol fromName(CharSequence name) {
+    return NAMES.lookup(name);
+  }
 }
@@ -0,0 +1,67 @@
+package client;
+
+/**
+ * Statistics of the jitter of the states sent by the server, which tell how much delay the {@link
+ * SnapshotBuffer} needs to draw the cube smoothly. The arrivals are recorded by {@link ServerIn} as
+ * soon as a state has been read, including the states which are replaced before the JavaFX thread
+ * applies them, and are read on the JavaFX thread.
+ */
+public final class JitterMeter {
+  /** The weight of a new transit time difference in the jitter, as in RFC 3550. */
+  private static final double JITTER_GAIN = 1.0 / 16;
+
+  /** The transit time of the last state received from the server, NaN before the first one. */
+  private double lastTransit = Double.NaN;
+  /** The smoothed jitter of the states received from the server, in seconds. */
+  private double jitter = 0;
+  /** The largest difference between two consecutive transit times, in seconds. */
+  private double maxJitter = 0;
+  /** The number of states received from the server. */
+  private long arrivals = 0;
+
+  /**
+   * Records the arrival of a state sent by the server. The jitter is estimated from the differences
+   * between the transit times of consecutive states, as in RFC 3550, so the clocks of the client
+   * and the server don't need to be synchronised.
+   *
+   * @param sendTime the time at which the state was valid on the server, in seconds
+   * @param arrivalTime the time at which the client has received it, in seconds
+   */
+  public synchronized void recordArrival(double sendTime, double arrivalTime) {
+    double transit = arrivalTime - sendTime;
+    if (!Double.isNaN(this.lastTransit)) {
+      double difference = Math.abs(transit - this.lastTransit);
+      this.jitter += (difference - this.jitter) * JITTER_GAIN;
+      this.maxJitter = Math.max(this.maxJitter, difference);
+    }
+    this.lastTransit = transit;
+    this.arrivals++;
+  }
+
+  /**
+   * Returns the smoothed jitter of the states received from the server.
+   *
+   * @return the jitter in seconds
+   */
+  public synchronized double getJitter() {
+    return this.jitter;
+  }
+
+  /**
+   * Returns the largest difference between the transit times of two consecutive states.
+   *
+   * @return the largest jitter in seconds
+   */
+  public synchronized double getMaxJitter() {
+    return this.maxJitter;
+  }
+
+  /**
+   * Returns the number of states received from the server.
+   *
+   * @return the number of arrivals
+   */
+  public synchronized long getArrivals() {
+    return this.arrivals;
+  }
+}
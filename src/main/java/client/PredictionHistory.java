@@ -0,0 +1,142 @@
+package client;
+
+import game.Cube;
+import game.CubeState;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import javafx.scene.paint.Color;
+
+/**
+ * The states predicted by the client for the last ticks and the inputs which the server hasn't
+ * included in its state yet. When the server sends the state of a tick, the cube is rewound to the
+ * state predicted for that tick, corrected with the state of the server and simulated again up to
+ * the current tick, applying the inputs of the player once more.
+ */
+class PredictionHistory {
+  /** The number of ticks kept, a power of two covering more than the round-trip time. */
+  static final int CAPACITY = 256;
+  /** Maps a tick to its slot. */
+  private static final int MASK = CAPACITY - 1;
+
+  /** An input of the player, identified by its sequence number. */
+  private static final class Input {
+    /** The sequence number sent with the input. */
+    private final int sequence;
+    /** The tick at which the input is applied: predicted, then acknowledged by the server. */
+    private long tick;
+
+    /**
+     * Creates an input.
+     *
+     * @param theSequence the sequence number sent with the input
+     * @param theTick the tick at which the input has been predicted
+     */
+    private Input(int theSequence, long theTick) {
+      this.sequence = theSequence;
+      this.tick = theTick;
+    }
+  }
+
+  /** The predicted states, reused. */
+  private final CubeState[] states = new CubeState[CAPACITY];
+  /** The tick of the state in every slot, -1 for empty slots. */
+  private final long[] ticks = new long[CAPACITY];
+  /** The inputs of the player, oldest first. */
+  private final ArrayDeque<Input> inputs = new ArrayDeque<>();
+
+  /** Creates an empty history. */
+  PredictionHistory() {
+    for (int i = 0; i < CAPACITY; i++) {
+      this.states[i] = new CubeState();
+    }
+    this.clear();
+  }
+
+  /** Forgets all states and inputs, e.g. when a new level is loaded. */
+  void clear() {
+    Arrays.fill(this.ticks, -1);
+    this.inputs.clear();
+  }
+
+  /**
+   * Saves the state of the cube at a tick, before the inputs of that tick are applied.
+   *
+   * @param tick the tick
+   * @param cube the cube
+   */
+  void save(long tick, Cube cube) {
+    int slot = (int) (tick & MASK);
+    this.states[slot].capture(cube);
+    this.ticks[slot] = tick;
+  }
+
+  /**
+   * Returns the state predicted for a tick.
+   *
+   * @param tick the tick
+   * @return the state, or null if it isn't kept anymore (or hasn't been predicted yet)
+   */
+  CubeState get(long tick) {
+    int slot = (int) (tick & MASK);
+    return this.ticks[slot] == tick ? this.states[slot] : null;
+  }
+
+  /**
+   * Records an input of the player.
+   *
+   * @param sequence the sequence number sent with the input
+   * @param tick the tick at which the input has been applied
+   */
+  void addInput(int sequence, long tick) {
+    this.inputs.addLast(new Input(sequence, tick));
+  }
+
+  /**
+   * The server has applied an input at the given tick.
+   *
+   * @param sequence the sequence number of the input
+   * @param tick the tick at which the server has applied it
+   * @return true if the server has applied it at another tick than predicted
+   */
+  boolean acknowledge(int sequence, long tick) {
+    for (Input input : this.inputs) {
+      if (input.sequence == sequence) {
+        boolean moved = input.tick != tick;
+        input.tick = tick;
+        return moved;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Forgets the inputs applied before a tick: they are part of the state of the server at that
+   * tick.
+   *
+   * @param tick the tick of the state of the server
+   */
+  void discardInputsBefore(long tick) {
+    Iterator<Input> iterator = this.inputs.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().tick < tick) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Applies the inputs of a tick to the cube again.
+   *
+   * @param tick the tick which is simulated again
+   * @param cube the cube
+   * @param colour the colour of the player
+   */
+  void applyInputs(long tick, Cube cube, Color colour) {
+    for (Input input : this.inputs) {
+      if (input.tick == tick) {
+        cube.applyInput(colour);
+      }
+    }
+  }
+}
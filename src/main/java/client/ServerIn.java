@@ -1,20 +1,180 @@
 package client;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.Socket;
 import java.net.SocketException;
 import java.util.Arrays;
+import java.util.function.BiConsumer;
 import javafx.application.Platform;
 import server.ServerProtocol;
+import util.DispatchTable;
+import util.ProtocolTokenizer;
+import util.WireCodec;
 
 /** Handles the input from the server. */
 public class ServerIn implements Runnable {
 
   private final Socket serverSocket;
-  private final BufferedReader in;
+  private final DataInputStream in;
   private final Client client;
+  /** Whether the server has switched to the {@link WireCodec} framing. */
+  private boolean binary = false;
+  /** Splits the received commands, reused for every command. */
+  private final ProtocolTokenizer tokenizer =
+      new ProtocolTokenizer(ServerProtocol.SEPARATOR.toString());
+  /** The decoded updates, applied on the JavaFX thread in batches. */
+  private final UpdateQueue updates = new UpdateQueue(Platform::runLater);
+  /** When the last command or frame has been read, as given by {@link System#nanoTime()}. */
+  private long receivedAt;
+
+  /**
+   * The handlers of the commands of the server, indexed by command. The number of arguments and the
+   * numeric arguments are checked before a handler runs. The handlers decode the command on this
+   * thread and queue its effect, see {@link UpdateQueue}; position updates and full lists replace
+   * the older ones which haven't been applied yet.
+   */
+  static final DispatchTable<ServerProtocol, ServerIn> COMMANDS =
+      new DispatchTable<ServerProtocol, ServerIn>(
+              ServerProtocol.values(), ServerProtocol::fromName, ServerProtocol::getNumArgs)
+          .on(
+              ServerProtocol.SERVER_PONG,
+              // Measured here, waiting for the JavaFX thread would distort the round-trip time
+              (serverIn, command) -> serverIn.client.pingSender.pongReceived())
+          .on(
+              ServerProtocol.POSITION_UPDATE,
+              command ->
+                  command.isDouble(1)
+                      && command.isDouble(2)
+                      && command.isDouble(3)
+                      && command.isDouble(4)
+                      && command.isInt(5)
+                      && command.isLong(6),
+              (serverIn, command) -> {
+                double positionX = command.parseDouble(1);
+                double positionY = command.parseDouble(2);
+                double velocityX = command.parseDouble(3);
+                double velocityY = command.parseDouble(4);
+                int accelerationAngle = command.parseInt(5);
+                long tick = command.parseLong(6);
+                boolean moving = command.parseBoolean(7);
+                serverIn.recordArrival(tick);
+                serverIn.updates.replace(
+                    ServerProtocol.POSITION_UPDATE,
+                    () -> serverIn.client
+                        .gameController
+                        .getGame()
+                        .updatePosition(
+                            positionX,
+                            positionY,
+                            velocityX,
+                            velocityY,
+                            accelerationAngle,
+                            tick,
+                            moving));
+              })
+          .on(
+              ServerProtocol.JUMP_UPDATE,
+              command -> command.isDouble(1) && command.isDouble(2) && command.isLong(3),
+              (serverIn, command) -> {
+                double rotationPointX = command.parseDouble(1);
+                double rotationPointY = command.parseDouble(2);
+                long tick = command.parseLong(3);
+                serverIn.updates.add(
+                    () -> serverIn.client
+                        .gameController
+                        .getGame()
+                        .updateJump(rotationPointX, rotationPointY, tick));
+              })
+          .on(
+              ServerProtocol.INPUT_ACK,
+              command -> command.isInt(1) && command.isLong(2),
+              (serverIn, command) -> {
+                int sequence = command.parseInt(1);
+                long tick = command.parseLong(2);
+                serverIn.updates.add(
+                    () -> serverIn.client.gameController.getGame().inputAcknowledged(sequence, tick));
+              })
+          .on(
+              ServerProtocol.UPDATE_FULL_LIST,
+              command -> command.isInt(1),
+              fullList(ServerProtocol.UPDATE_FULL_LIST, Client::updateLobbyInfo))
+          .on(
+              ServerProtocol.UPDATE_FULL_LIST_DELTA,
+              command -> command.isInt(1),
+              listDelta(ServerProtocol.UPDATE_FULL_LIST, Client::updateLobbyInfoDelta))
+          .on(
+              ServerProtocol.UPDATE_CLIENT_LIST,
+              command -> command.isInt(1),
+              fullList(ServerProtocol.UPDATE_CLIENT_LIST, Client::updateClientInfo))
+          .on(
+              ServerProtocol.UPDATE_CLIENT_LIST_DELTA,
+              command -> command.isInt(1),
+              listDelta(ServerProtocol.UPDATE_CLIENT_LIST, Client::updateClientInfoDelta))
+          .on(
+              ServerProtocol.UPDATE_GAME_LIST,
+              command -> command.isInt(1),
+              fullList(ServerProtocol.UPDATE_GAME_LIST, Client::updateGameList))
+          .on(
+              ServerProtocol.UPDATE_GAME_LIST_DELTA,
+              command -> command.isInt(1),
+              listDelta(ServerProtocol.UPDATE_GAME_LIST, Client::updateGameListDelta))
+          .on(
+              ServerProtocol.UPDATE_LOBBY_LIST,
+              (serverIn, command) -> {
+                String lobbies = command.get(1);
+                serverIn.updates.replace(
+                    ServerProtocol.UPDATE_LOBBY_LIST,
+                    () -> serverIn.client.updateLobbyList(lobbies));
+              })
+          .on(ServerProtocol.SEND_PUBLIC_MESSAGE, message("Public"))
+          .on(ServerProtocol.SEND_PRIVATE_MESSAGE, message("Private"))
+          .on(ServerProtocol.SEND_LOBBY_MESSAGE, message("Lobby"))
+          .on(
+              ServerProtocol.NO_USER_FOUND,
+              later((client, command) -> client.noUserFound(command[1])))
+          .on(ServerProtocol.SERVER_PING, later((client, command) -> client.pong()))
+          .on(
+              ServerProtocol.USERNAME_SET_TO,
+              later((client, command) -> client.usernameSetTo(command[1])))
+          .on(
+              ServerProtocol.LOBBY_JOINED,
+              later((client, command) -> client.enterLobby(command[1])))
+          .on(
+              ServerProtocol.LOBBY_EXITED,
+              later((client, command) -> client.lobbyExited(command[1])))
+          .on(
+              ServerProtocol.TOGGLE_READY_STATUS,
+              later((client, command) -> client.setToggleReady(Boolean.parseBoolean(command[1]))))
+          .on(ServerProtocol.START_GAME, later(ServerIn::startGame))
+          .on(
+              ServerProtocol.GAME_STATUS_UPDATE,
+              later(
+                  (client, command) ->
+                      client.gameController.updateGameStatus(command[1], command[2])))
+          .on(
+              ServerProtocol.LOAD_LEVEL,
+              later((client, command) -> client.loadLevel(command[1])))
+          .on(
+              ServerProtocol.SEND_CRITICAL_BLOCKS,
+              later(
+                  (client, command) -> {
+                    if (client.gameController != null) {
+                      client.gameController.setBlockColours(command[1]);
+                    }
+                  }))
+          .on(ServerProtocol.GAME_ENDED, later((client, command) -> gameEnded(client)))
+          .on(
+              ServerProtocol.PROTOCOL_MISMATCH,
+              later(
+                  (client, command) ->
+                      client.LOGGER.error(
+                          "The server speaks version "
+                              + command[1]
+                              + " of the protocol, this client version "
+                              + ServerProtocol.VERSION
+                              + ". Update the game to connect to this server.")));
 
   /** Used for the while loop in the run method. */
   protected Boolean running = true;
@@ -29,7 +189,7 @@ public class ServerIn implements Runnable {
    */
   public ServerIn(Socket serverSocket, Client client) throws IOException {
     this.serverSocket = serverSocket;
-    this.in = new BufferedReader(new InputStreamReader(this.serverSocket.getInputStream()));
+    this.in = new DataInputStream(new BufferedInputStream(this.serverSocket.getInputStream()));
     this.client = client;
   }
 
@@ -38,7 +198,7 @@ public class ServerIn implements Runnable {
   public void run() {
     try {
       while (this.running) {
-        String[] command = this.receiveFromServer();
+        ProtocolTokenizer command = this.receiveFromServer();
         if (command != null) {
           this.protocolSwitch(command);
         }
@@ -52,15 +212,26 @@ public class ServerIn implements Runnable {
   }
 
   /**
-   * Receives a command from the server via the socket and returns it as a string array. If the
+   * Receives a command from the server via the socket and returns its fields. If the
    * received string is null, the method returns null. This however only happens when the connection
    * to the server is lost. Called by {@link #run()}.
+   *
+   * <p>Once the binary framing has been enabled, game updates are applied directly by {@link
+   * #receiveFrame()} and null is returned for them as well.
    */
-  private String[] receiveFromServer() throws IOException {
+  private ProtocolTokenizer receiveFromServer() throws IOException {
     try {
-      String input = this.in.readLine();
-      if (input != null) {
-        return input.split(ServerProtocol.SEPARATOR.toString());
+      if (this.binary) {
+        return this.receiveFrame();
+      }
+      String input = WireCodec.readLine(this.in);
+      this.receivedAt = System.nanoTime();
+      if (ServerProtocol.BINARY_PROTOCOL_ENABLED.toString().equals(input)) {
+        this.binary = true;
+        return null;
+      } else if (input != null) {
+        this.tokenizer.tokenize(input);
+        return this.tokenizer;
       } else {
         this.client.receivedNullCounter++;
         // Received null from server
@@ -73,90 +244,213 @@ public class ServerIn implements Runnable {
     }
   }
 
+  /**
+   * Reads a {@link WireCodec} frame. Text frames are returned as commands, position and jump
+   * updates are read as numbers and applied without going through strings.
+   *
+   * @return the fields of the command of a text frame, null otherwise
+   * @throws IOException If the connection is lost or the frame is corrupt
+   */
+  private ProtocolTokenizer receiveFrame() throws IOException {
+    int opcode = this.in.read();
+    this.receivedAt = System.nanoTime();
+    if (opcode < 0) {
+      this.client.receivedNullCounter++;
+      return null;
+    }
+    int length = this.in.readInt();
+
+    switch (opcode) {
+      case WireCodec.OPCODE_TEXT -> {
+        this.tokenizer.tokenize(WireCodec.readText(this.in, length));
+        return this.tokenizer;
+      }
+      case WireCodec.OPCODE_POSITION_UPDATE -> {
+        double positionX = this.in.readDouble();
+        double positionY = this.in.readDouble();
+        double velocityX = this.in.readDouble();
+        double velocityY = this.in.readDouble();
+        int accelerationAngle = this.in.readInt();
+        long tick = this.in.readLong();
+        boolean moving = this.in.readBoolean();
+        WireCodec.skip(this.in, length - WireCodec.POSITION_UPDATE_LENGTH);
+        this.recordArrival(tick);
+        this.updates.replace(
+            ServerProtocol.POSITION_UPDATE,
+            () -> this.client
+                .gameController
+                .getGame()
+                .updatePosition(
+                    positionX, positionY, velocityX, velocityY, accelerationAngle, tick, moving));
+      }
+      case WireCodec.OPCODE_JUMP_UPDATE -> {
+        double rotationPointX = this.in.readDouble();
+        double rotationPointY = this.in.readDouble();
+        long tick = this.in.readLong();
+        WireCodec.skip(this.in, length - WireCodec.JUMP_UPDATE_LENGTH);
+        this.updates.add(
+            () -> this.client
+                .gameController
+                .getGame()
+                .updateJump(rotationPointX, rotationPointY, tick));
+      }
+      default -> {
+        this.client.LOGGER.error("ServerIn: Unknown frame: " + opcode);
+        WireCodec.skip(this.in, length);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Records the arrival of a position update in the jitter of the client. Called on this thread
+   * when the update is read, so that neither the wait for the JavaFX thread nor the updates
+   * replaced before it runs skew the jitter.
+   *
+   * @param tick the tick of the server at which the update was valid
+   */
+  private void recordArrival(long tick) {
+    this.client.jitterMeter.recordArrival(tick * ClientGame.TICK_DURATION, this.receivedAt / 1e9);
+  }
+
   /**
    * Client receives a command from the server and runs the appropriate method.
    *
-   * <p>The command is split into an array of strings. The first string is the protocol and the rest
-   * of the strings are the arguments. See {@link ServerProtocol} for possible protocols.
+   * <p>The first field of the command is the protocol and the other fields are the arguments. See
+   * {@link ServerProtocol} for possible protocols, and {@link #COMMANDS} for their handlers.
    */
-  private void protocolSwitch(String[] command) {
+  private void protocolSwitch(ProtocolTokenizer command) {
+    switch (COMMANDS.dispatch(this, command)) {
+      case UNKNOWN -> client.LOGGER.error("ServerIn: Unknown protocol: " + command.get(0));
+      case MALFORMED, UNHANDLED -> client.LOGGER.error(
+          "ServerIn: Invalid command: " + command.getLine());
+      default -> {
+        // Handled
+      }
+    }
+  }
+
+  /**
+   * Creates the handler of a command which is applied on the JavaFX thread with its fields as
+   * strings.
+   *
+   * @param action the command, given the client and the protocol followed by its arguments
+   * @return the handler
+   */
+  private static DispatchTable.Handler<ServerIn> later(BiConsumer<Client, String[]> action) {
+    return (serverIn, command) -> {
+      String[] fields = command.toArray();
+      serverIn.updates.add(() -> action.accept(serverIn.client, fields));
+    };
+  }
+
+  /**
+   * Creates the handler of a full list, which replaces the older list and the changes to it which
+   * haven't been applied yet. The sequence number is checked to be a number when the handler is
+   * registered.
+   *
+   * @param list the list
+   * @param action the update of the list, given the client, the sequence number and the list
+   * @return the handler
+   */
+  private static DispatchTable.Handler<ServerIn> fullList(
+      ServerProtocol list, TriConsumer<Client, Integer, String> action) {
+    return (serverIn, command) -> {
+      int seq = command.parseInt(1);
+      String entries = command.get(2);
+      serverIn.updates.replace(list, () -> action.accept(serverIn.client, seq, entries));
+    };
+  }
+
+  /**
+   * Creates the handler of a change to a list, which is dropped if a full list replaces it before
+   * it has been applied. The sequence number is checked to be a number when the handler is
+   * registered.
+   *
+   * @param list the list
+   * @param action the change, given the client, the sequence number, and the added and removed
+   *     entries
+   * @return the handler
+   */
+  private static DispatchTable.Handler<ServerIn> listDelta(
+      ServerProtocol list, QuadConsumer<Client, Integer, String, String> action) {
+    return (serverIn, command) -> {
+      int seq = command.parseInt(1);
+      String added = command.get(2);
+      String removed = command.get(3);
+      serverIn.updates.addReplaceable(
+          list, () -> action.accept(serverIn.client, seq, added, removed));
+    };
+  }
+
+  /**
+   * Loads the game screen. Called on the JavaFX thread.
+   *
+   * @param client the client
+   * @param command the protocol followed by whether the game is deterministic
+   */
+  private static void startGame(Client client, String[] command) {
     try {
-      Platform.runLater(
-          () -> {
-            ServerProtocol protocol = ServerProtocol.valueOf(command[0]);
-
-            if (protocol.getNumArgs() == command.length - 1) {
-              switch (protocol) {
-                case SEND_PUBLIC_MESSAGE -> this.receiveMessage(
-                    Arrays.copyOfRange(command, 1, command.length), "Public");
-                case SEND_PRIVATE_MESSAGE -> this.receiveMessage(
-                    Arrays.copyOfRange(command, 1, command.length), "Private");
-                case SEND_LOBBY_MESSAGE -> this.receiveMessage(
-                    Arrays.copyOfRange(command, 1, command.length), "Lobby");
-                case NO_USER_FOUND -> this.client.noUserFound(command[1]);
-                case SERVER_PING -> this.client.pong();
-                case SERVER_PONG -> this.resetClientStatus();
-                case USERNAME_SET_TO -> this.client.usernameSetTo(command[1]);
-                case LOBBY_JOINED -> this.client.enterLobby(command[1]);
-                case LOBBY_EXITED -> this.client.lobbyExited(command[1]);
-                case UPDATE_FULL_LIST -> this.client.updateLobbyInfo(command[1]);
-                case UPDATE_CLIENT_LIST -> this.client.updateClientInfo(command[1]);
-                case UPDATE_LOBBY_LIST -> this.client.updateLobbyList(command[1]);
-                case UPDATE_GAME_LIST -> this.client.updateGameList(command[1]);
-                case TOGGLE_READY_STATUS -> this.client.setToggleReady(Boolean.parseBoolean(command[1]));
-                case START_GAME -> {
-                  try {
-                    this.client.loadGameScreen();
-                  } catch (IOException ex) {
-                    this.client.LOGGER.error("Couldn't load lobby screen. Shutting down.");
-                    this.client.exit();
-                  }
-                }
-                case POSITION_UPDATE -> this.client
-                    .gameController
-                    .getGame()
-                    .updatePosition(command[1], command[2], command[3], command[4], command[5]);
-                case JUMP_UPDATE -> this.client.gameController.getGame().updateJump(command[1], command[2]);
-                case GAME_STATUS_UPDATE -> this.client.gameController.updateGameStatus(command[1], command[2]);
-                case LOAD_LEVEL -> this.client.loadLevel(command[1]);
-                case SEND_CRITICAL_BLOCKS -> {
-                  if (this.client.gameController != null) {
-                    this.client.gameController.setBlockColours(command[1]);
-                  }
-                }
-                case GAME_ENDED -> {
-                  try {
-                    this.client.loadLobbyScreen();
-                  } catch (IOException e) {
-                    client.LOGGER.error("Couldn't load lobby screen. Shutting down.");
-                    client.exit();
-                  }
-                }
-                default -> client.LOGGER.error("ServerIn: Unknown protocol: " + command[0]);
-              }
-            }
-          });
-    } catch (IllegalArgumentException e) {
-      System.out.println("ServerIn: Unknown protocol: " + command[0]);
+      client.loadGameScreen(Boolean.parseBoolean(command[1]));
+    } catch (IOException ex) {
+      client.LOGGER.error("Couldn't load lobby screen. Shutting down.");
+      client.exit();
     }
   }
 
   /**
-   * Resets the client status to "connected to server" and "noAnswerCounter" to 0. Called by {@link
-   * #protocolSwitch(String[])} upon receiving a PONG from the server.
+   * Goes back to the lobby screen at the end of the game. Called on the JavaFX thread.
+   *
+   * @param client the client
    */
-  private void resetClientStatus() {
-    this.client.serverHasPonged = true;
-    this.client.noAnswerCounter = 0;
+  private static void gameEnded(Client client) {
+    try {
+      client.loadLobbyScreen();
+    } catch (IOException e) {
+      client.LOGGER.error("Couldn't load lobby screen. Shutting down.");
+      client.exit();
+    }
+  }
+
+  /** A function of three arguments returning nothing. */
+  @FunctionalInterface
+  private interface TriConsumer<A, B, C> {
+    /**
+     * Runs the function.
+     *
+     * @param a the first argument
+     * @param b the second argument
+     * @param c the third argument
+     */
+    void accept(A a, B b, C c);
+  }
+
+  /** A function of four arguments returning nothing. */
+  @FunctionalInterface
+  private interface QuadConsumer<A, B, C, D> {
+    /**
+     * Runs the function.
+     *
+     * @param a the first argument
+     * @param b the second argument
+     * @param c the third argument
+     * @param d the fourth argument
+     */
+    void accept(A a, B b, C c, D d);
   }
 
   /**
-   * Prints a message received from another client to the console by formatting it. Called by {@link
-   * #protocolSwitch(String[])}.
+   * Creates the handler of a chat message, which is printed to the console by formatting it.
+   *
+   * @param privacy to whom the message has been sent
+   * @return the handler
    */
-  private void receiveMessage(String[] command, String privacy) {
-    String sender = command[0];
-    String message = String.join(" ", Arrays.copyOfRange(command, 1, command.length));
-    this.client.receiveMessage(message, sender, privacy);
+  private static DispatchTable.Handler<ServerIn> message(String privacy) {
+    return later(
+        (client, command) -> {
+          String sender = command[1];
+          String message = String.join(" ", Arrays.copyOfRange(command, 2, command.length));
+          client.receiveMessage(message, sender, privacy);
+        });
   }
 }
@@ -5,8 +5,8 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
-import java.util.Arrays;
 import server.ServerProtocol;
+import util.ProtocolTokenizer;
 
 /** Sends commands from client to server. */
 public class ServerOut implements Runnable {
@@ -89,11 +89,18 @@ public class ServerOut implements Runnable {
       System.out.println("[SERVER_OUT] Message is null");
       return false;
     } else {
-      String[] command = message.split(ServerProtocol.SEPARATOR.toString());
-      if (command.length > ClientProtocol.valueOf(command[0]).getNumArgs() + 1) {
+      String separator = ServerProtocol.SEPARATOR.toString();
+      int end = message.indexOf(separator);
+      ClientProtocol protocol =
+          ClientProtocol.fromName(end < 0 ? message : message.subSequence(0, end));
+      if (protocol == null) {
+        System.out.println("[SERVER_OUT] Unknown command: " + message);
+        return false;
+      }
+      if (ProtocolTokenizer.count(message, separator) > protocol.getNumArgs() + 1) {
         System.out.print(
             "[SERVER_OUT] Tried to send too many arguments: "
-                + Arrays.toString(command)
+                + message
                 + "\n> Would you just have happened to have "
                 + ServerProtocol.SEPARATOR.toString()
                 + " in your message?"
@@ -0,0 +1,203 @@
+package client;
+
+/**
+ * Timestamped states of the cube, from which the cube is drawn slightly in the past. Drawing the
+ * cube between two states interpolates its motion at any frame rate, and hides the corrections of
+ * the states, which are only ever made after the drawn time if the delay covers them. If the drawn
+ * time is newer than the newest state, the motion is extrapolated with the velocity of that state
+ * for a short time.
+ *
+ * <p>The delay is adapted to the jitter of the states received from the server, see {@link
+ * JitterMeter}.
+ */
+public final class SnapshotBuffer {
+  /** The number of states kept, a power of two. */
+  static final int CAPACITY = 64;
+  /** Maps the number of a state to its slot. */
+  private static final int MASK = CAPACITY - 1;
+  /** The default delay in seconds. */
+  public static final double DEFAULT_DELAY = 1.0 / 60;
+  /** The longest time in seconds for which the motion is extrapolated. */
+  public static final double MAX_EXTRAPOLATION = 0.25;
+  /** The cube is a square, so its rotation only matters modulo 90 degrees. */
+  private static final double ROTATION_PERIOD = 90;
+
+  /** The times of the states in seconds, in increasing order from the oldest one. */
+  private final double[] times = new double[CAPACITY];
+  /** The x coordinates of the states. */
+  private final double[] positionsX = new double[CAPACITY];
+  /** The y coordinates of the states. */
+  private final double[] positionsY = new double[CAPACITY];
+  /** The x components of the velocities of the states. */
+  private final double[] velocitiesX = new double[CAPACITY];
+  /** The y components of the velocities of the states. */
+  private final double[] velocitiesY = new double[CAPACITY];
+  /** The rotations of the states in degrees. */
+  private final double[] rotations = new double[CAPACITY];
+  /** The number of states added since the buffer has been cleared, the newest being one less. */
+  private long end = 0;
+  /** The number of states kept, at most {@link #CAPACITY}. */
+  private int size = 0;
+
+  /** How far in the past the cube is drawn, in seconds. */
+  private double delay = DEFAULT_DELAY;
+
+  /** The x coordinate of the last sample. */
+  private double sampleX;
+  /** The y coordinate of the last sample. */
+  private double sampleY;
+  /** The rotation of the last sample. */
+  private double sampleRotation;
+
+  /** The number of samples which have been extrapolated. */
+  private long extrapolations = 0;
+
+  /** Forgets all states, e.g. when a new level is loaded. The statistics are kept. */
+  public void clear() {
+    this.end = 0;
+    this.size = 0;
+  }
+
+  /**
+   * Adds the newest state. The states at the same time or later are replaced, as when a tick has
+   * been simulated again.
+   *
+   * @param time the time of the state in seconds
+   * @param positionX the x coordinate of the cube
+   * @param positionY the y coordinate of the cube
+   * @param velocityX the x component of the velocity
+   * @param velocityY the y component of the velocity
+   * @param rotation the rotation of the cube in degrees
+   */
+  public void add(
+      double time,
+      double positionX,
+      double positionY,
+      double velocityX,
+      double velocityY,
+      double rotation) {
+    while (this.size > 0 && this.times[(int) ((this.end - 1) & MASK)] >= time) {
+      this.end--;
+      this.size--;
+    }
+    int slot = (int) (this.end & MASK);
+    this.times[slot] = time;
+    this.positionsX[slot] = positionX;
+    this.positionsY[slot] = positionY;
+    this.velocitiesX[slot] = velocityX;
+    this.velocitiesY[slot] = velocityY;
+    this.rotations[slot] = rotation;
+    this.end++;
+    this.size = Math.min(this.size + 1, CAPACITY);
+  }
+
+  /**
+   * Computes the state of the cube at a time, see {@link #getX()}, {@link #getY()} and {@link
+   * #getRotation()}. Times before the oldest state kept give the oldest state.
+   *
+   * @param time the time in seconds, usually the current time minus {@link #getDelay()}
+   * @return false if there is no state
+   */
+  public boolean sample(double time) {
+    if (this.size == 0) {
+      return false;
+    }
+    long index = this.end - 1;
+    long oldest = this.end - this.size;
+    while (index > oldest && this.times[(int) (index & MASK)] > time) {
+      index--;
+    }
+    int slot = (int) (index & MASK);
+
+    if (index == this.end - 1) {
+      double elapsed = Math.min(Math.max(time - this.times[slot], 0), MAX_EXTRAPOLATION);
+      if (elapsed > 0) {
+        this.extrapolations++;
+      }
+      this.sampleX = this.positionsX[slot] + this.velocitiesX[slot] * elapsed;
+      this.sampleY = this.positionsY[slot] + this.velocitiesY[slot] * elapsed;
+      this.sampleRotation = this.rotations[slot];
+      return true;
+    }
+
+    int next = (int) ((index + 1) & MASK);
+    double fraction = (time - this.times[slot]) / (this.times[next] - this.times[slot]);
+    fraction = Math.min(Math.max(fraction, 0), 1);
+    this.sampleX = interpolate(this.positionsX[slot], this.positionsX[next], fraction);
+    this.sampleY = interpolate(this.positionsY[slot], this.positionsY[next], fraction);
+    double turn = Math.IEEEremainder(this.rotations[next] - this.rotations[slot], ROTATION_PERIOD);
+    this.sampleRotation = this.rotations[slot] + turn * fraction;
+    return true;
+  }
+
+  /**
+   * Interpolates linearly between two values.
+   *
+   * @param from the value at fraction 0
+   * @param to the value at fraction 1
+   * @param fraction the fraction between 0 and 1
+   * @return the interpolated value
+   */
+  private static double interpolate(double from, double to, double fraction) {
+    return from + (to - from) * fraction;
+  }
+
+  /**
+   * Returns the x coordinate computed by the last call of {@link #sample(double)}.
+   *
+   * @return the x coordinate
+   */
+  public double getX() {
+    return this.sampleX;
+  }
+
+  /**
+   * Returns the y coordinate computed by the last call of {@link #sample(double)}.
+   *
+   * @return the y coordinate
+   */
+  public double getY() {
+    return this.sampleY;
+  }
+
+  /**
+   * Returns the rotation computed by the last call of {@link #sample(double)}.
+   *
+   * @return the rotation in degrees
+   */
+  public double getRotation() {
+    return this.sampleRotation;
+  }
+
+  /**
+   * Returns how far in the past the cube is drawn.
+   *
+   * @return the delay in seconds
+   */
+  public double getDelay() {
+    return this.delay;
+  }
+
+  /**
+   * Sets how far in the past the cube is drawn. A delay of at least one tick interpolates between
+   * ticks; a longer delay also smooths the corrections made by the server within that time.
+   *
+   * @param delay the delay in seconds
+   * @throws IllegalArgumentException if the delay is negative
+   */
+  public void setDelay(double delay) {
+    if (delay < 0) {
+      throw new IllegalArgumentException("The delay must not be negative: " + delay);
+    }
+    this.delay = delay;
+  }
+
+  /**
+   * Returns the number of samples newer than the newest state, which a longer delay would avoid.
+   *
+   * @return the number of extrapolated samples
+   */
+  public long getExtrapolations() {
+    return this.extrapolations;
+  }
+}
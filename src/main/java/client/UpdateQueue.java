@@ -0,0 +1,145 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The updates decoded by {@link ServerIn}, waiting to be applied on the JavaFX thread. Instead of
+ * posting one runnable per message, the updates are queued and a single runnable applies all the
+ * queued ones in a batch, in the order in which they have been received.
+ *
+ * <p>An update can replace the pending updates of the same key, e.g. a position update replaces the
+ * older position updates, and a full list replaces the older list and the changes to it, which
+ * haven't been applied yet.
+ */
+class UpdateQueue {
+  private static final Logger LOGGER = LogManager.getLogger(UpdateQueue.class);
+
+  /** Runs the batches one after the other, i.e. Platform::runLater. */
+  private final Executor executor;
+  /** The updates received since the last batch, null where an update has been replaced. */
+  private ArrayList<Runnable> pending = new ArrayList<>();
+  /** The batch being applied, swapped with {@link #pending}. */
+  private ArrayList<Runnable> batch = new ArrayList<>();
+  /** The indices in {@link #pending} of the updates of every key. */
+  private final HashMap<Object, ArrayList<Integer>> pendingKeys = new HashMap<>();
+  /** Whether a batch has been handed to the executor but hasn't started yet. */
+  private boolean scheduled = false;
+
+  /** The number of updates which have been replaced before being applied. */
+  private long numReplaced = 0;
+  /** The number of batches applied. */
+  private long numBatches = 0;
+
+  /**
+   * Creates a queue.
+   *
+   * @param executor runs the batches one after the other, i.e. on the JavaFX thread
+   */
+  UpdateQueue(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Queues an update.
+   *
+   * @param update the update
+   */
+  void add(Runnable update) {
+    this.add(null, false, update);
+  }
+
+  /**
+   * Queues an update which is replaced by the next {@link #replace(Object, Runnable)} with the same
+   * key if it hasn't been applied by then, e.g. a change to a list.
+   *
+   * @param key the key of the update
+   * @param update the update
+   */
+  void addReplaceable(Object key, Runnable update) {
+    this.add(key, false, update);
+  }
+
+  /**
+   * Queues an update which replaces the pending updates of the same key, e.g. a full list.
+   *
+   * @param key the key of the update
+   * @param update the update
+   */
+  void replace(Object key, Runnable update) {
+    this.add(key, true, update);
+  }
+
+  /**
+   * Queues an update and schedules a batch if none is waiting.
+   *
+   * @param key the key of the update, null if it can't be replaced
+   * @param replacing whether the pending updates of the same key are dropped
+   * @param update the update
+   */
+  private void add(Object key, boolean replacing, Runnable update) {
+    boolean schedule;
+    synchronized (this) {
+      if (key != null) {
+        ArrayList<Integer> indices = this.pendingKeys.computeIfAbsent(key, k -> new ArrayList<>());
+        if (replacing) {
+          for (int index : indices) {
+            this.pending.set(index, null);
+          }
+          this.numReplaced += indices.size();
+          indices.clear();
+        }
+        indices.add(this.pending.size());
+      }
+      this.pending.add(update);
+      schedule = !this.scheduled;
+      this.scheduled = true;
+    }
+    if (schedule) {
+      this.executor.execute(this::applyBatch);
+    }
+  }
+
+  /** Applies the pending updates. An update failing doesn't stop the others. */
+  private void applyBatch() {
+    synchronized (this) {
+      ArrayList<Runnable> updates = this.pending;
+      this.pending = this.batch;
+      this.batch = updates;
+      this.pendingKeys.clear();
+      this.scheduled = false;
+      this.numBatches++;
+    }
+    for (Runnable update : this.batch) {
+      if (update != null) {
+        try {
+          update.run();
+        } catch (RuntimeException e) {
+          LOGGER.error("Couldn't apply an update from the server: " + e.getMessage());
+        }
+      }
+    }
+    this.batch.clear();
+  }
+
+  /**
+   * Returns the number of updates which have been replaced before being applied.
+   *
+   * @return the number of dropped updates
+   */
+  synchronized long getNumReplaced() {
+    return this.numReplaced;
+  }
+
+  /**
+   * Returns the number of batches which have been applied.
+   *
+   * @return the number of batches
+   */
+  synchronized long getNumBatches() {
+    return this.numBatches;
+  }
+}
@@ -20,6 +20,7 @@ import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.TextFlow;
 import server.ServerProtocol;
+import util.ProtocolTokenizer;
 
 /** The controller for the game window. */
 public class GameController {
@@ -48,6 +49,7 @@ public class GameController {
   Button quitButton;
   @FXML Label livesLabel;
   @FXML Label scoreLabel;
+  @FXML Label pingLabel;
 
   /** The game */
   public ClientGame game;
@@ -65,9 +67,13 @@ public class GameController {
     this.alertManager = new AlertManager(alertPane, alert);
   }
 
-  /** Creates a game instance and runs it. */
-  public void startGame() {
-    this.game = new ClientGame(this.client, this.gamePane);
+  /**
+   * Creates a game instance and runs it.
+   *
+   * @param deterministic whether the server simulates the game in the deterministic mode
+   */
+  public void startGame(boolean deterministic) {
+    this.game = new ClientGame(this.client, this.gamePane, deterministic);
     game.run();
   }
   /**
@@ -120,6 +126,9 @@ public class GameController {
     this.scoreLabel
         .styleProperty()
         .bind(Bindings.concat("-fx-font-size: ", backgroundPane.widthProperty().divide(60)));
+    this.pingLabel
+        .styleProperty()
+        .bind(Bindings.concat("-fx-font-size: ", backgroundPane.widthProperty().divide(80)));
   }
 
   /**
@@ -210,19 +219,23 @@ public class GameController {
    * @param command The command sent by the server
    */
   public void setBlockColours(String command) {
-    String[] blocks = command.split(ServerProtocol.SUBSEPARATOR.toString());
+    ProtocolTokenizer blocks = new ProtocolTokenizer(ServerProtocol.SUBSEPARATOR.toString());
+    ProtocolTokenizer blockInfo =
+        new ProtocolTokenizer(ServerProtocol.SUBSUBSEPARATOR.toString());
+    blocks.tokenize(command);
 
-    for (String block : blocks) {
-      if (block.equals("")) {
+    for (int i = 0; i < blocks.size(); i++) {
+      if (blocks.field(i).isEmpty()) {
         continue;
       }
-      String[] blockInfo = block.split(ServerProtocol.SUBSUBSEPARATOR.toString());
-      int x = Integer.parseInt(blockInfo[0]);
-      int y = Integer.parseInt(blockInfo[1]);
-      Color colour = Color.valueOf(blockInfo[2]);
+      blockInfo.tokenize(blocks.get(i));
+      int x = blockInfo.parseInt(0);
+      int y = blockInfo.parseInt(1);
+      Color colour = Color.valueOf(blockInfo.get(2));
 
       this.game.setBlockColour(x, y, colour);
     }
+    this.game.drawBlockColours();
   }
 
   /**
@@ -248,4 +261,16 @@ public class GameController {
             + (livesRemaining.equals(String.valueOf(Integer.MAX_VALUE)) ? "∞" : livesRemaining));
     this.scoreLabel.setText("Levels completed: " + levelsCompleted);
   }
+
+  /**
+   * Shows the round-trip time to the server, measured by the pings of the client, and the jitter
+   * of the position updates, which delays the drawing of the cube.
+   *
+   * @param roundTripTime the round-trip time in milliseconds
+   * @param jitter the jitter in milliseconds
+   */
+  public void updateRoundTripTime(double roundTripTime, double jitter) {
+    this.pingLabel.setText(
+        "Ping: " + Math.round(roundTripTime) + " ms, jitter: " + Math.round(jitter) + " ms");
+  }
 }
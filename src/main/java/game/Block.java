@@ -1,17 +1,23 @@
 package game;
 
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
 
-/** Represents a block in the game */
+/**
+ * Represents a block in the game. A block is pure data: its axis-aligned bounding box is stored in
+ * primitive fields so that collisions can be computed without any JavaFX node. The client draws
+ * the blocks separately. The blocks returned by {@link Level} are views of its cells.
+ */
 public class Block {
+  /** The colour of the coin, cached as {@link Colours#getHex()} creates a new colour. */
+  private static final Color COIN = Colours.TRANSPARENT.getHex();
+
   private Color colour;
-  private final Rectangle rectangle;
 
   private int x;
   private int y;
-  private final int xIdx;
-  private final int yIdx;
+  private final int size;
+  private int xIdx;
+  private int yIdx;
 
   /**
    * Creates a new block
@@ -23,11 +29,7 @@ public class Block {
    */
   public Block(Color colour, int x, int y, int size) {
     this.colour = colour;
-    this.rectangle = new Rectangle(x, y, size, size);
-    if (colour != null) {
-      this.rectangle.setFill(colour);
-    }
-
+    this.size = size;
     this.x = x;
     this.y = y;
     this.xIdx = x / size;
@@ -44,10 +46,12 @@ public class Block {
   }
 
   /**
-   * @return the rectangle of the block
+   * Returns the width and height of the block
+   *
+   * @return the size of the block in pixels
    */
-  public Rectangle getRectangle() {
-    return rectangle;
+  public int getSize() {
+    return size;
   }
 
   /**
@@ -92,10 +96,25 @@ public class Block {
    * @param colour the colour of the block
    */
   public void setColour(Color colour) {
-    this.rectangle.setFill(colour);
     this.colour = colour;
   }
 
+  /**
+   * Moves the block to another cell. Used by {@link Level} to reuse the same blocks as views of
+   * different cells.
+   *
+   * @param cellColour the colour of the block in the cell
+   * @param cellX the column index of the cell
+   * @param cellY the row index of the cell
+   */
+  void setCell(Color cellColour, int cellX, int cellY) {
+    this.colour = cellColour;
+    this.xIdx = cellX;
+    this.yIdx = cellY;
+    this.x = cellX * this.size;
+    this.y = cellY * this.size;
+  }
+
   /**
    * Returns the index of the block in the level grid
    *
@@ -111,9 +130,6 @@ public class Block {
    * @return whether a block is a coin or not
    */
   public boolean isCoin() {
-    if (this.colour == null) {
-      return false;
-    }
-    return this.colour.equals(Colours.TRANSPARENT.getHex());
+    return COIN.equals(this.colour);
   }
 }
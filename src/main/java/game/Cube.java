@@ -1,14 +1,19 @@
 package game;
 
-import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
 
 /**
  * Abstract cube class which the server and the client will each extend. Contains all the logic for
- * collisions and movement.
+ * collisions and movement. The cube is pure data: its bounds are computed from its position, size
+ * and rotation, so the server can simulate it without any JavaFX node. The client draws it.
  */
 public abstract class Cube {
+  /**
+   * The colour of the white blocks, cached as {@link Colours#getHex()} creates a new colour and the
+   * blocks are checked on every tick.
+   */
+  private static final Color WHITE = Colours.WHITE.getHex();
+
   // Position, velocity, acceleration
   final double velocity_constant;
   final double acceleration_constant;
@@ -30,6 +35,9 @@ public abstract class Cube {
    */
   public int accelerationAngle = 0;
 
+  /** Whether the cube has been started by a player since it has last been reset. */
+  public boolean moving = false;
+
   /**
    * Whether the cube is jumping at the moment. True at the beginning because the cube spawns in the
    * air.
@@ -49,21 +57,21 @@ public abstract class Cube {
   // Cube information
   /** The size of the cube in pixels. */
   public int cubeSize;
-  /** The rectangle which represents the cube. Used to detect collisions. */
-  public Rectangle rectangle = new Rectangle();
+  /** The rotation of the cube in degrees. Widens the bounds of the cube while it is jumping. */
+  private double rotation = 0;
+  /** Half of the width of the bounds of the cube, which depends on its rotation. */
+  private double halfExtent;
 
   // Level information
-  final Pane gameRoot;
   /** The size of a block in pixels. */
   public int blockSize;
 
   /**
    * Creates a cube.
    *
-   * @param gameRoot The pane which the cube will be moving on
    * @param spawnPosition The position which the cube will spawn at
    */
-  public Cube(Pane gameRoot, Vector2D spawnPosition) {
+  public Cube(Vector2D spawnPosition) {
     // Initialise position, velocity and acceleration
     this.position = spawnPosition;
     this.velocity_constant = GameConstants.CUBE_VELOCITY.getValue();
@@ -73,17 +81,7 @@ public abstract class Cube {
 
     this.cubeSize = GameConstants.CUBE_SIZE.getValue();
     this.blockSize = GameConstants.BLOCK_SIZE.getValue();
-
-    this.gameRoot = gameRoot;
-
-    spawnCube();
-  }
-
-  /** Spawns the cube at the given position with given size and adds it to the gameRoot */
-  public void spawnCube() {
-    rectangle = new Rectangle(cubeSize, cubeSize);
-    this.setPositionTo(position.getX(), position.getY());
-    gameRoot.getChildren().add(rectangle);
+    this.halfExtent = cubeSize / 2.0;
   }
 
   /**
@@ -113,6 +111,21 @@ public abstract class Cube {
     return acceleration;
   }
 
+  /**
+   * Applies the space bar input of a player: a cube which hasn't been started yet starts moving,
+   * otherwise it jumps if the player has the colour of the platform. The server and the clients
+   * apply the inputs with these same rules, so that the clients can predict them.
+   *
+   * @param colour the colour of the player who pressed the space bar
+   */
+  public void applyInput(Color colour) {
+    if (!moving) {
+      this.initialiseSpeed();
+    } else {
+      this.jump(colour);
+    }
+  }
+
   /**
    * Makes the cube jump by setting the velocity of the cube to the opposite of the gravity vector.
    * Sets the rotation point to be halfway to the landing point in the middle of a block.
@@ -123,22 +136,19 @@ public abstract class Cube {
     if (!jumping && colour.equals(colourCanJump)) {
       // Calculate point around which the cube will rotate if necessary (a jump lasts for one
       // second)
-      rotationPoint = new Vector2D(position.getX(), position.getY());
-      rotationPoint.addInPlace(velocity.multiply(0.5));
-      rotationPoint.addInPlace(
-          new Vector2D(
-              Math.signum(acceleration.getX()) * blockSize,
-              Math.signum(acceleration.getY()) * blockSize));
-
-      // Adjust the speed of the cube for it to jump
-      Vector2D jumpVector =
-          new Vector2D(
-              Math.sin(Math.toRadians(accelerationAngle)),
-              Math.cos(Math.toRadians(accelerationAngle)));
-
-      jumpVector.multiplyInPlace(-maxVelocity);
+      if (rotationPoint == null) {
+        rotationPoint = new Vector2D(0, 0);
+      }
+      rotationPoint.set(position);
+      rotationPoint.scaleAdd(velocity, 0.5);
+      rotationPoint.set(
+          rotationPoint.getX() + Math.signum(acceleration.getX()) * blockSize,
+          rotationPoint.getY() + Math.signum(acceleration.getY()) * blockSize);
 
-      velocity.addInPlace(jumpVector);
+      // Adjust the speed of the cube for it to jump, opposite to the gravity
+      velocity.set(
+          velocity.getX() - Vector2D.directionX(accelerationAngle) * maxVelocity,
+          velocity.getY() - Vector2D.directionY(accelerationAngle) * maxVelocity);
 
       // Don't allow the cube to jump again until it has landed
       jumping = true;
@@ -157,14 +167,14 @@ public abstract class Cube {
    */
   public void move(Block[] neighbourBlocks, double dt) {
     // Update the velocity according to acceleration
-    this.velocity.addInPlace(acceleration.multiply(dt));
+    this.velocity.scaleAdd(acceleration, dt);
 
     // Move cube in x direction and check for collisions
     this.setPositionTo(this.position.getX() + velocity.getX() * dt, this.position.getY());
 
     for (Block block : neighbourBlocks) {
       if (block != null) {
-        if (this.rectangle.getBoundsInParent().intersects(block.getRectangle().getBoundsInParent())) {
+        if (this.intersects(block)) {
           // Checks for collision with a coin
           this.checkCoinCollision(block);
 
@@ -174,13 +184,12 @@ public abstract class Cube {
           if (!isEdgeCollision && !block.isCoin()) {
             // If the block was to the right of the cube before collision
             if (velocity.getX() > 0) {
-              this.setPositionTo(block.getX() - this.rectangle.getWidth(), this.position.getY());
+              this.setPositionTo(block.getX() - this.cubeSize, this.position.getY());
               this.setAccelerationAngle(90);
             }
             // If the block was to the left of the cube before collision
             else if (velocity.getX() < 0) {
-              this.setPositionTo(
-                  block.getX() + block.getRectangle().getWidth(), this.position.getY());
+              this.setPositionTo(block.getX() + block.getSize(), this.position.getY());
               this.setAccelerationAngle(270);
             }
 
@@ -194,7 +203,7 @@ public abstract class Cube {
 
           if (block.getColour() != null) {
             // Check for collision with white block
-            if (block.getColour().equals(Colours.WHITE.getHex())) {
+            if (WHITE.equals(block.getColour())) {
               this.die();
             }
           }
@@ -207,9 +216,7 @@ public abstract class Cube {
 
     for (Block block : neighbourBlocks) {
       if (block != null) {
-        if (this.rectangle
-            .getBoundsInParent()
-            .intersects(block.getRectangle().getBoundsInParent())) {
+        if (this.intersects(block)) {
           // Checks for collision with a coin
           this.checkCoinCollision(block);
 
@@ -218,13 +225,12 @@ public abstract class Cube {
           if (!isEdgeCollision && !block.isCoin()) {
             // If the block was below the cube before collision
             if (velocity.getY() > 0) {
-              this.setPositionTo(this.position.getX(), block.getY() - rectangle.getHeight());
+              this.setPositionTo(this.position.getX(), block.getY() - this.cubeSize);
               this.setAccelerationAngle(0);
             }
             // If the block was above the cube before collision
             else if (velocity.getY() < 0) {
-              this.setPositionTo(
-                  this.position.getX(), block.getY() + block.getRectangle().getHeight());
+              this.setPositionTo(this.position.getX(), block.getY() + block.getSize());
               this.setAccelerationAngle(180);
             }
 
@@ -238,7 +244,7 @@ public abstract class Cube {
 
           // Check collision with a white block
           if (block.getColour() != null) {
-            if (block.getColour().equals(Colours.WHITE.getHex())) {
+            if (WHITE.equals(block.getColour())) {
               this.die();
             }
           }
@@ -261,6 +267,7 @@ public abstract class Cube {
     this.velocity.setY(0);
 
     this.setAccelerationAngle(0);
+    this.moving = true;
   }
 
   /**
@@ -273,8 +280,7 @@ public abstract class Cube {
   public void onlySetAccelerationAngle(int angle) {
     this.accelerationAngle = angle;
 
-    this.acceleration.setX(Math.sin(Math.toRadians(angle)) * acceleration_constant);
-    this.acceleration.setY(Math.cos(Math.toRadians(angle)) * acceleration_constant);
+    this.acceleration.setDirection(angle, acceleration_constant);
   }
 
   /**
@@ -292,8 +298,7 @@ public abstract class Cube {
       this.velocity.setY(Math.signum(-this.acceleration.getY()) * velocity_constant);
     }
 
-    this.acceleration.setX(Math.sin(Math.toRadians(angle)) * acceleration_constant);
-    this.acceleration.setY(Math.cos(Math.toRadians(angle)) * acceleration_constant);
+    this.acceleration.setDirection(angle, acceleration_constant);
   }
 
   /**
@@ -301,15 +306,13 @@ public abstract class Cube {
    * cube has collided with a white block.
    */
   public void resetMovement() {
-    this.position.setX(start_position.getX());
-    this.position.setY(start_position.getY());
-    this.rectangle.setTranslateX(this.position.getX());
-    this.rectangle.setTranslateY(this.position.getY());
+    this.setPositionTo(start_position.getX(), start_position.getY());
 
     this.setAccelerationAngle(0);
 
     this.velocity.setX(0);
     this.velocity.setY(0);
+    this.moving = false;
   }
 
   /**
@@ -322,10 +325,27 @@ public abstract class Cube {
   public boolean isEdgeCollision(Block block, Boolean isX) {
     if (isX) {
       return (block.getY() == this.position.getY() + this.cubeSize
-          || block.getY() + block.getRectangle().getHeight() == this.position.getY());
+          || block.getY() + block.getSize() == this.position.getY());
     }
     return (block.getX() == this.position.getX() + this.cubeSize
-        || block.getX() + block.getRectangle().getWidth() == this.position.getX());
+        || block.getX() + block.getSize() == this.position.getX());
+  }
+
+  /**
+   * Checks whether the bounds of the cube intersect the bounds of a block. The bounds of the cube
+   * are those of the square rotated around its centre; touching edges count as an intersection.
+   *
+   * @param block the block to check
+   * @return whether the cube and the block intersect
+   */
+  public boolean intersects(Block block) {
+    double centreX = this.position.getX() + this.cubeSize / 2.0;
+    double centreY = this.position.getY() + this.cubeSize / 2.0;
+
+    return centreX + this.halfExtent >= block.getX()
+        && centreX - this.halfExtent <= block.getX() + block.getSize()
+        && centreY + this.halfExtent >= block.getY()
+        && centreY - this.halfExtent <= block.getY() + block.getSize();
   }
 
   /**
@@ -388,6 +408,16 @@ public abstract class Cube {
     this.velocity.setY(velocityY);
   }
 
+  /**
+   * Rounds the position and the velocity of the cube to fixed-point values. Called after every tick
+   * in the deterministic mode, so that the state of the cube can be reproduced exactly from the
+   * values sent over the network. See {@link FixedPoint}.
+   */
+  public void quantise() {
+    this.setPositionTo(FixedPoint.snap(this.position.getX()), FixedPoint.snap(this.position.getY()));
+    this.velocity.set(FixedPoint.snap(this.velocity.getX()), FixedPoint.snap(this.velocity.getY()));
+  }
+
   /**
    * Sets position of the cube to the given x and y.
    *
@@ -395,12 +425,38 @@ public abstract class Cube {
    * @param y the y position to set the cube to
    */
   public void setPositionTo(double x, double y) {
-    this.rectangle.setTranslateX(x);
-    this.rectangle.setTranslateY(y);
     this.position.setX(x);
     this.position.setY(y);
   }
 
+  /**
+   * Returns the rotation of the cube.
+   *
+   * @return the rotation of the cube in degrees
+   */
+  public double getRotation() {
+    return this.rotation;
+  }
+
+  /**
+   * Sets the rotation of the cube and updates the size of its bounds accordingly.
+   *
+   * @param angle the rotation of the cube in degrees
+   */
+  public void setRotation(double angle) {
+    this.rotation = angle;
+
+    if (angle == 0) {
+      this.halfExtent = this.cubeSize / 2.0;
+    } else {
+      // StrictMath gives the same bounds on every machine, which the deterministic mode relies on
+      double radians = Math.toRadians(angle);
+      this.halfExtent =
+          this.cubeSize / 2.0
+              * (Math.abs(StrictMath.cos(radians)) + Math.abs(StrictMath.sin(radians)));
+    }
+  }
+
   /**
    * If the cube is jumping, rotate it by 180 degrees per second. If not, reset the rotation to 0 degrees.
    * This may result in a slight stutter when the cube lands, but it is barely noticeable if the levels
@@ -412,20 +468,20 @@ public abstract class Cube {
     if (!jumping) {
       rotating = false;
       clockwise = signum(this.getVelocity().getX())
-          == signum(Math.cos(Math.toRadians(this.accelerationAngle)))
+          == signum(Vector2D.directionY(this.accelerationAngle))
           && signum(-this.getVelocity().getY())
-          == signum(Math.sin(Math.toRadians(this.accelerationAngle)));
+          == signum(Vector2D.directionX(this.accelerationAngle));
     }
 
     if (rotating) {
       // Rotate the cube
       if (clockwise) {
-        this.rectangle.setRotate(this.rectangle.getRotate() + 180 * dt);
+        this.setRotation(this.rotation + 180 * dt);
       } else {
-        this.rectangle.setRotate(this.rectangle.getRotate() - 180 * dt);
+        this.setRotation(this.rotation - 180 * dt);
       }
-    } else {
-      this.rectangle.setRotate(0);
+    } else if (this.rotation != 0) {
+      this.setRotation(0);
     }
   }
 
@@ -0,0 +1,113 @@
+package game;
+
+import javafx.scene.paint.Color;
+
+/**
+ * A copy of everything which the simulation of a {@link Cube} depends on, so that the cube can be
+ * rewound to an earlier tick and simulated again. Instances are mutable and meant to be reused, so
+ * that saving the state every tick allocates nothing.
+ */
+public final class CubeState {
+  /** The x coordinate of the position. */
+  private double positionX;
+  /** The y coordinate of the position. */
+  private double positionY;
+  /** The x component of the velocity. */
+  private double velocityX;
+  /** The y component of the velocity. */
+  private double velocityY;
+  /** The angle of the acceleration in degrees. */
+  private int accelerationAngle;
+  /** See {@link Cube#moving}. */
+  private boolean moving;
+  /** See {@link Cube#jumping}. */
+  private boolean jumping;
+  /** See {@link Cube#canRotate}. */
+  private boolean canRotate;
+  /** See {@link Cube#rotating}. */
+  private boolean rotating;
+  /** See {@link Cube#clockwise}. */
+  private boolean clockwise;
+  /** The rotation of the cube in degrees. */
+  private double rotation;
+  /** The colour on which the cube is moving. */
+  private Color colourCanJump;
+  /** Whether the cube has a rotation point. */
+  private boolean hasRotationPoint;
+  /** The x coordinate of the rotation point. */
+  private double rotationPointX;
+  /** The y coordinate of the rotation point. */
+  private double rotationPointY;
+
+  /**
+   * Copies the state of a cube.
+   *
+   * @param cube the cube to copy
+   */
+  public void capture(Cube cube) {
+    this.positionX = cube.position.getX();
+    this.positionY = cube.position.getY();
+    this.velocityX = cube.velocity.getX();
+    this.velocityY = cube.velocity.getY();
+    this.accelerationAngle = cube.accelerationAngle;
+    this.moving = cube.moving;
+    this.jumping = cube.jumping;
+    this.canRotate = cube.canRotate;
+    this.rotating = cube.rotating;
+    this.clockwise = cube.clockwise;
+    this.rotation = cube.getRotation();
+    this.colourCanJump = cube.colourCanJump;
+    this.hasRotationPoint = cube.rotationPoint != null;
+    if (this.hasRotationPoint) {
+      this.rotationPointX = cube.rotationPoint.getX();
+      this.rotationPointY = cube.rotationPoint.getY();
+    }
+  }
+
+  /**
+   * Puts a cube back into the copied state.
+   *
+   * @param cube the cube to restore
+   */
+  public void restore(Cube cube) {
+    cube.setPositionTo(this.positionX, this.positionY);
+    cube.setVelocityTo(this.velocityX, this.velocityY);
+    cube.onlySetAccelerationAngle(this.accelerationAngle);
+    cube.moving = this.moving;
+    cube.jumping = this.jumping;
+    cube.canRotate = this.canRotate;
+    cube.rotating = this.rotating;
+    cube.clockwise = this.clockwise;
+    cube.setRotation(this.rotation);
+    cube.colourCanJump = this.colourCanJump;
+    if (!this.hasRotationPoint) {
+      cube.rotationPoint = null;
+    } else if (cube.rotationPoint == null) {
+      cube.rotationPoint = new Vector2D(this.rotationPointX, this.rotationPointY);
+    } else {
+      cube.rotationPoint.set(this.rotationPointX, this.rotationPointY);
+    }
+  }
+
+  /**
+   * Whether the state sent by the server matches this one, i.e. whether a prediction was right.
+   *
+   * @param x the x coordinate of the position
+   * @param y the y coordinate of the position
+   * @param vx the x component of the velocity
+   * @param vy the y component of the velocity
+   * @param angle the angle of the acceleration
+   * @param isMoving whether the cube has been started
+   * @param tolerance the largest difference of the position and velocity that is ignored
+   * @return true if the states match
+   */
+  public boolean matches(
+      double x, double y, double vx, double vy, int angle, boolean isMoving, double tolerance) {
+    return Math.abs(this.positionX - x) <= tolerance
+        && Math.abs(this.positionY - y) <= tolerance
+        && Math.abs(this.velocityX - vx) <= tolerance
+        && Math.abs(this.velocityY - vy) <= tolerance
+        && this.accelerationAngle == angle
+        && this.moving == isMoving;
+  }
+}
@@ -0,0 +1,51 @@
+package game;
+
+/**
+ * Fixed-point numbers used by the deterministic simulation mode. The position and velocity of the
+ * cube are rounded to a multiple of {@link #RESOLUTION} after every tick, so that its state is a
+ * whole number of fixed-point units: it is exactly representable as a double, sent over the
+ * network without rounding and reproduced bit for bit by every simulation which applies the same
+ * inputs at the same ticks.
+ */
+public final class FixedPoint {
+
+  /** The number of fractional bits. */
+  public static final int FRACTION_BITS = 8;
+  /** The number of units in one pixel. */
+  public static final long ONE = 1L << FRACTION_BITS;
+  /** The smallest representable difference, in pixels. */
+  public static final double RESOLUTION = 1.0 / ONE;
+
+  /** Not instantiable. */
+  private FixedPoint() {}
+
+  /**
+   * Converts a value to fixed-point units, rounding to the nearest unit.
+   *
+   * @param value the value in pixels (or pixels per second)
+   * @return the number of fixed-point units
+   */
+  public static long toFixed(double value) {
+    return Math.round(value * ONE);
+  }
+
+  /**
+   * Converts fixed-point units back to a value.
+   *
+   * @param units the number of fixed-point units
+   * @return the value in pixels (or pixels per second)
+   */
+  public static double toDouble(long units) {
+    return (double) units / ONE;
+  }
+
+  /**
+   * Rounds a value to the nearest fixed-point value.
+   *
+   * @param value the value to round
+   * @return the representable value closest to the given one
+   */
+  public static double snap(double value) {
+    return toDouble(toFixed(value));
+  }
+}
@@ -26,6 +26,11 @@ public enum GameConstants {
   CUBE_ACCELERATION(BLOCK_SIZE.value * BLOCKS_PER_SECOND.value * 4),
   /** The default direction in which the gravity acts. */
   DEFAULT_ACCELERATION_ANGLE(0),
+  /**
+   * The number of simulation ticks per second of the server, and of the client in the
+   * deterministic mode.
+   */
+  TICK_RATE(120),
   /** The number of blocks which are displayed on the screen horizontally. */
   BLOCKS_SEEN_HORIZONTAL(40);
 
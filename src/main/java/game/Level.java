@@ -1,18 +1,24 @@
 package game;
 
-import client.LevelReader;
 import java.util.ArrayList;
 import java.util.Objects;
-import java.util.Optional;
-import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import server.Server;
 
-/** The level class which loads a level from a string and handles the logic for the level. */
+/**
+ * The level class which loads a level from a string and handles the logic for the level. The cells
+ * are not stored as blocks: the type and platform of every cell are read from the shared {@link
+ * LevelLayout} and the level itself only holds the colour of every platform. Blocks are created on
+ * demand as views of a cell.
+ */
 public class Level {
-  private final String levelPath;
-  // Grid of blocks
-  private Block[][] grid;
+  /** The colour of the white blocks, cached as {@link Colours#getHex()} creates a new colour. */
+  private static final Color WHITE = Colours.WHITE.getHex();
+  /** The colour of the coin block. */
+  private static final Color TRANSPARENT = Colours.TRANSPARENT.getHex();
+
+  /** The parsed level file, shared with the other levels created from it. */
+  private final LevelLayout layout;
   /** The width of a block. */
   public int blockWidth;
   /** The position at which the player spawns. */
@@ -22,153 +28,171 @@ public class Level {
   public int[] coinIdx = {-1, -1};
 
   private final ArrayList<Block> criticalBlocks = new ArrayList<>();
+  /** The colour of every platform, null until it has been chosen. */
+  private final Color[] platformColours;
 
-  // Pane on which the level is drawn
-  Pane gameRoot;
+  /** The buffer of {@link #getNeighbourBlocks(double, double)}, reused by every call. */
+  private final NeighbourBuffer neighbours = new NeighbourBuffer();
 
   /**
-   * Creates a new level.
+   * Creates a new level. The level only holds data; the client draws it separately. The level file
+   * is only read the first time, see {@link LevelRegistry}.
    *
    * @param levelPath the path to the level
    * @param blockWidth the width of a block
-   * @param gameRoot the pane on which the level is drawn
    */
-  public Level(String levelPath, int blockWidth, Pane gameRoot) {
-    this.levelPath = levelPath;
+  public Level(String levelPath, int blockWidth) {
+    this(LevelRegistry.getDefault().getLayout(levelPath), blockWidth);
+  }
+
+  /**
+   * Creates a new level from a parsed level file.
+   *
+   * @param layout the parsed level file
+   * @param blockWidth the width of a block
+   */
+  public Level(LevelLayout layout, int blockWidth) {
+    this.layout = layout;
     this.blockWidth = blockWidth;
-    this.gameRoot = gameRoot;
+    this.platformColours = new Color[layout.getPlatformCount()];
+    this.playerSpawnIdx[0] = layout.getSpawnX();
+    this.playerSpawnIdx[1] = layout.getSpawnY();
+    this.coinIdx[0] = layout.getCoinX();
+    this.coinIdx[1] = layout.getCoinY();
+  }
 
-    String levelString = LevelReader.readLevel(this.levelPath);
-    loadLevel(levelString);
+  /**
+   * Returns the parsed level file of the level.
+   *
+   * @return the layout
+   */
+  public LevelLayout getLayout() {
+    return this.layout;
   }
 
   /**
-   * Gets a level as a string input and loads it into the grid. 0 = no block, 1 = white block, 2 =
-   * coloured block.
+   * Whether a cell holds a block.
    *
-   * @param levelData The level data as a string with different lines separated by a newline
+   * @param xIdx the column index of the cell
+   * @param yIdx the row index of the cell
+   * @return false if the cell is empty or outside the level
    */
-  private void loadLevel(String levelData) {
-    String[] gridLines = levelData.split("\n");
-
-    this.grid = new Block[gridLines.length][gridLines[0].length()];
-
-    for (int i = 0; i < gridLines.length; i++) {
-      for (int j = 0; j < gridLines[0].length(); j++) {
-        // Some levels may be incorrectly formatted, so we ignore missing blocks and rely
-        // on the fact that the players will notice that the level is broken
-        if (gridLines[i].length() > j) {
-          switch (gridLines[i].charAt(j)) {
-            case '1' -> this.grid[i][j] =
-                new Block(Colours.WHITE.getHex(), j * blockWidth, i * blockWidth, blockWidth);
-            case '2' -> this.grid[i][j] = new Block(null, j * blockWidth, i * blockWidth, blockWidth);
-            case '3' -> {
-              this.playerSpawnIdx[0] = j;
-              this.playerSpawnIdx[1] = i;
-            }
-            case '4' -> {
-              this.coinIdx[0] = j;
-              this.coinIdx[1] = i;
-              this.grid[i][j] = new Block(Colours.TRANSPARENT.getHex(), j * blockWidth, i * blockWidth, blockWidth);
-            }
-            default -> this.grid[i][j] = null;
-          }
-        }
-      }
+  public boolean hasBlock(int xIdx, int yIdx) {
+    if (yIdx < 0 || yIdx >= layout.getHeight() || xIdx < 0 || xIdx >= layout.getWidth()) {
+      return false;
     }
+    byte cell = layout.getCell(xIdx, yIdx);
+    return cell == LevelLayout.WHITE || cell == LevelLayout.COLOURED || cell == LevelLayout.COIN;
+  }
 
-    for (Block[] line : this.grid) {
-      for (Block block : line) {
-        if (block != null) {
-          gameRoot.getChildren().add(block.getRectangle());
-
-          // Update the x and y positions of block to access them later in collision checks
-          block.setX((int) block.getRectangle().getBoundsInParent().getMinX());
-          block.setY((int) block.getRectangle().getBoundsInParent().getMinY());
-        }
-      }
-    }
+  /**
+   * Returns the colour of the block in a cell. The cell must hold a block.
+   *
+   * @param xIdx the column index of the block
+   * @param yIdx the row index of the block
+   * @return the colour, null for a block whose platform hasn't been coloured yet
+   */
+  public Color getColour(int xIdx, int yIdx) {
+    return switch (layout.getCell(xIdx, yIdx)) {
+      case LevelLayout.WHITE -> WHITE;
+      case LevelLayout.COIN -> TRANSPARENT;
+      case LevelLayout.COLOURED -> platformColours[layout.getPlatformId(xIdx, yIdx)];
+      default -> null;
+    };
   }
 
   /**
-   * Returns the nine blocks neighbouring a position.
+   * Returns the nine blocks neighbouring a position, using a buffer owned by the level. Not
+   * thread-safe: the returned array and its blocks are reused by the next call, so they must not be
+   * kept. The simulations use {@link #getNeighbourBlocks(double, double, NeighbourBuffer)}.
    *
    * @param x The x position of the block
    * @param y The y position of the block
-   * @return The nine blocks neighbouring the block at the given position
+   * @return The nine blocks neighbouring the block at the given position, null for empty cells
    */
   public Block[] getNeighbourBlocks(double x, double y) {
+    return getNeighbourBlocks(x, y, this.neighbours);
+  }
+
+  /**
+   * Fills a buffer with the nine blocks neighbouring a position. Cells outside the level are
+   * empty. Nothing is allocated once the buffer has been used, and the level isn't modified, so
+   * several threads can query the same level with their own buffers.
+   *
+   * @param x The x position of the block
+   * @param y The y position of the block
+   * @param buffer The buffer to fill, owned by the caller
+   * @return The blocks of the buffer, see {@link NeighbourBuffer#getBlocks()}
+   */
+  public Block[] getNeighbourBlocks(double x, double y, NeighbourBuffer buffer) {
     int xIndex = (int) Math.floor(x / blockWidth);
     int yIndex = (int) Math.floor(y / blockWidth);
 
-    Block[] neighbours = new Block[9];
-
     for (int i = -1; i < 2; i++) {
       for (int j = -1; j < 2; j++) {
-        try {
-          neighbours[(i + 1) * 3 + j + 1] = grid[yIndex + i][xIndex + j];
-        } catch (ArrayIndexOutOfBoundsException e) {
-          neighbours[(i + 1) * 3 + j + 1] = null;
+        int neighbour = (i + 1) * 3 + j + 1;
+        if (hasBlock(xIndex + j, yIndex + i)) {
+          buffer.set(
+              neighbour, getColour(xIndex + j, yIndex + i), xIndex + j, yIndex + i, blockWidth);
+        } else {
+          buffer.clear(neighbour);
         }
       }
     }
-    return neighbours;
+    return buffer.getBlocks();
+  }
+
+  /**
+   * Returns the block at the given index of the grid. A new block is created by every call and
+   * doesn't follow later changes of the colour of its platform.
+   *
+   * @param xIdx the column index of the block
+   * @param yIdx the row index of the block
+   * @return the block, or null if the cell is empty or outside the level
+   */
+  public Block getBlock(int xIdx, int yIdx) {
+    if (!hasBlock(xIdx, yIdx)) {
+      return null;
+    }
+    return new Block(getColour(xIdx, yIdx), xIdx * blockWidth, yIdx * blockWidth, blockWidth);
   }
 
   /**
-   * Iterates through the blocks of the level and sets their colours. If a block hasn't been
-   * coloured yet, a colour is randomly chosen and set to it. Its neighbours (up, down, left, right)
-   * are there coloured with the same colour.
+   * Gives every platform of the level a random colour. The first block of every platform is added
+   * to the critical blocks, which are sent to the clients so that they can colour the level the
+   * same way.
    *
    * @param colours The colours that can be used to colour the blocks
    */
   public void setBlockColours(ArrayList<Color> colours) {
-    for (int i = 0; i < grid.length; i++) {
-      for (int j = 0; j < grid[i].length; j++) {
-        Optional<Block> block = Optional.ofNullable(grid[i][j]);
-        if (block.isPresent()) {
-          if (block.get().getColour() == null) {
-            // Get random colour
-            Color colour = colours.get((int) Math.floor(Math.random() * colours.size()));
-
-            // Set block colour (and adjacent blocks recursively)
-            setNeighbourColours(j, i, colour);
-
-            // Add block to critical blocks in order for it to be sent to client
-            criticalBlocks.add(block.get());
-          }
-        }
-      }
+    criticalBlocks.clear();
+    for (int platform = 0; platform < layout.getPlatformCount(); platform++) {
+      platformColours[platform] = colours.get((int) Math.floor(Math.random() * colours.size()));
+      criticalBlocks.add(
+          getBlock(layout.getPlatformStartX(platform), layout.getPlatformStartY(platform)));
     }
   }
 
   /**
-   * Takes a block as input. Sets this block's colour and iterates recursively through its
-   * neighbours (up, down, left, right) and sets their colours to the same colour.
+   * Sets the colour of the platform a block belongs to, and thereby of all blocks of the platform.
    *
    * @param xIdx the column index of the block
    * @param yIdx the row index of the block
-   * @param colour the colour to set the block to
+   * @param colour the colour of the platform
    */
-  public void setNeighbourColours(int xIdx, int yIdx, Color colour) {
-    // Recursion return statement
+  public void setPlatformColour(int xIdx, int yIdx, Color colour) {
     boolean indexOutOfBounds =
-        xIdx < 0 || xIdx >= grid[0].length || yIdx < 0 || yIdx >= grid.length;
+        xIdx < 0 || xIdx >= layout.getWidth() || yIdx < 0 || yIdx >= layout.getHeight();
     if (indexOutOfBounds) return;
-    if (grid[yIdx][xIdx] == null) return;
-    if (grid[yIdx][xIdx].getColour() != null) return;
-
-    grid[yIdx][xIdx].setColour(colour);
-
-    setNeighbourColours(xIdx - 1, yIdx, colour);
-    setNeighbourColours(xIdx + 1, yIdx, colour);
-    setNeighbourColours(xIdx, yIdx - 1, colour);
-    setNeighbourColours(xIdx, yIdx + 1, colour);
+    int platform = layout.getPlatformId(xIdx, yIdx);
+    if (platform >= 0) {
+      platformColours[platform] = colour;
+    }
   }
 
   /**
-   * Returns the blocks in the level which "begin" a platform. If the methods {@link
-   * #setNeighbourColours(int, int, Color)} are called on these blocks, the whole level will be
+   * Returns the blocks in the level which "begin" a platform. If the method {@link
+   * #setPlatformColour(int, int, Color)} is called on these blocks, the whole level will be
    * coloured.
    *
    * @return the critical blocks
@@ -182,7 +206,7 @@ public class Level {
    * @return the width in pixels of the level
    */
   public double getPixelWidth() {
-    return grid[0].length * blockWidth;
+    return layout.getWidth() * blockWidth;
   }
 
   /**
@@ -190,7 +214,7 @@ public class Level {
    * @return the amount of blocks in one line of the level
    */
   public int getBlockWidth() {
-    return grid[0].length;
+    return layout.getWidth();
   }
 
   /**
@@ -198,7 +222,7 @@ public class Level {
    * @return the amount of blocks in one column of the level
    */
   public int getBlockHeight() {
-    return grid.length;
+    return layout.getHeight();
   }
 
   /**
@@ -206,6 +230,6 @@ public class Level {
    * @return the height in pixels of the level
    */
   public double getPixelHeight() {
-    return grid.length * blockWidth;
+    return layout.getHeight() * blockWidth;
   }
 }
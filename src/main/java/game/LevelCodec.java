@@ -0,0 +1,211 @@
+package game;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The binary level format written by {@link LevelCompiler}. A compiled level holds the same data as
+ * a parsed {@link LevelLayout}, including the platform of every coloured block, so loading it
+ * neither parses text nor labels platforms. All values are big-endian.
+ *
+ * <pre>
+ * int   MAGIC
+ * byte  VERSION
+ * byte  flags (FLAG_SPAWN if the level has a spawn cell)
+ * int   width, height
+ * int   spawn column, spawn row
+ * int   coin column, coin row (-1 if the level has no coin)
+ * int   number of platforms
+ * byte  cell types, packed 4 cells per byte, the first cell in the lowest 2 bits
+ * int   platform of every coloured block, row by row
+ * </pre>
+ *
+ * <p>The packed cell types are {@link #PACKED_EMPTY}, {@link #PACKED_WHITE}, {@link
+ * #PACKED_COLOURED} and {@link #PACKED_COIN}. The spawn cell is packed as an empty cell.
+ */
+public final class LevelCodec {
+
+  /** The file extension of compiled levels. */
+  public static final String EXTENSION = ".lvl";
+  /** The first bytes of a compiled level, "HUES". */
+  public static final int MAGIC = 0x48554553;
+  /** The version of the format. */
+  public static final byte VERSION = 1;
+
+  /** Set in the flags if the level has a spawn cell. */
+  private static final int FLAG_SPAWN = 1;
+  /**
+   * The largest number of cells of a level, far more than any real level. Checked before anything
+   * is allocated, so that a corrupt header can't request huge arrays.
+   */
+  private static final int MAX_CELLS = 1 << 20;
+  /** The length of the header, up to the packed cells. */
+  private static final int HEADER_LENGTH = 4 + 1 + 1 + 7 * 4;
+
+  /** A packed empty cell. */
+  private static final int PACKED_EMPTY = 0;
+  /** A packed white block. */
+  private static final int PACKED_WHITE = 1;
+  /** A packed coloured block. */
+  private static final int PACKED_COLOURED = 2;
+  /** A packed coin. */
+  private static final int PACKED_COIN = 3;
+
+  /** Not instantiable. */
+  private LevelCodec() {}
+
+  /**
+   * Encodes a level.
+   *
+   * @param layout the level
+   * @return the compiled level
+   */
+  public static byte[] encode(LevelLayout layout) {
+    int width = layout.getWidth();
+    int height = layout.getHeight();
+    int numCells = width * height;
+
+    int numColoured = 0;
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        if (layout.getCell(j, i) == LevelLayout.COLOURED) {
+          numColoured++;
+        }
+      }
+    }
+
+    ByteBuffer buffer =
+        ByteBuffer.allocate(HEADER_LENGTH + packedLength(numCells) + numColoured * 4);
+    buffer.putInt(MAGIC);
+    buffer.put(VERSION);
+    buffer.put((byte) (layout.hasSpawn() ? FLAG_SPAWN : 0));
+    buffer.putInt(width).putInt(height);
+    buffer.putInt(layout.getSpawnX()).putInt(layout.getSpawnY());
+    buffer.putInt(layout.getCoinX()).putInt(layout.getCoinY());
+    buffer.putInt(layout.getPlatformCount());
+
+    int packed = 0;
+    for (int cell = 0; cell < numCells; cell++) {
+      int type =
+          switch (layout.getCell(cell % width, cell / width)) {
+            case LevelLayout.WHITE -> PACKED_WHITE;
+            case LevelLayout.COLOURED -> PACKED_COLOURED;
+            case LevelLayout.COIN -> PACKED_COIN;
+            default -> PACKED_EMPTY;
+          };
+      packed |= type << ((cell & 3) * 2);
+      if ((cell & 3) == 3 || cell == numCells - 1) {
+        buffer.put((byte) packed);
+        packed = 0;
+      }
+    }
+
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        if (layout.getCell(j, i) == LevelLayout.COLOURED) {
+          buffer.putInt(layout.getPlatformId(j, i));
+        }
+      }
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Decodes a compiled level. The buffer is read from its position and may be a mapped file.
+   *
+   * @param path the path of the level, sent to the clients
+   * @param difficulty the difficulty of the level
+   * @param buffer the compiled level, big-endian
+   * @return the level
+   * @throws IllegalArgumentException if the buffer doesn't hold a valid compiled level
+   */
+  public static LevelLayout decode(String path, String difficulty, ByteBuffer buffer) {
+    try {
+      if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+        throw new IllegalArgumentException(path + " isn't a compiled level of version " + VERSION);
+      }
+      int flags = buffer.get();
+      int width = buffer.getInt();
+      int height = buffer.getInt();
+      int[] spawn = {buffer.getInt(), buffer.getInt()};
+      int[] coin = {buffer.getInt(), buffer.getInt()};
+      int platformCount = buffer.getInt();
+      if (width <= 0 || height <= 0 || (long) width * height > MAX_CELLS) {
+        throw new IllegalArgumentException(path + " has invalid dimensions");
+      }
+      int numCells = width * height;
+      if (platformCount < 0 || platformCount > numCells) {
+        throw new IllegalArgumentException(path + " has an invalid platform count");
+      }
+      if (buffer.remaining() < packedLength(numCells)) {
+        throw new IllegalArgumentException(path + " is truncated");
+      }
+
+      byte[] cells = new byte[numCells];
+      int packed = 0;
+      for (int cell = 0; cell < numCells; cell++) {
+        if ((cell & 3) == 0) {
+          packed = buffer.get();
+        }
+        cells[cell] =
+            switch ((packed >> ((cell & 3) * 2)) & 3) {
+              case PACKED_WHITE -> LevelLayout.WHITE;
+              case PACKED_COLOURED -> LevelLayout.COLOURED;
+              case PACKED_COIN -> LevelLayout.COIN;
+              default -> LevelLayout.EMPTY;
+            };
+      }
+
+      int numColoured = 0;
+      for (byte cell : cells) {
+        if (cell == LevelLayout.COLOURED) {
+          numColoured++;
+        }
+      }
+      if (buffer.remaining() < (long) numColoured * Integer.BYTES) {
+        throw new IllegalArgumentException(path + " is truncated");
+      }
+      int[] platformIds = new int[numCells];
+      for (int cell = 0; cell < numCells; cell++) {
+        if (cells[cell] == LevelLayout.COLOURED) {
+          platformIds[cell] = buffer.getInt();
+          if (platformIds[cell] < 0 || platformIds[cell] >= platformCount) {
+            throw new IllegalArgumentException(path + " has an invalid platform id");
+          }
+        } else {
+          platformIds[cell] = -1;
+        }
+      }
+
+      boolean hasSpawn = (flags & FLAG_SPAWN) != 0;
+      if (hasSpawn) {
+        if (spawn[0] < 0 || spawn[0] >= width || spawn[1] < 0 || spawn[1] >= height) {
+          throw new IllegalArgumentException(path + " has an invalid spawn cell");
+        }
+        cells[spawn[1] * width + spawn[0]] = LevelLayout.SPAWN;
+      }
+      return new LevelLayout(
+          path,
+          difficulty,
+          width,
+          height,
+          cells,
+          hasSpawn ? spawn : null,
+          coin,
+          platformIds,
+          platformCount);
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException(path + " is truncated", e);
+    }
+  }
+
+  /**
+   * Returns the number of bytes holding the packed cell types.
+   *
+   * @param numCells the number of cells
+   * @return the number of bytes
+   */
+  private static int packedLength(int numCells) {
+    return (numCells + 3) / 4;
+  }
+}
@@ -0,0 +1,66 @@
+package game;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compiles the csv levels into the binary format of {@link LevelCodec}. Run by the {@code
+ * compileLevels} Gradle task before the resources are packaged, so that the game loads the compiled
+ * levels and only falls back to the csv files when they are missing.
+ */
+public final class LevelCompiler {
+
+  /** Not instantiable. */
+  private LevelCompiler() {}
+
+  /**
+   * Compiles every level of a resources directory.
+   *
+   * @param args the resources directory holding the {@code levels} directory, and the directory in
+   *     which the compiled levels are written with the same relative paths
+   * @throws IOException if a level can't be read or written
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: java game.LevelCompiler <resourcesDir> <outputDir>");
+      System.exit(1);
+    }
+    Path resources = Path.of(args[0]);
+    Path output = Path.of(args[1]);
+
+    List<Path> levels;
+    try (Stream<Path> files = Files.walk(resources.resolve("levels"))) {
+      levels = files.filter(file -> file.toString().endsWith(".csv")).sorted().toList();
+    }
+
+    for (Path level : levels) {
+      Path relative = resources.relativize(level);
+      String name = relative.getFileName().toString();
+      Path target =
+          output
+              .resolve(relative)
+              .resolveSibling(name.substring(0, name.length() - 4) + LevelCodec.EXTENSION);
+      Files.createDirectories(target.getParent());
+      Files.write(target, compile(level));
+    }
+    System.out.println("Compiled " + levels.size() + " levels into " + output);
+  }
+
+  /**
+   * Compiles a level file.
+   *
+   * @param level the csv level file
+   * @return the compiled level
+   * @throws IOException if the file can't be read
+   */
+  static byte[] compile(Path level) throws IOException {
+    // Same line handling as LevelReader
+    String levelData =
+        String.join("\n", Files.readAllLines(level, StandardCharsets.UTF_8)) + "\n";
+    return LevelCodec.encode(new LevelLayout(level.toString(), null, levelData));
+  }
+}
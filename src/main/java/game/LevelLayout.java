@@ -0,0 +1,360 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * The parsed content of a level file: the type of every cell, the spawn position, the coin position
+ * and the platform of every coloured block. A layout is immutable and shared by every {@link Level}
+ * created from it, so that a level file is only read and parsed once per process (see {@link
+ * LevelRegistry}). Layouts are either parsed from the csv level files or decoded from the binary
+ * files compiled by {@link LevelCompiler}.
+ */
+public final class LevelLayout {
+
+  /** An empty cell. */
+  public static final byte EMPTY = 0;
+  /** A white block, which can't be coloured. */
+  public static final byte WHITE = 1;
+  /** A block which is given the colour of a player. */
+  public static final byte COLOURED = 2;
+  /** The cell in which the player spawns. Empty otherwise. */
+  public static final byte SPAWN = 3;
+  /** The cell holding the coin. */
+  public static final byte COIN = 4;
+
+  /** The path of the level file in the resources. */
+  private final String path;
+  /** The difficulty of the level, the name of its directory. */
+  private final String difficulty;
+  /** The number of columns. */
+  private final int width;
+  /** The number of rows. */
+  private final int height;
+  /** The type of every cell, row by row. */
+  private final byte[] cells;
+  /** The column and row of the spawn cell. */
+  private final int[] spawnIdx = new int[2];
+  /** The column and row of the coin, -1 if the level has no coin. */
+  private final int[] coinIdx = {-1, -1};
+  /** Whether the level has a spawn cell. If not, the player spawns in the top left corner. */
+  private final boolean hasSpawn;
+  /** The platform of every cell, -1 for the cells which aren't coloured blocks. */
+  private final int[] platformIds;
+  /** The number of platforms. */
+  private final int platformCount;
+  /** The first cell of every platform, row by row. */
+  private final int[] platformStarts;
+
+  /**
+   * Parses a level. 0 = no block, 1 = white block, 2 = coloured block, 3 = spawn, 4 = coin. Any
+   * other character is an empty cell.
+   *
+   * @param levelPath the path of the level file
+   * @param levelDifficulty the difficulty of the level
+   * @param levelData the level data as a string with different lines separated by a newline
+   */
+  public LevelLayout(String levelPath, String levelDifficulty, String levelData) {
+    this.path = levelPath;
+    this.difficulty = levelDifficulty;
+
+    String[] gridLines = levelData.split("\n");
+    this.height = gridLines.length;
+    this.width = gridLines[0].length();
+    this.cells = new byte[this.width * this.height];
+    boolean spawnFound = false;
+
+    for (int i = 0; i < this.height; i++) {
+      // Some levels may be incorrectly formatted, so we ignore missing blocks and rely
+      // on the fact that the players will notice that the level is broken
+      int length = Math.min(gridLines[i].length(), this.width);
+      for (int j = 0; j < length; j++) {
+        byte cell = (byte) (gridLines[i].charAt(j) - '0');
+        if (cell < EMPTY || cell > COIN) {
+          continue;
+        }
+        this.cells[i * this.width + j] = cell;
+        if (cell == SPAWN) {
+          this.spawnIdx[0] = j;
+          this.spawnIdx[1] = i;
+          spawnFound = true;
+        } else if (cell == COIN) {
+          this.coinIdx[0] = j;
+          this.coinIdx[1] = i;
+        }
+      }
+    }
+    this.hasSpawn = spawnFound;
+    this.platformIds = new int[this.cells.length];
+    this.platformCount = labelPlatforms(this.cells, this.width, this.height, this.platformIds);
+    this.platformStarts = findPlatformStarts(this.platformIds, this.platformCount);
+  }
+
+  /**
+   * Creates a layout from decoded data. Used by {@link LevelCodec}, which has checked the data.
+   *
+   * @param levelPath the path of the level file
+   * @param levelDifficulty the difficulty of the level
+   * @param levelWidth the number of columns
+   * @param levelHeight the number of rows
+   * @param levelCells the type of every cell, row by row. Not copied.
+   * @param spawn the column and row of the spawn cell, or null if the level has none
+   * @param coin the column and row of the coin
+   * @param levelPlatformIds the platform of every cell. Not copied.
+   * @param levelPlatformCount the number of platforms
+   */
+  LevelLayout(
+      String levelPath,
+      String levelDifficulty,
+      int levelWidth,
+      int levelHeight,
+      byte[] levelCells,
+      int[] spawn,
+      int[] coin,
+      int[] levelPlatformIds,
+      int levelPlatformCount) {
+    this.path = levelPath;
+    this.difficulty = levelDifficulty;
+    this.width = levelWidth;
+    this.height = levelHeight;
+    this.cells = levelCells;
+    this.hasSpawn = spawn != null;
+    if (spawn != null) {
+      this.spawnIdx[0] = spawn[0];
+      this.spawnIdx[1] = spawn[1];
+    }
+    this.coinIdx[0] = coin[0];
+    this.coinIdx[1] = coin[1];
+    this.platformIds = levelPlatformIds;
+    this.platformCount = levelPlatformCount;
+    this.platformStarts = findPlatformStarts(this.platformIds, this.platformCount);
+  }
+
+  /**
+   * Groups the coloured blocks into platforms: blocks touching each other horizontally or
+   * vertically belong to the same platform. The platforms are numbered in the order of their first
+   * block, row by row.
+   *
+   * <p>The cells are labelled in two passes with a union-find over provisional labels, which runs
+   * in linear time without recursion whatever the shape of the platforms.
+   *
+   * @param cells the type of every cell, row by row
+   * @param width the number of columns
+   * @param height the number of rows
+   * @param ids filled with the platform of every cell, -1 for the cells which aren't coloured
+   * @return the number of platforms
+   */
+  static int labelPlatforms(byte[] cells, int width, int height, int[] ids) {
+    int[] parent = new int[16];
+    int labels = 0;
+
+    // First pass: provisional labels, merged with the labels above and on the left
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        int cell = i * width + j;
+        if (cells[cell] != COLOURED) {
+          ids[cell] = -1;
+          continue;
+        }
+        int left = j > 0 ? ids[cell - 1] : -1;
+        int up = i > 0 ? ids[cell - width] : -1;
+        if (left < 0 && up < 0) {
+          if (labels == parent.length) {
+            parent = Arrays.copyOf(parent, labels * 2);
+          }
+          parent[labels] = labels;
+          ids[cell] = labels++;
+        } else if (left < 0 || up < 0) {
+          ids[cell] = Math.max(left, up);
+        } else {
+          int leftRoot = find(parent, left);
+          int upRoot = find(parent, up);
+          // The smaller label appeared first, keep it as root
+          parent[Math.max(leftRoot, upRoot)] = Math.min(leftRoot, upRoot);
+          ids[cell] = Math.min(leftRoot, upRoot);
+        }
+      }
+    }
+
+    // Second pass: final ids in the order of the first block of each platform
+    int[] finalIds = new int[labels];
+    Arrays.fill(finalIds, -1);
+    int count = 0;
+    for (int cell = 0; cell < ids.length; cell++) {
+      if (ids[cell] >= 0) {
+        int root = find(parent, ids[cell]);
+        if (finalIds[root] < 0) {
+          finalIds[root] = count++;
+        }
+        ids[cell] = finalIds[root];
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Finds the first cell of every platform.
+   *
+   * @param ids the platform of every cell
+   * @param count the number of platforms
+   * @return the index of the first cell of every platform
+   */
+  private static int[] findPlatformStarts(int[] ids, int count) {
+    int[] starts = new int[count];
+    Arrays.fill(starts, -1);
+    for (int cell = 0; cell < ids.length; cell++) {
+      if (ids[cell] >= 0 && starts[ids[cell]] < 0) {
+        starts[ids[cell]] = cell;
+      }
+    }
+    return starts;
+  }
+
+  /**
+   * Finds the root of a label, halving the path on the way.
+   *
+   * @param parent the parent of every label
+   * @param label the label
+   * @return the root of the label
+   */
+  private static int find(int[] parent, int label) {
+    int current = label;
+    while (parent[current] != current) {
+      parent[current] = parent[parent[current]];
+      current = parent[current];
+    }
+    return current;
+  }
+
+  /**
+   * Returns the path of the level file, which is sent to the clients.
+   *
+   * @return the path in the resources
+   */
+  public String getPath() {
+    return this.path;
+  }
+
+  /**
+   * Returns the difficulty of the level.
+   *
+   * @return "easy", "medium" or "hard"
+   */
+  public String getDifficulty() {
+    return this.difficulty;
+  }
+
+  /**
+   * Returns the number of columns of the level.
+   *
+   * @return the width in blocks
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Returns the number of rows of the level.
+   *
+   * @return the height in blocks
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Returns the type of a cell.
+   *
+   * @param xIdx the column of the cell
+   * @param yIdx the row of the cell
+   * @return one of the cell constants of this class
+   */
+  public byte getCell(int xIdx, int yIdx) {
+    return this.cells[yIdx * this.width + xIdx];
+  }
+
+  /**
+   * Returns the platform of a cell.
+   *
+   * @param xIdx the column of the cell
+   * @param yIdx the row of the cell
+   * @return the platform, between 0 and {@link #getPlatformCount()}, or -1 if the cell isn't a
+   *     coloured block
+   */
+  public int getPlatformId(int xIdx, int yIdx) {
+    return this.platformIds[yIdx * this.width + xIdx];
+  }
+
+  /**
+   * Returns the number of platforms, i.e. of groups of coloured blocks touching each other.
+   *
+   * @return the number of platforms
+   */
+  public int getPlatformCount() {
+    return this.platformCount;
+  }
+
+  /**
+   * Returns the column of the first block of a platform, row by row.
+   *
+   * @param platform the platform
+   * @return the column index
+   */
+  public int getPlatformStartX(int platform) {
+    return this.platformStarts[platform] % this.width;
+  }
+
+  /**
+   * Returns the row of the first block of a platform.
+   *
+   * @param platform the platform
+   * @return the row index
+   */
+  public int getPlatformStartY(int platform) {
+    return this.platformStarts[platform] / this.width;
+  }
+
+  /**
+   * Whether the level has a spawn cell.
+   *
+   * @return false if the player spawns in the top left corner by default
+   */
+  public boolean hasSpawn() {
+    return this.hasSpawn;
+  }
+
+  /**
+   * Returns the column of the spawn cell.
+   *
+   * @return the column index
+   */
+  public int getSpawnX() {
+    return this.spawnIdx[0];
+  }
+
+  /**
+   * Returns the row of the spawn cell.
+   *
+   * @return the row index
+   */
+  public int getSpawnY() {
+    return this.spawnIdx[1];
+  }
+
+  /**
+   * Returns the column of the coin.
+   *
+   * @return the column index, -1 if the level has no coin
+   */
+  public int getCoinX() {
+    return this.coinIdx[0];
+  }
+
+  /**
+   * Returns the row of the coin.
+   *
+   * @return the row index, -1 if the level has no coin
+   */
+  public int getCoinY() {
+    return this.coinIdx[1];
+  }
+}
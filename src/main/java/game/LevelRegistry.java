@@ -0,0 +1,204 @@
+package game;
+
+import client.LevelReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * The levels shipped in the resources, listed and parsed once per process. Loading a level then
+ * only copies its cached {@link LevelLayout} instead of listing the resources and reading and
+ * parsing the level file again. Levels compiled by {@link LevelCompiler} are preferred to the csv
+ * files: they are mapped into memory, or read in one go from a jar, and decoded without parsing.
+ */
+public final class LevelRegistry {
+
+  /** The difficulties, in increasing order. They are the names of the level directories. */
+  public static final String[] DIFFICULTIES = {"easy", "medium", "hard"};
+  /** The directory of the levels in the resources. */
+  private static final String LEVELS_DIRECTORY = "levels/";
+
+  /** The layouts by path. Levels outside the registry are added when first loaded. */
+  private final Map<String, LevelLayout> layouts = new ConcurrentHashMap<>();
+  /** The layouts of each difficulty, in the order of {@link #DIFFICULTIES}. */
+  private final List<List<LevelLayout>> byDifficulty = new ArrayList<>();
+
+  /** Holds the registry, which is created on first use. */
+  private static final class Holder {
+    /** The registry of the levels in the resources. */
+    private static final LevelRegistry INSTANCE = new LevelRegistry();
+  }
+
+  /** Lists the levels in the resources and parses them. */
+  private LevelRegistry() {
+    for (String difficulty : DIFFICULTIES) {
+      List<LevelLayout> levels = new ArrayList<>();
+      for (String path : listLevelPaths(difficulty)) {
+        LevelLayout layout = loadLayout(path, difficulty);
+        this.layouts.put(path, layout);
+        levels.add(layout);
+      }
+      this.byDifficulty.add(Collections.unmodifiableList(levels));
+    }
+  }
+
+  /**
+   * Returns the registry of the levels in the resources. The first call reads all levels.
+   *
+   * @return the registry
+   */
+  public static LevelRegistry getDefault() {
+    return Holder.INSTANCE;
+  }
+
+  /**
+   * Returns the layout of a level, reading it if it isn't a registered level.
+   *
+   * @param path the path of the level in the resources
+   * @return the layout
+   */
+  public LevelLayout getLayout(String path) {
+    return this.layouts.computeIfAbsent(path, p -> loadLayout(p, null));
+  }
+
+  /**
+   * Loads a level, from its compiled version if there is one and from the csv file otherwise.
+   *
+   * @param path the path of the csv file in the resources
+   * @param difficulty the difficulty of the level
+   * @return the layout
+   */
+  private static LevelLayout loadLayout(String path, String difficulty) {
+    String compiledPath = path.replaceFirst("\\.csv$", LevelCodec.EXTENSION);
+    URL compiled = LevelRegistry.class.getResource(compiledPath);
+    if (compiled == null) {
+      return new LevelLayout(path, difficulty, LevelReader.readLevel(path));
+    }
+
+    try {
+      ByteBuffer buffer;
+      if (compiled.getProtocol().equals("file")) {
+        try (FileChannel channel = FileChannel.open(Path.of(compiled.toURI()))) {
+          buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+      } else {
+        try (InputStream in = compiled.openStream()) {
+          buffer = ByteBuffer.wrap(in.readAllBytes());
+        }
+      }
+      return LevelCodec.decode(path, difficulty, buffer);
+    } catch (IOException | URISyntaxException e) {
+      throw new IllegalStateException("Couldn't read the compiled level " + compiledPath, e);
+    }
+  }
+
+  /**
+   * Returns the levels of a difficulty.
+   *
+   * @param difficulty the index of the difficulty in {@link #DIFFICULTIES}
+   * @return the levels, sorted by path
+   */
+  public List<LevelLayout> getLevels(int difficulty) {
+    return this.byDifficulty.get(difficulty);
+  }
+
+  /**
+   * Picks a random level of a difficulty. If there is no level of this difficulty, the next easier
+   * difficulty with levels is used, then the next harder one.
+   *
+   * @param difficulty the index of the difficulty in {@link #DIFFICULTIES}
+   * @return the layout of the level
+   * @throws IllegalStateException if there are no levels at all
+   */
+  public LevelLayout randomLevel(int difficulty) {
+    for (int offset = 0; offset < DIFFICULTIES.length; offset++) {
+      for (int candidate : new int[] {difficulty - offset, difficulty + offset}) {
+        if (candidate >= 0 && candidate < DIFFICULTIES.length) {
+          List<LevelLayout> levels = this.byDifficulty.get(candidate);
+          if (!levels.isEmpty()) {
+            return levels.get((int) (Math.random() * levels.size()));
+          }
+        }
+      }
+    }
+    throw new IllegalStateException("No levels found in /" + LEVELS_DIRECTORY);
+  }
+
+  /**
+   * Lists the level files of a difficulty, whether the program runs from a jar file or from an
+   * IDE. A level is listed by the path of its csv file, even if only its compiled version exists.
+   *
+   * @param difficulty the name of the difficulty
+   * @return the paths of the levels, sorted
+   */
+  private static List<String> listLevelPaths(String difficulty) {
+    String dirPath = LEVELS_DIRECTORY + difficulty + "/";
+    Set<String> paths = new TreeSet<>();
+    File jarFile =
+        new File(LevelRegistry.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+
+    if (jarFile.getPath().endsWith(".jar")) {
+      try (JarFile jar = new JarFile(jarFile)) {
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+          String name = entries.nextElement().getName();
+          if (name.startsWith(dirPath) && isLevelFile(name)) {
+            paths.add("/" + toCsvName(name));
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    } else {
+      URL dirUrl = LevelRegistry.class.getResource("/" + dirPath);
+      File[] files =
+          dirUrl == null
+              ? null
+              : new File(dirUrl.getPath()).listFiles((dir1, name) -> isLevelFile(name));
+      if (files != null) {
+        for (File file : files) {
+          paths.add("/" + dirPath + toCsvName(file.getName()));
+        }
+      }
+    }
+    return new ArrayList<>(paths);
+  }
+
+  /**
+   * Whether a file is a csv or a compiled level.
+   *
+   * @param name the name of the file
+   * @return true for level files
+   */
+  private static boolean isLevelFile(String name) {
+    return name.endsWith(".csv") || name.endsWith(LevelCodec.EXTENSION);
+  }
+
+  /**
+   * Returns the name of the csv file of a level.
+   *
+   * @param name the name of the csv or compiled level file
+   * @return the name ending in .csv
+   */
+  private static String toCsvName(String name) {
+    return name.endsWith(LevelCodec.EXTENSION)
+        ? name.substring(0, name.length() - LevelCodec.EXTENSION.length()) + ".csv"
+        : name;
+  }
+}
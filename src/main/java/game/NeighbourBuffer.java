@@ -0,0 +1,55 @@
+package game;
+
+import javafx.scene.paint.Color;
+
+/**
+ * The nine blocks around a position, filled by {@link Level#getNeighbourBlocks(double, double,
+ * NeighbourBuffer)}. Each simulation owns its buffer and reuses it every tick, so that querying the
+ * neighbourhood of the cube allocates nothing and a level can be queried by several threads.
+ */
+public final class NeighbourBuffer {
+
+  /** The blocks, row by row from the top left, null for empty cells. */
+  private final Block[] blocks = new Block[9];
+  /** The block objects referenced by {@link #blocks}, moved to a new cell by every query. */
+  private final Block[] views = new Block[9];
+
+  /**
+   * Returns the blocks found by the last query. The array and its blocks are overwritten by the next
+   * query.
+   *
+   * @return the nine blocks, row by row from the top left, null for empty cells
+   */
+  public Block[] getBlocks() {
+    return this.blocks;
+  }
+
+  /**
+   * Shows a cell at a position of the neighbourhood.
+   *
+   * @param neighbour the position in the neighbourhood, between 0 and 8
+   * @param colour the colour of the block in the cell
+   * @param xIdx the column of the cell
+   * @param yIdx the row of the cell
+   * @param size the size of the blocks of the level
+   */
+  void set(int neighbour, Color colour, int xIdx, int yIdx, int size) {
+    Block view = this.views[neighbour];
+    if (view == null || view.getSize() != size) {
+      view = new Block(colour, xIdx * size, yIdx * size, size);
+      this.views[neighbour] = view;
+    } else {
+      view.setCell(colour, xIdx, yIdx);
+    }
+    this.blocks[neighbour] = view;
+  }
+
+  /**
+   * Marks a position of the neighbourhood as empty.
+   *
+   * @param neighbour the position in the neighbourhood, between 0 and 8
+   */
+  void clear(int neighbour) {
+    this.blocks[neighbour] = null;
+  }
+}
@@ -2,6 +2,14 @@ package game;
 
 /** Represents a 2D Vector and various operations performed on 2D Vectors. */
 public class Vector2D {
+  /**
+   * The x components of the unit vectors pointing at 0, 90, 180 and 270 degrees, the only angles at
+   * which gravity pulls the cube (0 being downwards, then counterclockwise).
+   */
+  private static final double[] DIRECTION_X = {0, 1, 0, -1};
+  /** The y components of the unit vectors pointing at 0, 90, 180 and 270 degrees. */
+  private static final double[] DIRECTION_Y = {1, 0, -1, 0};
+
   private double xComponent;
 
   private double yComponent;
@@ -53,6 +61,76 @@ public class Vector2D {
     this.yComponent = yComponent;
   }
 
+  /**
+   * Sets both components of the 2D vector.
+   *
+   * @param xComponent the new x component
+   * @param yComponent the new y component
+   */
+  public void set(double xComponent, double yComponent) {
+    this.xComponent = xComponent;
+    this.yComponent = yComponent;
+  }
+
+  /**
+   * Sets the components of the 2D vector to those of another vector.
+   *
+   * @param other the vector to copy
+   */
+  public void set(Vector2D other) {
+    this.xComponent = other.xComponent;
+    this.yComponent = other.yComponent;
+  }
+
+  /**
+   * Adds a multiple of another vector to this one, without creating an intermediate vector.
+   *
+   * @param vector2 the vector to add
+   * @param scalar the scalar by which the added vector is multiplied
+   */
+  public void scaleAdd(Vector2D vector2, double scalar) {
+    this.xComponent += vector2.xComponent * scalar;
+    this.yComponent += vector2.yComponent * scalar;
+  }
+
+  /**
+   * Sets the vector to point at the given angle with the given length. The four right angles are
+   * read from a table, so they are exact and don't need any trigonometry.
+   *
+   * @param angle the angle in degrees compared to the y-axis, counterclockwise
+   * @param length the length of the vector
+   */
+  public void setDirection(int angle, double length) {
+    this.xComponent = directionX(angle) * length;
+    this.yComponent = directionY(angle) * length;
+  }
+
+  /**
+   * Returns the x component of the unit vector pointing at the given angle.
+   *
+   * @param angle the angle in degrees compared to the y-axis, counterclockwise
+   * @return the sine of the angle
+   */
+  public static double directionX(int angle) {
+    if (angle % 90 == 0) {
+      return DIRECTION_X[Math.floorMod(angle / 90, 4)];
+    }
+    return Math.sin(Math.toRadians(angle));
+  }
+
+  /**
+   * Returns the y component of the unit vector pointing at the given angle.
+   *
+   * @param angle the angle in degrees compared to the y-axis, counterclockwise
+   * @return the cosine of the angle
+   */
+  public static double directionY(int angle) {
+    if (angle % 90 == 0) {
+      return DIRECTION_Y[Math.floorMod(angle / 90, 4)];
+    }
+    return Math.cos(Math.toRadians(angle));
+  }
+
   /**
    * Adds the new vector to the existing one.
    *
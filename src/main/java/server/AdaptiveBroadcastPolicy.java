@@ -0,0 +1,65 @@
+package server;
+
+import game.Cube;
+
+/**
+ * Broadcasts the state when the motion of the cube changes abruptly, and otherwise at a rate
+ * depending on what the cube is doing: rarely while it waits at the spawn, a few times per second
+ * while it moves, where the clients predict it well, and often while it rotates, where small
+ * differences of timing make their predictions drift.
+ */
+public class AdaptiveBroadcastPolicy implements BroadcastPolicy {
+
+  /** The default policy: 1 broadcast per second when idle, 4 when moving and 20 when rotating. */
+  public static final AdaptiveBroadcastPolicy DEFAULT = new AdaptiveBroadcastPolicy(1, 4, 20);
+
+  /** The number of ticks between two broadcasts while the cube hasn't been started. */
+  private final long idleInterval;
+  /** The number of ticks between two broadcasts while the cube moves without rotating. */
+  private final long movingInterval;
+  /** The number of ticks between two broadcasts while the cube rotates. */
+  private final long rotatingInterval;
+
+  /**
+   * Creates a policy with the given rates.
+   *
+   * @param idleRate The number of broadcasts per second while the cube hasn't been started
+   * @param movingRate The number of broadcasts per second while the cube moves without rotating
+   * @param rotatingRate The number of broadcasts per second while the cube rotates
+   */
+  public AdaptiveBroadcastPolicy(final int idleRate, final int movingRate, final int rotatingRate) {
+    this.idleInterval = interval(idleRate);
+    this.movingInterval = interval(movingRate);
+    this.rotatingInterval = interval(rotatingRate);
+  }
+
+  /**
+   * Converts a rate to a number of ticks.
+   *
+   * @param rate The number of broadcasts per second
+   * @return The number of ticks between two broadcasts
+   */
+  private static long interval(final int rate) {
+    if (rate <= 0 || rate > TickScheduler.TICK_RATE) {
+      throw new IllegalArgumentException("Invalid broadcast rate: " + rate);
+    }
+    return TickScheduler.TICK_RATE / rate;
+  }
+
+  @Override
+  public boolean shouldBroadcast(
+      final Cube cube, final boolean motionChanged, final long ticksSinceBroadcast) {
+    if (motionChanged) {
+      return true;
+    }
+    long interval;
+    if (!cube.moving) {
+      interval = this.idleInterval;
+    } else if (cube.rotating) {
+      interval = this.rotatingInterval;
+    } else {
+      interval = this.movingInterval;
+    }
+    return ticksSinceBroadcast >= interval;
+  }
+}
@@ -0,0 +1,61 @@
+package server;
+
+import game.Cube;
+
+/**
+ * Decides when a {@link ServerGame} broadcasts the state of its cube besides the changes made by
+ * inputs and events (jumps, deaths, new levels), which are always broadcast. The policy is chosen
+ * per {@link Lobby}; the lobbies created by the {@link Server} use the one given to {@link
+ * ServerMain}. A policy holds no state of its own, so one instance can serve many games.
+ *
+ * <p>The clients simulate the cube themselves between two updates, so an update is only needed
+ * where their simulation may drift: when the motion of the cube changes abruptly, and while it
+ * rotates.
+ */
+public interface BroadcastPolicy {
+
+  /**
+   * Decides whether the state of the cube is broadcast at the end of a tick.
+   *
+   * @param cube The cube of the game
+   * @param motionChanged Whether the simulation has just changed the motion of the cube abruptly,
+   *     e.g. by a collision or a rotation of its acceleration
+   * @param ticksSinceBroadcast The number of ticks since the state has last been broadcast
+   * @return true if the state is broadcast
+   */
+  boolean shouldBroadcast(Cube cube, boolean motionChanged, long ticksSinceBroadcast);
+
+  /**
+   * Returns the policy used by the lobbies which haven't chosen one.
+   *
+   * @param deterministic Whether the game is simulated in the deterministic mode
+   * @return a policy only broadcasting the changes in the deterministic mode, as the clients reach
+   *     the same state, and an {@link AdaptiveBroadcastPolicy} otherwise
+   */
+  static BroadcastPolicy defaultPolicy(final boolean deterministic) {
+    return deterministic ? FixedRateBroadcastPolicy.CHANGES_ONLY : AdaptiveBroadcastPolicy.DEFAULT;
+  }
+
+  /**
+   * Returns the policy with the given name (case-insensitive): <code>adaptive</code> for {@link
+   * AdaptiveBroadcastPolicy#DEFAULT}, <code>changes</code> for {@link
+   * FixedRateBroadcastPolicy#CHANGES_ONLY}, or a number of broadcasts per second for a {@link
+   * FixedRateBroadcastPolicy}.
+   *
+   * @param name The name of the policy
+   * @return The policy, or null if the name is neither a policy nor a valid rate
+   */
+  static BroadcastPolicy fromName(final String name) {
+    if (name.equalsIgnoreCase("adaptive")) {
+      return AdaptiveBroadcastPolicy.DEFAULT;
+    } else if (name.equalsIgnoreCase("changes")) {
+      return FixedRateBroadcastPolicy.CHANGES_ONLY;
+    }
+    try {
+      return new FixedRateBroadcastPolicy(Integer.parseInt(name));
+    } catch (IllegalArgumentException e) {
+      // Not a number, or not a valid rate
+      return null;
+    }
+  }
+}
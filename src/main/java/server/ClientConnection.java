@@ -0,0 +1,42 @@
+package server;
+
+import java.io.IOException;
+
+/**
+ * The transport over which a {@link ClientHandler} talks to its client. Implemented by {@link
+ * SocketConnection} for the thread-per-client mode and by {@link NioConnection} for the NIO mode.
+ * Each transport reads its own input and hands the received lines to {@link
+ * ClientHandler#receive(String)}.
+ *
+ * <p>Outgoing messages are queued in an {@link OutboundQueue} and written by the writer of the
+ * connection once they are flushed, so that the sending thread never blocks on a slow client.
+ */
+public interface ClientConnection {
+
+  /**
+   * Queues a message without flushing it. The message is sent as a line, or as a frame once the
+   * binary framing has been enabled.
+   *
+   * @param message The message to queue
+   * @param replaceable Whether a newer replaceable message supersedes this one if it hasn't been
+   *     written yet
+   * @return false if the client doesn't read fast enough and should be disconnected
+   */
+  boolean queue(OutboundMessage message, boolean replaceable);
+
+  /** Hands the queued messages to the writer, which sends them in a single write. */
+  void flush();
+
+  /**
+   * Sends {@link ServerProtocol#BINARY_PROTOCOL_ENABLED} as the last text line and switches to the
+   * binary framing for everything sent afterwards.
+   */
+  void enableBinaryFraming();
+
+  /**
+   * Closes the connection to the client.
+   *
+   * @throws IOException If the underlying socket fails to close
+   */
+  void close() throws IOException;
+}
@@ -1,137 +1,233 @@
 package server;
 
 import client.ClientProtocol;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import util.DispatchTable;
+import util.ProtocolTokenizer;
 
 /** Handles the connection to a single client. */
-public class ClientHandler implements Runnable {
+public class ClientHandler {
 
-  /** The client's socket. */
-  private final Socket client;
-  /** The client is connected. */
-  private boolean clientConnected = true;
-  /** The number of times there is no answer. */
-  private int noAnswerCounter = 0;
+  /** Informs the client that the game has ended. */
+  private static final OutboundMessage GAME_ENDED =
+          new OutboundMessage(ServerProtocol.GAME_ENDED.toString());
 
-  /** Input stream. */
-  private final BufferedReader in;
-  /** Output stream. */
-  private final PrintWriter out;
+  /** The source of the connection ids. */
+  private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+  /**
+   * The handlers of the commands of the clients, indexed by command.
+   * The number of arguments of a command and its numeric arguments are
+   * checked before its handler runs; the table also counts the commands
+   * received by the server.
+   */
+  static final DispatchTable<ClientProtocol, ClientHandler> COMMANDS =
+          new DispatchTable<ClientProtocol, ClientHandler>(
+                  ClientProtocol.values(),
+                  ClientProtocol::fromName,
+                  ClientProtocol::getNumArgs)
+              .on(ClientProtocol.EXIT,
+                  (client, command) -> client.server.removeClient(client))
+              .on(ClientProtocol.SET_USERNAME,
+                  (client, command) -> client.setUsername(command.get(1)))
+              .on(ClientProtocol.SEND_PUBLIC_MESSAGE,
+                  (client, command) -> client.sendPublicMessage(command.get(1)))
+              .on(ClientProtocol.SEND_PRIVATE_MESSAGE,
+                  (client, command) -> client.sendPrivateMessage(
+                          command.get(1), command.get(2)))
+              .on(ClientProtocol.SEND_LOBBY_MESSAGE,
+                  (client, command) -> client.withLobby(lobby ->
+                          client.sendLobbyMessage(lobby, command.get(1))))
+              .on(ClientProtocol.CLIENT_PING,
+                  (client, command) -> client.pong())
+              .on(ClientProtocol.CLIENT_PONG, (client, command) -> {
+                // Already recorded as a sign of life by receive()
+              })
+              .on(ClientProtocol.CREATE_LOBBY,
+                  (client, command) -> client.server.createLobby(
+                          command.get(1), command.get(2), client))
+              .on(ClientProtocol.JOIN_LOBBY,
+                  (client, command) -> client.server.joinLobby(
+                          command.get(1), command.get(2), client))
+              .on(ClientProtocol.GET_FULL_SERVER_LIST, (client, command) -> {
+                client.updateClientList();
+                client.updateLobbyList();
+              })
+              .on(ClientProtocol.GET_FULL_MENU_LISTS, (client, command) -> {
+                client.updateClientList();
+                client.updateLobbyList();
+                client.updateGameList();
+              })
+              .on(ClientProtocol.GET_FULL_LOBBY_LIST,
+                  (client, command) -> client.withLobby(Lobby::updateLobbyList))
+              .on(ClientProtocol.TOGGLE_READY_STATUS,
+                  (client, command) -> client.withLobby(lobby ->
+                          lobby.toggleClientReady(
+                                  client, command.parseBoolean(1))))
+              .on(ClientProtocol.EXIT_LOBBY, (client, command) -> {
+                if (client.lobby != null) {
+                  client.lobby.removeClient(client);
+                }
+              })
+              .on(ClientProtocol.SPACE_BAR_PRESSED,
+                  command -> command.isInt(1) && command.isLong(2),
+                  (client, command) -> client.spaceBarPressed(
+                          command.parseInt(1), command.parseLong(2)))
+              .on(ClientProtocol.REQUEST_CRITICAL_BLOCKS,
+                  (client, command) ->
+                          client.onTick(ServerGame::sendCriticalBlocks))
+              .on(ClientProtocol.REQUEST_END_GAME,
+                  (client, command) -> client.onTick(ServerGame::endGame))
+              .on(ClientProtocol.SKIP_LEVEL,
+                  (client, command) -> client.onTick(ServerGame::skipLevel))
+              .on(ClientProtocol.SET_IMMORTAL,
+                  (client, command) -> client.onTick(ServerGame::setImmortal))
+              .on(ClientProtocol.SET_MORTAL,
+                  (client, command) -> client.onTick(ServerGame::setMortal))
+              .on(ClientProtocol.REQUEST_BINARY_PROTOCOL,
+                  (client, command) -> client.connection.enableBinaryFraming())
+              .on(ClientProtocol.PROTOCOL_VERSION,
+                  command -> command.isInt(1),
+                  (client, command) -> client.setProtocolVersion(
+                          command.parseInt(1)));
+
+  /** The id of the connection, used as key in the {@link ClientRegistry}. */
+  private final int id = NEXT_ID.getAndIncrement();
+  /** The connection to the client. */
+  private final ClientConnection connection;
+  /** The time at which the last message was received, see {@link HeartbeatService}. */
+  private volatile long lastReceived = System.nanoTime();
 
   /** The server: used to access the list of clients. */
   private final Server server;
   /** The ClientHandler is running. */
-  private boolean running = true;
+  private volatile boolean running = true;
+  /** Set once the client's outbound queue has overflowed. */
+  private volatile boolean slowConsumer = false;
+  /** Set once the client has announced {@link ServerProtocol#VERSION}. */
+  private boolean versionAccepted = false;
+  /** Set once the client has been told that it speaks another version. */
+  private boolean versionRejected = false;
 
   /** The Clients username. */
-  private String username;
+  private volatile String username;
   /** The Lobby in which the Client is. */
   private Lobby lobby;
   /** Logger from the log4j2 library. */
   private final Logger LOGGER;
+  /**
+   * Splits the received lines, reused as they are received one after the other by a single
+   * thread.
+   */
+  private final ProtocolTokenizer tokenizer =
+          new ProtocolTokenizer(ServerProtocol.SEPARATOR.toString());
 
   /**
-   * Is in charge of a single client.
+   * Is in charge of a single client connected over the given transport.
    *
-   * @param clientSocket The client's socket
+   * @param clientConnection The connection to the client
    * @param theServer The server
-   * @throws IOException If getInputStream() or getOutputStream() fails
-   */
-  public ClientHandler(final Socket clientSocket, final Server theServer)
-          throws IOException {
-    this.client = clientSocket;
-    this.in = new BufferedReader(
-            new InputStreamReader(client.getInputStream()));
-    this.out = new PrintWriter(client.getOutputStream(), true);
+   */
+  public ClientHandler(final ClientConnection clientConnection,
+                       final Server theServer) {
+    this.connection = clientConnection;
     this.server = theServer;
     this.LOGGER = LogManager.getLogger(getClass());
   }
 
   /**
-   * @return if client is connected
+   * Returns the id of the connection.
+   *
+   * @return the id, unique among all clients since the server started
    */
-  public boolean getClientConnected() {
-    return this.clientConnected;
+  public int getId() {
+    return this.id;
   }
 
   /**
-   * Sets if the client is connected.
+   * Returns the time at which the last message was received from the client.
    *
-   * @param isConnected if the Client is connected
+   * @return the time, as given by {@link System#nanoTime()}
    */
-  public void setClientConnected(final boolean isConnected) {
-    this.clientConnected = isConnected;
+  public long getLastReceived() {
+    return this.lastReceived;
   }
 
   /**
-   * Return the number of times there's no answer.
+   * Sets the ClientHandler to run.
    *
-   * @return noAnswerCounter
+   * @param clientRunning if the Client is running
    */
-  public int getNoAnswerCounter() {
-    return this.noAnswerCounter;
+  public void setRunning(final boolean clientRunning) {
+    this.running = clientRunning;
   }
 
   /**
-   * Sets the number of times there is no answer.
+   * Returns whether the ClientHandler is running.
    *
-   * @param noAnswer number of times there is no answer
+   * @return false once the client has been removed from the server
    */
-  public void setNoAnswerCounter(final int noAnswer) {
-    this.noAnswerCounter = noAnswer;
+  public boolean isRunning() {
+    return this.running;
   }
 
   /**
-   * Sets the ClientHandler to run.
-   *
-   * @param clientRunning if the Client is running
+   * Stops the ClientHandler and closes the connection to the client.
+   * Closing the connection also unblocks a thread waiting for input.
    */
-  public void setRunning(final boolean clientRunning) {
-    this.running = clientRunning;
+  protected void disconnect() {
+    this.running = false;
+    try {
+      this.connection.close();
+    } catch (IOException e) {
+      this.LOGGER.error("ClientHandler " + this.username
+              + " couldn't close the connection.");
+    }
   }
 
   /**
-   * Handles the client's input. If the client sends "exit",
-   * the server shuts down.If the client sends "say",
-   * the server broadcasts the message to all clients.
+   * Called when the connection has ended without the client being removed:
+   * by the transport when the client has closed its socket or a message
+   * couldn't be written, by the {@link HeartbeatService} when the client
+   * hasn't answered a ping. The client is removed on another thread, as the
+   * transport's thread is cancelled by the removal, and the heartbeats must
+   * not block.
    */
-  @Override
-  public void run() {
-    while (this.running) {
-      // Receive message and split it into an array
-      String message = this.receiveFromClient();
-      if (message != null) {
-        String[] command = message.split(ServerProtocol.SEPARATOR.toString());
-        this.protocolSwitch(command);
-      }
-    }
-    try {
-      client.close();
-      in.close();
-    } catch (IOException e) {
-      e.printStackTrace();
+  protected void connectionLost() {
+    if (this.running) {
+      this.server.execute(() -> this.server.removeClient(this));
     }
   }
 
+  /**
+   * Splits a message received from the client into its fields and executes
+   * it.
+   * Called by the reader of the {@link SocketConnection} or, in
+   * {@link ServerMode#NIO}, by the {@link NioEventLoop} serving the
+   * connection.
+   *
+   * @param message the line received from the client
+   */
+  protected void receive(final String message) {
+    this.lastReceived = System.nanoTime();
+    this.tokenizer.tokenize(message);
+    this.protocolSwitch(this.tokenizer);
+  }
+
   /** Sends ping to client to check if the connection is still alive. */
   protected void ping() {
     String command = ServerProtocol.SERVER_PING.toString();
-    this.out.println(command);
+    this.send(command);
   }
   /** Sends a Server_PONG message to the client.
    *  (meant as a response to the CLIENT_PING message) */
   protected void pong() {
     String command = ServerProtocol.SERVER_PONG.toString();
-    this.out.println(command);
+    this.send(command);
   }
 
   /**
@@ -149,9 +245,7 @@ public class ClientHandler implements Runnable {
             + ServerProtocol.SEPARATOR
             + message;
 
-    for (ClientHandler c : this.server.getClientHandlers()) {
-      c.out.println(output);
-    }
+    this.server.broadcast(new OutboundMessage(output));
   }
 
   /**
@@ -164,19 +258,20 @@ public class ClientHandler implements Runnable {
    */
   private void sendPrivateMessage(
           final String recipient, final String message) {
-    String output =
+    OutboundMessage output = new OutboundMessage(
         ServerProtocol.SEND_PRIVATE_MESSAGE.toString()
             + ServerProtocol.SEPARATOR
             + this.username
             + ServerProtocol.SEPARATOR
-            + message;
+            + message);
 
-    ClientHandler recipientHandler = this.server.getClientHandler(recipient);
+    ClientHandler recipientHandler =
+            this.server.getClientRegistry().getByUsername(recipient);
     if (recipientHandler != null && recipientHandler != this) {
-      recipientHandler.out.println(output);
-      this.out.println(output);
+      recipientHandler.send(output);
+      this.send(output);
     } else if (recipientHandler == null) {
-      this.out.println(
+      this.send(
           ServerProtocol.NO_USER_FOUND.toString()
                   + ServerProtocol.SEPARATOR + recipient);
       this.LOGGER.error(
@@ -193,9 +288,10 @@ public class ClientHandler implements Runnable {
    *
    * <p>See {@link ServerProtocol#SEND_LOBBY_MESSAGE}
    *
+   * @param theLobby The lobby of the client
    * @param message The message to send
    */
-  private void sendLobbyMessage(final String message) {
+  private void sendLobbyMessage(final Lobby theLobby, final String message) {
     String command =
         ServerProtocol.SEND_LOBBY_MESSAGE.toString()
             + ServerProtocol.SEPARATOR
@@ -203,147 +299,153 @@ public class ClientHandler implements Runnable {
             + ServerProtocol.SEPARATOR
             + message;
 
-    for (ClientHandler theClient : this.lobby.getClientHandlers()) {
-      theClient.out.println(command);
+    theLobby.broadcast(new OutboundMessage(command));
+  }
+
+  /**
+   * Called from {@link #receive(String)}.
+   *
+   * @param command to execute
+   *     <p>Looks up the handler of the command in {@link #COMMANDS}, which
+   *     checks its arguments before calling the appropriate method.
+   */
+  private void protocolSwitch(final ProtocolTokenizer command) {
+    if (!this.versionAccepted) {
+      // Only the commands of every version are accepted before the version
+      ClientProtocol protocol = ClientProtocol.fromName(command.field(0));
+      if (protocol != ClientProtocol.PROTOCOL_VERSION
+              && protocol != ClientProtocol.CLIENT_PING
+              && protocol != ClientProtocol.CLIENT_PONG) {
+        this.rejectVersion("none");
+        return;
+      }
+    }
+    switch (COMMANDS.dispatch(this, command)) {
+      case UNKNOWN -> LOGGER.error("ClientHandler " + this.username
+              + " sent an unknown command: " + command.get(0));
+      case MALFORMED, UNHANDLED -> LOGGER.error("ClientHandler "
+              + this.username + " sent an invalid command: "
+              + command.getLine());
+      default -> {
+        // Handled
+      }
     }
   }
 
   /**
-   * Receives commands from the client.
+   * The client has announced the version of the protocol it speaks.
    *
-   * @return the command in a String
+   * @param version the version of the client
    */
-  private String receiveFromClient() {
-    try {
-      return this.in.readLine();
-    } catch (IOException e) {
-      this.LOGGER.error(
-          "ClientHandler " + this.username
-                  + " couldn't receive message from client.");
-      return null;
+  private void setProtocolVersion(final int version) {
+    if (version == ServerProtocol.VERSION) {
+      this.versionAccepted = true;
+    } else {
+      this.rejectVersion(String.valueOf(version));
     }
   }
 
   /**
-   * Called from {@link #receiveFromClient()}.
+   * Tells the client that it speaks another version of the protocol and
+   * removes it, as the commands of both sides wouldn't be understood.
    *
-   * @param command to execute
-   *     <p>Goes over the different commands of {@link ClientProtocol}
-   *               and calls the appropriate
-   *     method.
+   * @param version the version announced by the client, if any
    */
-  private void protocolSwitch(final String[] command) {
-    try {
-      ClientProtocol protocol = ClientProtocol.valueOf(command[0]);
-
-      if (protocol.getNumArgs() == command.length - 1) {
-        switch (protocol) {
-          case EXIT -> this.server.removeClient(this);
-          case SET_USERNAME -> this.setUsername(command[1]);
-          case SEND_PUBLIC_MESSAGE -> this.sendPublicMessage(command[1]);
-          case SEND_PRIVATE_MESSAGE
-                  -> this.sendPrivateMessage(command[1], command[2]);
-          case SEND_LOBBY_MESSAGE -> this.sendLobbyMessage(command[1]);
-          case CLIENT_PING -> this.pong();
-          case CLIENT_PONG -> this.resetClientStatus();
-          case CREATE_LOBBY
-                  -> this.server.createLobby(command[1], command[2], this);
-          case JOIN_LOBBY
-                  -> this.server.joinLobby(command[1], command[2], this);
-          case GET_FULL_SERVER_LIST -> {
-            this.updateClientList();
-            this.updateLobbyList();
-          }
-          case GET_FULL_MENU_LISTS -> {
-            this.updateClientList();
-            this.updateLobbyList();
-            this.updateGameList();
-          }
-          case GET_FULL_LOBBY_LIST -> this.lobby.updateLobbyList();
-          case TOGGLE_READY_STATUS -> this.setToggleReady(command[1]);
-          case EXIT_LOBBY -> {
-            if (this.lobby != null) {
-              this.lobby.removeClient(this);
-            }
-          }
-          case SPACE_BAR_PRESSED -> this.spaceBarPressed();
-          case REQUEST_CRITICAL_BLOCKS
-                  -> this.getLobby().getGame().sendCriticalBlocks();
-          case REQUEST_END_GAME -> this.getLobby().getGame().endGame();
-          case SKIP_LEVEL -> this.getLobby().getGame().skipLevel();
-          case SET_IMMORTAL -> this.getLobby().getGame().setImmortal();
-          case SET_MORTAL -> this.getLobby().getGame().setMortal();
-
-          default -> LOGGER.error(
-              "ClientHandler " + this.username
-                      + " sent an invalid command: " + command[0]);
-        }
-      }
-    } catch (IllegalArgumentException | NullPointerException e) {
+  private void rejectVersion(final String version) {
+    if (this.versionRejected) {
+      return;
+    }
+    this.versionRejected = true;
+    LOGGER.warn("Client speaking version " + version
+            + " of the protocol rejected, the server speaks version "
+            + ServerProtocol.VERSION + ".");
+    this.send(ServerProtocol.PROTOCOL_MISMATCH.toString()
+            + ServerProtocol.SEPARATOR + ServerProtocol.VERSION);
+    this.server.execute(() -> this.server.removeClient(this));
+  }
+
+  /**
+   * Runs a command on the game of the client's lobby, if it is running.
+   *
+   * @param action the command
+   */
+  private void withGame(final Consumer<ServerGame> action) {
+    ServerGame game = this.lobby == null ? null : this.lobby.getGame();
+    if (game != null) {
+      action.accept(game);
+    } else {
       LOGGER.error("ClientHandler " + this.username
-              + " sent an invalid command: " + command[0]);
+              + " sent a game command outside of a game.");
     }
   }
 
-  /** Resets noAnswerCounter. */
-  private void resetClientStatus() {
-    this.clientConnected = true;
-    this.noAnswerCounter = 0;
+  /**
+   * Queues a command for the game of the client's lobby, which runs it at
+   * the beginning of its next tick, see
+   * {@link ServerGame#commandReceived(ClientHandler, Consumer)}.
+   *
+   * @param action the command
+   */
+  private void onTick(final Consumer<ServerGame> action) {
+    this.withGame(game -> game.commandReceived(this, action));
   }
 
   /**
-   * Returns the username.
+   * Runs a command on the client's lobby, if the client is in one.
    *
-   * @return the username of the client
+   * @param action the command
    */
-  protected String getUsername() {
-    return this.username;
+  private void withLobby(final Consumer<Lobby> action) {
+    if (this.lobby != null) {
+      action.accept(this.lobby);
+    } else {
+      LOGGER.error("ClientHandler " + this.username
+              + " sent a lobby command outside of a lobby.");
+    }
   }
 
   /**
-   * The client has clicked the ready button.
+   * Returns the username.
    *
-   * @param isReady the client is ready
+   * @return the username of the client
    */
-  private void setToggleReady(final String isReady) {
-    this.lobby.toggleClientReady(this, Boolean.parseBoolean(isReady));
+  protected String getUsername() {
+    return this.username;
   }
 
   /**
    * Called when the client has sent a new username in.
-   * If the username is already taken, a random suffix is added
-   * to the username and the method is called recursively.
+   * If the username is already taken, random suffixes are added
+   * to the username until it is free.
    *
    * @param newUsername new username of the client
    */
   private void setUsername(final String newUsername) {
-    ClientHandler clientHandler = this.server.getClientHandler(newUsername);
-
-    if (clientHandler == null) {
-      if (this.username == null) {
-        this.LOGGER.info("Connected client with username " + newUsername + ".");
-      } else {
-        this.LOGGER.info("Client " + this.username
-                + " changed username to " + newUsername + ".");
-      }
-
-      this.username = newUsername;
-      String message =
-          ServerProtocol.USERNAME_SET_TO.toString()
-                  + ServerProtocol.SEPARATOR + this.username;
-      this.out.println(message);
+    String[] suffixes = {
+      " the Great", " the Wise", " the Brave",
+            " the Strong", " the Mighty", " the Magnificent"
+    };
+    String candidate = newUsername;
+    while (!this.server.getClientRegistry().claimUsername(this, candidate)) {
+      int random = (int) (Math.random() * suffixes.length);
+      candidate = (candidate + suffixes[random]).replaceAll(" ", "_");
+    }
 
-      this.server.updateClientList();
-      this.server.updateLobbyList();
+    if (this.username == null) {
+      this.LOGGER.info("Connected client with username " + candidate + ".");
     } else {
-      String[] suffixes = {
-        " the Great", " the Wise", " the Brave",
-              " the Strong", " the Mighty", " the Magnificent"
-      };
-      int random = (int) (Math.random() * suffixes.length);
-      String output = newUsername + suffixes[random];
-      setUsername(output.replaceAll(" ", "_"));
+      this.LOGGER.info("Client " + this.username
+              + " changed username to " + candidate + ".");
     }
+
+    this.username = candidate;
+    String message =
+        ServerProtocol.USERNAME_SET_TO.toString()
+                + ServerProtocol.SEPARATOR + this.username;
+    this.send(message);
+
+    this.server.updateClientList();
+    this.server.updateLobbyList();
   }
 
   /**
@@ -355,7 +457,7 @@ public class ClientHandler implements Runnable {
    */
   protected void enterLobby(final Lobby theLobby) {
     this.lobby = theLobby;
-    this.out.println(
+    this.send(
         ServerProtocol.LOBBY_JOINED.toString()
                 + ServerProtocol.SEPARATOR + theLobby.getName());
     this.listLobby();
@@ -368,9 +470,7 @@ public class ClientHandler implements Runnable {
    */
   protected void listLobby() {
     if (this.lobby != null) {
-      String command = this.lobby.listLobby();
-
-      this.out.println(command);
+      this.send(new OutboundMessage(this.lobby.listLobby()));
     }
   }
 
@@ -393,7 +493,7 @@ public class ClientHandler implements Runnable {
     String command =
         ServerProtocol.LOBBY_EXITED.toString()
                 + ServerProtocol.SEPARATOR + this.lobby.getName();
-    this.out.println(command);
+    this.send(command);
     this.lobby = null;
   }
 
@@ -402,20 +502,7 @@ public class ClientHandler implements Runnable {
    * to the client. The client uses this information in the menu.
    */
   public void updateLobbyList() {
-    String[][] lobbyInfo = this.server.listLobbies();
-
-    StringBuilder command =
-        new StringBuilder(ServerProtocol.UPDATE_FULL_LIST.toString())
-            .append(ServerProtocol.SEPARATOR);
-
-    for (int i = 0; i < lobbyInfo.length; i++) {
-      command.append(String.join(" ", lobbyInfo[i]));
-      if (i < lobbyInfo.length - 1) {
-        command.append(ServerProtocol.SUBSEPARATOR);
-      }
-    }
-
-    this.out.println(command);
+    this.server.sendLobbyList(this);
   }
 
   /**
@@ -423,60 +510,54 @@ public class ClientHandler implements Runnable {
    * to the client. The client uses this information in the menu.
    */
   public void updateClientList() {
-    ArrayList<ClientHandler> clients = this.server.getClientHandlers();
-
-    String command =
-        ServerProtocol.UPDATE_CLIENT_LIST.toString()
-            + ServerProtocol.SEPARATOR
-            + clients.stream().map(ClientHandler::getUsername)
-                .collect(Collectors.joining(" "));
-
-    this.out.println(command);
+    this.server.sendClientList(this);
   }
 
   /** Sends the list of all games that have been played
    *  or are being played to the client. */
   public void updateGameList() {
-    List<String> highscores = this.server.getHighscores();
-
-
-    String command = ServerProtocol.UPDATE_GAME_LIST.toString()
-            + ServerProtocol.SEPARATOR;
-
-    command += highscores.stream().
-            collect(Collectors.joining(ServerProtocol.SUBSEPARATOR.toString()));
-
-    this.out.println(command);
+    this.server.sendGameList(this);
   }
 
-  /** Called from {@link ServerGame} to tell the client
-   *  that the game has started. */
-  public void startGame() {
-    this.out.println(ServerProtocol.START_GAME);
+  /** Called from {@link Lobby} to tell the client
+   *  that the game has started.
+   *
+   * @param message the ServerProtocol command {@link ServerProtocol#START_GAME}
+   */
+  public void startGame(final OutboundMessage message) {
+    this.send(message);
   }
 
-  private void spaceBarPressed() {
-    this.lobby.getGame().spaceBarPressed(this);
+  /**
+   * The client has pressed the space bar and predicted its effect.
+   *
+   * @param sequence the sequence number of the input
+   * @param tick the tick at which the client has applied the input
+   */
+  private void spaceBarPressed(final int sequence, final long tick) {
+    this.withGame(game -> game.spaceBarPressed(this, sequence, tick));
   }
 
   /**
-   * Sends a command to the client to update the position of the player.
+   * Queues a position update of the player. The update is written once the
+   * game flushes its clients at the end of the tick, see {@link #flush()},
+   * and is superseded by a newer one if it hasn't been written by then.
    *
-   * @param command the ServerProtocol command POSITION_UPDATE
+   * @param message the ServerProtocol command POSITION_UPDATE
    */
-  public void positionUpdate(final String command) {
-    this.out.println(command);
+  public void positionUpdate(final OutboundMessage message) {
+    this.queue(message, true);
   }
 
   /**
    * Sends a command to the client to inform them of the position
    * and colour of the critical blocks in the level.
    *
-   * @param command the ServerProtocol command
+   * @param message the ServerProtocol command
    * {@link ServerProtocol#SEND_CRITICAL_BLOCKS}
    */
-  public void sendCriticalBlocks(final String command) {
-    this.out.println(command);
+  public void sendCriticalBlocks(final OutboundMessage message) {
+    this.send(message);
   }
 
   /**
@@ -484,37 +565,105 @@ public class ClientHandler implements Runnable {
    * The client can then exit the game screen and go back to the lobby.
    */
   public void gameEnded() {
-    this.out.println(ServerProtocol.GAME_ENDED);
+    this.send(GAME_ENDED);
   }
 
   /**
    * Informs the client of the path of the level to load.
    * Called upon game start and when a new level is loaded.
    *
-   * @param levelPath The path of the level to load
+   * @param message the ServerProtocol command {@link ServerProtocol#LOAD_LEVEL}
    */
-  public void sendLevelPath(final String levelPath) {
-    this.out.println(ServerProtocol.LOAD_LEVEL.toString()
-            + ServerProtocol.SEPARATOR + levelPath);
+  public void sendLevelPath(final OutboundMessage message) {
+    this.send(message);
   }
 
   /**
    * Informs the clients in the game of the amount of lives they have left
    * and how many levels they have completed.
    *
-   * @param command The command to send to the client
+   * @param message The command to send to the client
    */
-  public void gameStatusUpdate(final String command) {
-    this.out.println(command);
+  public void gameStatusUpdate(final OutboundMessage message) {
+    this.send(message);
   }
 
   /**
    * Informs the client of the position of the rotation point in the game.
-   * Called when the cube has just jumped.
+   * Called when the cube has just jumped. Written at the end of the tick.
    *
-   * @param command The command to send to the client
+   * @param message The command to send to the client
    */
-  public void jumpUpdate(final String command) {
-    this.out.println(command);
+  public void jumpUpdate(final OutboundMessage message) {
+    this.queue(message, false);
+  }
+
+  /**
+   * Acknowledges an input of the client, with the tick at which it
+   * has been applied. Written at the end of the tick, before the
+   * position update showing its effect.
+   *
+   * @param message the ServerProtocol command {@link ServerProtocol#INPUT_ACK}
+   */
+  public void inputAck(final OutboundMessage message) {
+    this.queue(message, false);
+  }
+
+  /**
+   * Queues a message without flushing it.
+   *
+   * @param message The message, shared with the other recipients
+   * @param replaceable Whether a newer update supersedes this one if it hasn't been written yet
+   */
+  private void queue(final OutboundMessage message, final boolean replaceable) {
+    if (!this.connection.queue(message, replaceable)) {
+      this.slowConsumer();
+    }
+  }
+
+  /**
+   * Sends a message to the client immediately. Used for the broadcasts,
+   * which encode their message once for all recipients.
+   *
+   * @param message The message, shared with the other recipients
+   */
+  protected void send(final OutboundMessage message) {
+    if (this.connection.queue(message, false)) {
+      this.connection.flush();
+    } else {
+      this.slowConsumer();
+    }
+  }
+
+  /**
+   * Sends a command to the client immediately.
+   *
+   * @param command The command to send
+   */
+  private void send(final String command) {
+    this.send(new OutboundMessage(command));
+  }
+
+  /**
+   * Writes the updates queued during a tick in a single write.
+   * Called by the {@link TickScheduler} after each tick of the game.
+   */
+  public void flush() {
+    this.connection.flush();
+  }
+
+  /**
+   * The client doesn't read its messages fast enough and its queue is full.
+   * It is removed from the server on another thread, so that the sender
+   * (possibly the game) isn't held up by the removal.
+   */
+  private void slowConsumer() {
+    if (this.slowConsumer) {
+      return;
+    }
+    this.slowConsumer = true;
+    LOGGER.warn("ClientHandler " + this.username
+            + " is too slow to receive its messages. Disconnecting.");
+    this.server.execute(() -> this.server.removeClient(this));
   }
 }
@@ -0,0 +1,109 @@
+package server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The clients connected to the server, indexed by their connection id and by their username. The
+ * registry is accessed concurrently by the accepting thread, the client handlers and the games
+ * without external locking. Iterating over {@link #clients()} never throws and
+ * reflects the clients connected at some point during the iteration.
+ */
+public class ClientRegistry {
+
+  /** The clients by connection id, iterated in the order in which they connected. */
+  private final ConcurrentSkipListMap<Integer, ClientHandler> byId =
+      new ConcurrentSkipListMap<>();
+  /** The clients by username. Clients which haven't chosen a username yet aren't listed. */
+  private final ConcurrentHashMap<String, ClientHandler> byUsername = new ConcurrentHashMap<>();
+
+  /**
+   * Adds a freshly connected client.
+   *
+   * @param client The client to add
+   */
+  public void add(final ClientHandler client) {
+    this.byId.put(client.getId(), client);
+  }
+
+  /**
+   * Removes a client and frees its username.
+   *
+   * @param client The client to remove
+   * @return false if the client had already been removed
+   */
+  public boolean remove(final ClientHandler client) {
+    if (!this.byId.remove(client.getId(), client)) {
+      return false;
+    }
+    String username = client.getUsername();
+    if (username != null) {
+      this.byUsername.remove(username, client);
+    }
+    return true;
+  }
+
+  /**
+   * Reserves a username for a client and frees its previous username. Used by {@link
+   * ClientHandler} before it changes its username.
+   *
+   * @param client The client which wants the username
+   * @param username The username
+   * @return false if another client already has this username
+   */
+  public boolean claimUsername(final ClientHandler client, final String username) {
+    ClientHandler owner = this.byUsername.putIfAbsent(username, client);
+    if (owner != null && owner != client) {
+      return false;
+    }
+    String previous = client.getUsername();
+    if (previous != null && !previous.equals(username)) {
+      this.byUsername.remove(previous, client);
+    }
+    if (!this.byId.containsKey(client.getId())) {
+      // The client has been removed in the meantime
+      this.byUsername.remove(username, client);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the client with the given username.
+   *
+   * @param username The username
+   * @return the client, or null if no client has this username
+   */
+  public ClientHandler getByUsername(final String username) {
+    return username == null ? null : this.byUsername.get(username);
+  }
+
+  /**
+   * Returns the client with the given connection id.
+   *
+   * @param id The connection id
+   * @return the client, or null if it isn't connected
+   */
+  public ClientHandler get(final int id) {
+    return this.byId.get(id);
+  }
+
+  /**
+   * Returns a read-only view of all clients, safe to iterate while clients connect and disconnect.
+   *
+   * @return the connected clients in the order in which they connected
+   */
+  public Collection<ClientHandler> clients() {
+    return Collections.unmodifiableCollection(this.byId.values());
+  }
+
+  /**
+   * Returns the number of connected clients.
+   *
+   * @return the number of clients
+   */
+  public int size() {
+    return this.byId.size();
+  }
+}
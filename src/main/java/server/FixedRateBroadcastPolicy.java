@@ -0,0 +1,32 @@
+package server;
+
+import game.Cube;
+
+/** Broadcasts the state at a fixed rate, whatever the cube is doing. */
+public class FixedRateBroadcastPolicy implements BroadcastPolicy {
+
+  /** Only broadcasts the changes made by inputs and events. */
+  public static final FixedRateBroadcastPolicy CHANGES_ONLY = new FixedRateBroadcastPolicy(0);
+
+  /** The number of ticks between two broadcasts, 0 for none. */
+  private final long interval;
+
+  /**
+   * Creates a policy broadcasting at the given rate.
+   *
+   * @param rate The number of broadcasts per second, at most {@link TickScheduler#TICK_RATE}, or 0
+   *     to only broadcast the changes made by inputs and events
+   */
+  public FixedRateBroadcastPolicy(final int rate) {
+    if (rate < 0 || rate > TickScheduler.TICK_RATE) {
+      throw new IllegalArgumentException("Invalid broadcast rate: " + rate);
+    }
+    this.interval = rate == 0 ? 0 : TickScheduler.TICK_RATE / rate;
+  }
+
+  @Override
+  public boolean shouldBroadcast(
+      final Cube cube, final boolean motionChanged, final long ticksSinceBroadcast) {
+    return this.interval > 0 && ticksSinceBroadcast >= this.interval;
+  }
+}
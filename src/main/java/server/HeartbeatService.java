@@ -0,0 +1,186 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Detects dead connections with a hashed timing wheel. Every client has its own heartbeat, placed
+ * in the slot of the wheel matching its next deadline, so that a tick only looks at the clients
+ * which are due instead of sweeping over all of them.
+ *
+ * <p>Any message received from a client counts as a sign of life (see {@link
+ * ClientHandler#getLastReceived()}). A client which has been silent for {@link #IDLE_MILLIS} is
+ * sent a {@link ServerProtocol#SERVER_PING}, and it is removed if it is still silent {@link
+ * #TIMEOUT_MILLIS} later. Active clients are never pinged: when their heartbeat comes due, it is
+ * simply moved to the slot of their last message plus the idle interval.
+ *
+ * <p>The wheel is only touched by the thread running the service. Other threads register clients
+ * through a queue, and removed clients are dropped the next time their heartbeat comes due.
+ */
+public class HeartbeatService implements Runnable {
+
+  /** The time a client may stay silent before it is pinged. */
+  static final long IDLE_MILLIS = 1000;
+  /** The time a pinged client has to answer before it is removed. At most {@link #IDLE_MILLIS}. */
+  static final long TIMEOUT_MILLIS = 1000;
+
+  /** The duration of a tick of the wheel. */
+  private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+  /** The number of slots, a power of two covering more than the longest delay. */
+  private static final int WHEEL_SIZE = 64;
+  /** Maps a tick to its slot. */
+  private static final int MASK = WHEEL_SIZE - 1;
+
+  /** The heartbeat of a client. */
+  private static final class Heartbeat {
+    /** The client. */
+    private final ClientHandler client;
+    /** The number of turns of the wheel left before the heartbeat is due. */
+    private long rounds;
+    /** Whether the client has been pinged since its last message. */
+    private boolean pinged;
+
+    /**
+     * Creates the heartbeat of a client.
+     *
+     * @param theClient The client
+     */
+    private Heartbeat(final ClientHandler theClient) {
+      this.client = theClient;
+    }
+  }
+
+  /** The slots of the wheel. */
+  private final List<List<Heartbeat>> wheel = new ArrayList<>(WHEEL_SIZE);
+  /** The heartbeats registered since the last tick. */
+  private final Queue<Heartbeat> registered = new ConcurrentLinkedQueue<>();
+  /** The heartbeats due in the current tick, reused between ticks. */
+  private final List<Heartbeat> due = new ArrayList<>();
+  /** Called with the clients which haven't answered a ping. */
+  private final Consumer<ClientHandler> onTimeout;
+
+  /** The time of tick 0. */
+  private final long start = System.nanoTime();
+  /** The next tick to process. */
+  private long tick = 0;
+  /** Used to know if the service is running. */
+  private volatile boolean running = true;
+
+  /**
+   * Creates the service. It only starts ticking once it is run.
+   *
+   * @param timeoutHandler Called on the service's thread with every client which hasn't answered
+   *     a ping. It must not block.
+   */
+  public HeartbeatService(final Consumer<ClientHandler> timeoutHandler) {
+    this.onTimeout = timeoutHandler;
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      this.wheel.add(new ArrayList<>());
+    }
+  }
+
+  /**
+   * Starts watching a freshly connected client. Can be called from any thread.
+   *
+   * @param client The client
+   */
+  public void register(final ClientHandler client) {
+    this.registered.add(new Heartbeat(client));
+  }
+
+  /** Stops the service. Called when the server shuts down. */
+  public void stop() {
+    this.running = false;
+  }
+
+  /** Method from Runnable interface. Processes the ticks of the wheel until stopped. */
+  @Override
+  public void run() {
+    while (this.running) {
+      long sleepNanos = this.start + this.tick * TICK_NANOS - System.nanoTime();
+      if (sleepNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+          // The server is shutting down
+          return;
+        }
+      }
+      this.processTick(System.nanoTime());
+      this.tick++;
+    }
+  }
+
+  /**
+   * Schedules the registered heartbeats and checks the heartbeats due in the current tick.
+   *
+   * @param now The current time
+   */
+  private void processTick(final long now) {
+    Heartbeat heartbeat;
+    while ((heartbeat = this.registered.poll()) != null) {
+      this.schedule(heartbeat, TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS));
+    }
+
+    List<Heartbeat> slot = this.wheel.get((int) (this.tick & MASK));
+    int kept = 0;
+    for (Heartbeat candidate : slot) {
+      if (candidate.rounds > 0) {
+        candidate.rounds--;
+        slot.set(kept++, candidate);
+      } else {
+        this.due.add(candidate);
+      }
+    }
+    slot.subList(kept, slot.size()).clear();
+
+    for (Heartbeat dueHeartbeat : this.due) {
+      this.check(dueHeartbeat, now);
+    }
+    this.due.clear();
+  }
+
+  /**
+   * Checks a heartbeat which has come due: pings the client, reports it as timed out or schedules
+   * the heartbeat again.
+   *
+   * @param heartbeat The heartbeat
+   * @param now The current time
+   */
+  private void check(final Heartbeat heartbeat, final long now) {
+    ClientHandler client = heartbeat.client;
+    if (!client.isRunning()) {
+      // Removed from the server, forget the heartbeat
+      return;
+    }
+
+    long silence = now - client.getLastReceived();
+    long idleNanos = TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS);
+    if (silence < idleNanos) {
+      heartbeat.pinged = false;
+      this.schedule(heartbeat, idleNanos - silence);
+    } else if (!heartbeat.pinged) {
+      heartbeat.pinged = true;
+      client.ping();
+      this.schedule(heartbeat, TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS));
+    } else {
+      this.onTimeout.accept(client);
+    }
+  }
+
+  /**
+   * Places a heartbeat in the slot of the wheel matching its deadline.
+   *
+   * @param heartbeat The heartbeat
+   * @param delayNanos The time until the heartbeat is due, rounded up to whole ticks
+   */
+  private void schedule(final Heartbeat heartbeat, final long delayNanos) {
+    long ticks = Math.max(1, (delayNanos + TICK_NANOS - 1) / TICK_NANOS);
+    heartbeat.rounds = (ticks - 1) / WHEEL_SIZE;
+    this.wheel.get((int) ((this.tick + ticks) & MASK)).add(heartbeat);
+  }
+}
@@ -18,9 +18,10 @@ public class Lobby {
 
   private final Logger LOGGER = LogManager.getLogger(getClass());
 
-  Thread gameThread;
   private ServerGame game;
   private boolean isInGame = false;
+  /** Decides when the games of the lobby broadcast their state, null for the default one. */
+  private volatile BroadcastPolicy broadcastPolicy;
   int gamesPlayed = 0;
 
   /**
@@ -97,18 +98,16 @@ public class Lobby {
     return name;
   }
   /**
-   * Checks if a client is in the lobby.
+   * Checks if a client is in the lobby. Clients are compared by identity rather than by username,
+   * as the username of a client can change.
    *
-   * @param username The username of the client
+   * @param client The client
    * @return if the client is in the lobby
    */
-  protected boolean isInLobby(String username) {
-    for (ClientHandler client : this.clients) {
-      if (client.getUsername().equals(username)) {
-        return true;
-      }
+  protected boolean isInLobby(ClientHandler client) {
+    synchronized (this.clients) {
+      return this.clients.contains(client);
     }
-    return false;
   }
 
   /**
@@ -132,8 +131,20 @@ public class Lobby {
 
   /** Called when the lobbyList has to be updated */
   public void updateLobbyList() {
-    for (ClientHandler client : this.clients) {
-      client.listLobby();
+    this.broadcast(new OutboundMessage(this.listLobby()));
+  }
+
+  /**
+   * Sends a message to every client in the lobby. The message is encoded once and the same bytes
+   * are queued for every client.
+   *
+   * @param message The message to send
+   */
+  protected void broadcast(OutboundMessage message) {
+    synchronized (this.clients) {
+      for (ClientHandler client : this.clients) {
+        client.send(message);
+      }
     }
   }
 
@@ -144,7 +155,7 @@ public class Lobby {
    * @param isReady the new ready status of the client
    */
   public void toggleClientReady(ClientHandler client, boolean isReady) {
-    if (!isInLobby(client.getUsername())) {
+    if (!isInLobby(client)) {
       LOGGER.warn(
           "Client "
               + client.getUsername()
@@ -181,21 +192,40 @@ public class Lobby {
   private void startGame() {
     // The game instance starts itself
     String gameId = this.getName();
-    this.game = new ServerGame(this.clientsAndColours, gameId, this);
+    boolean deterministic = Server.getInstance().isDeterministic();
+    BroadcastPolicy policy = this.broadcastPolicy;
+    if (policy == null) {
+      policy = BroadcastPolicy.defaultPolicy(deterministic);
+    }
+    this.game = new ServerGame(this.clientsAndColours, gameId, this, deterministic, policy);
 
     // Tell the clients to load their game screen
+    OutboundMessage startGame =
+        new OutboundMessage(
+            ServerProtocol.START_GAME.toString()
+                + ServerProtocol.SEPARATOR
+                + this.game.isDeterministic());
     for (ClientHandler client : this.getClientHandlers()) {
-      client.startGame();
+      client.startGame(startGame);
     }
 
-    // Starts the game thread
-    this.gameThread = new Thread(game);
-    gameThread.start();
+    // Starts ticking the game
+    Server.getInstance().getTickScheduler().schedule(this.game);
 
     Server.getInstance().addGame(this.game);
     this.isInGame = true;
   }
 
+  /**
+   * Sets when the games started from now on broadcast their state. Called by {@link Server} when
+   * the lobby is created.
+   *
+   * @param policy The policy, or null for {@link BroadcastPolicy#defaultPolicy(boolean)}
+   */
+  public void setBroadcastPolicy(BroadcastPolicy policy) {
+    this.broadcastPolicy = policy;
+  }
+
   /**
    * Getter for the game.
    *
@@ -226,17 +256,13 @@ public class Lobby {
     return command;
   }
 
-  /** Ends the game thread by setting the running status of the game to false. */
+  /** Ends the game by setting its running status to false and stopping its ticks. */
   protected void endGame() {
     this.game.running = false;
     this.isInGame = false;
     this.gamesPlayed++;
 
-    try {
-      this.gameThread.interrupt();
-    } catch (Exception e) {
-      LOGGER.warn("Could not interrupt game thread.");
-    }
+    Server.getInstance().getTickScheduler().cancel(this.game);
 
     Server.getInstance().endGame(this.game);
   }
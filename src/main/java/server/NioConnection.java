@@ -0,0 +1,189 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A non-blocking connection to a client. Incoming bytes are split into lines by the {@link
+ * NioEventLoop} owning the connection, outgoing messages are queued and written by the same loop
+ * once they are flushed.
+ */
+public class NioConnection implements ClientConnection {
+
+  /** Lines longer than this are considered malicious and close the connection. */
+  private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+  /** The client's channel. */
+  private final SocketChannel channel;
+  /** The event loop which reads and writes this connection. */
+  private final NioEventLoop eventLoop;
+  /** The messages waiting to be written to the channel. */
+  private final OutboundQueue outbound = new OutboundQueue();
+  /** The coalesced messages currently being written, only used by the event loop. */
+  private ByteBuffer writing;
+
+  /** The bytes of the line currently being received. */
+  private byte[] lineBuffer = new byte[256];
+  /** The number of bytes of the line currently being received. */
+  private int lineLength = 0;
+
+  /** The handler to which received lines are dispatched. */
+  private ClientHandler handler;
+  /** The key of the channel in the selector of the event loop. */
+  private SelectionKey key;
+
+  /**
+   * Creates a connection for a freshly accepted channel.
+   *
+   * @param clientChannel The client's channel
+   * @param loop The event loop which will serve the connection
+   * @throws IOException If the channel can't be made non-blocking
+   */
+  public NioConnection(final SocketChannel clientChannel, final NioEventLoop loop)
+      throws IOException {
+    this.channel = clientChannel;
+    this.eventLoop = loop;
+    this.channel.configureBlocking(false);
+  }
+
+  /**
+   * Sets the handler to which received lines are dispatched.
+   *
+   * @param clientHandler The handler of this connection
+   */
+  protected void setHandler(final ClientHandler clientHandler) {
+    this.handler = clientHandler;
+  }
+
+  /**
+   * Returns the handler to which received lines are dispatched.
+   *
+   * @return the handler of this connection
+   */
+  protected ClientHandler getHandler() {
+    return this.handler;
+  }
+
+  /**
+   * Returns the channel of the connection. Used by the event loop to register it.
+   *
+   * @return the client's channel
+   */
+  protected SocketChannel getChannel() {
+    return this.channel;
+  }
+
+  /**
+   * Sets the key of the channel once it has been registered by the event loop.
+   *
+   * @param selectionKey The key of the channel
+   */
+  protected void setKey(final SelectionKey selectionKey) {
+    this.key = selectionKey;
+  }
+
+  /**
+   * Returns the key of the channel, or null if it hasn't been registered yet.
+   *
+   * @return the key of the channel
+   */
+  protected SelectionKey getKey() {
+    return this.key;
+  }
+
+  @Override
+  public boolean queue(final OutboundMessage message, final boolean replaceable) {
+    return this.outbound.offer(message, replaceable);
+  }
+
+  @Override
+  public void flush() {
+    this.outbound.flush();
+    this.eventLoop.requestWrite(this);
+  }
+
+  @Override
+  public void enableBinaryFraming() {
+    this.outbound.enableBinary();
+    this.eventLoop.requestWrite(this);
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.outbound.close();
+    if (this.key != null) {
+      this.key.cancel();
+    }
+    this.channel.close();
+  }
+
+  /**
+   * Whether messages are waiting to be written.
+   *
+   * @return true if a write is in progress or the outbound queue isn't empty
+   */
+  protected boolean hasPendingWrites() {
+    return (this.writing != null && this.writing.hasRemaining()) || !this.outbound.isEmpty();
+  }
+
+  /**
+   * Consumes the bytes which have just been read and dispatches every complete line to the
+   * handler. Called from the event loop thread.
+   *
+   * @param buffer The bytes read from the channel, ready to be read
+   * @return false if the client has sent a line which is too long
+   */
+  protected boolean consume(final ByteBuffer buffer) {
+    while (buffer.hasRemaining()) {
+      byte b = buffer.get();
+      if (b == '\n') {
+        int length = this.lineLength;
+        if (length > 0 && this.lineBuffer[length - 1] == '\r') {
+          length--;
+        }
+        String line = new String(this.lineBuffer, 0, length, StandardCharsets.UTF_8);
+        this.lineLength = 0;
+        this.handler.receive(line);
+      } else {
+        if (this.lineLength == MAX_LINE_LENGTH) {
+          return false;
+        }
+        if (this.lineLength == this.lineBuffer.length) {
+          byte[] larger = new byte[Math.min(this.lineBuffer.length * 2, MAX_LINE_LENGTH)];
+          System.arraycopy(this.lineBuffer, 0, larger, 0, this.lineLength);
+          this.lineBuffer = larger;
+        }
+        this.lineBuffer[this.lineLength++] = b;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes as many queued messages as the channel accepts without blocking. The messages queued
+   * since the previous write are coalesced into a single buffer. Called from the event loop
+   * thread.
+   *
+   * @return true if everything has been written
+   * @throws IOException If the channel is closed
+   */
+  protected boolean writePending() throws IOException {
+    while (true) {
+      if (this.writing == null || !this.writing.hasRemaining()) {
+        byte[] next = this.outbound.drain();
+        if (next == null) {
+          this.writing = null;
+          return true;
+        }
+        this.writing = ByteBuffer.wrap(next);
+      }
+      this.channel.write(this.writing);
+      if (this.writing.hasRemaining()) {
+        return false;
+      }
+    }
+  }
+}
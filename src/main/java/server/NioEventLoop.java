@@ -0,0 +1,174 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An I/O event loop used in {@link ServerMode#NIO}. Each loop owns a selector and serves a share
+ * of the connections: it decodes the received lines and dispatches them to {@link
+ * ClientHandler#receive(String)}, and writes the messages flushed by {@link NioConnection#flush()}.
+ */
+public class NioEventLoop implements Runnable {
+
+  /** The server: informed when a client disconnects. */
+  private final Server server;
+  /** The selector of the connections served by this loop. */
+  private final Selector selector;
+  /** Connections accepted by the server but not yet registered with the selector. */
+  private final Queue<NioConnection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+  /** Connections which have queued lines since the last select. */
+  private final Queue<NioConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+  /** Buffer into which all connections of this loop are read. */
+  private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(16 * 1024);
+  /** Used for the while loop in the run method. */
+  private volatile boolean running = true;
+
+  private final Logger LOGGER = LogManager.getLogger(getClass());
+
+  /**
+   * Creates an event loop.
+   *
+   * @param theServer The server
+   * @throws IOException If the selector can't be opened
+   */
+  public NioEventLoop(final Server theServer) throws IOException {
+    this.server = theServer;
+    this.selector = Selector.open();
+  }
+
+  /**
+   * Hands a connection over to this loop. Called from the accepting thread.
+   *
+   * @param connection The connection to serve
+   */
+  protected void register(final NioConnection connection) {
+    this.pendingRegistrations.add(connection);
+    this.selector.wakeup();
+  }
+
+  /**
+   * Asks the loop to write the queued lines of a connection. Called from any thread.
+   *
+   * @param connection The connection which has queued lines
+   */
+  protected void requestWrite(final NioConnection connection) {
+    this.pendingWrites.add(connection);
+    this.selector.wakeup();
+  }
+
+  /** Stops the loop and closes its selector. */
+  protected void shutdown() {
+    this.running = false;
+    this.selector.wakeup();
+  }
+
+  /** Method from Runnable interface. Selects and serves the ready connections until shut down. */
+  @Override
+  public void run() {
+    while (this.running) {
+      try {
+        this.selector.select();
+        this.registerPending();
+        this.enableWrites();
+
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          this.serve(key);
+        }
+      } catch (IOException e) {
+        LOGGER.error("NIO event loop failed: " + e.getMessage());
+      }
+    }
+
+    try {
+      this.selector.close();
+    } catch (IOException e) {
+      LOGGER.error("Could not close selector: " + e.getMessage());
+    }
+  }
+
+  /** Registers the connections which have been handed over since the last select. */
+  private void registerPending() {
+    NioConnection connection;
+    while ((connection = this.pendingRegistrations.poll()) != null) {
+      try {
+        int ops = SelectionKey.OP_READ;
+        if (connection.hasPendingWrites()) {
+          ops |= SelectionKey.OP_WRITE;
+        }
+        connection.setKey(connection.getChannel().register(this.selector, ops, connection));
+      } catch (IOException e) {
+        this.disconnect(connection);
+      }
+    }
+  }
+
+  /** Adds the write interest for the connections which have queued lines. */
+  private void enableWrites() {
+    NioConnection connection;
+    while ((connection = this.pendingWrites.poll()) != null) {
+      SelectionKey key = connection.getKey();
+      if (key != null && key.isValid()) {
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+      }
+    }
+  }
+
+  /**
+   * Reads from and writes to a ready connection.
+   *
+   * @param key The key of the ready connection
+   */
+  private void serve(final SelectionKey key) {
+    NioConnection connection = (NioConnection) key.attachment();
+    try {
+      if (key.isReadable()) {
+        this.readBuffer.clear();
+        int read = connection.getChannel().read(this.readBuffer);
+        if (read < 0) {
+          this.disconnect(connection);
+          return;
+        }
+        this.readBuffer.flip();
+        if (!connection.consume(this.readBuffer)) {
+          LOGGER.warn("Client sent a line which is too long. Closing the connection.");
+          this.disconnect(connection);
+          return;
+        }
+      }
+      if (key.isValid() && key.isWritable() && connection.writePending()) {
+        key.interestOps(SelectionKey.OP_READ);
+      }
+    } catch (IOException | CancelledKeyException e) {
+      this.disconnect(connection);
+    }
+  }
+
+  /**
+   * The connection has been lost. The client is removed from the server.
+   *
+   * @param connection The lost connection
+   */
+  private void disconnect(final NioConnection connection) {
+    ClientHandler handler = connection.getHandler();
+    if (handler != null && handler.isRunning()) {
+      this.server.removeClient(handler);
+    } else {
+      try {
+        connection.close();
+      } catch (IOException e) {
+        LOGGER.error("Could not close connection: " + e.getMessage());
+      }
+    }
+  }
+}
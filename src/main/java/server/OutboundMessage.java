@@ -0,0 +1,91 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+import util.WireCodec;
+
+/**
+ * A message encoded once for every client it is sent to. It can be sent as a text line and as a
+ * {@link WireCodec} frame; each form is encoded the first time a recipient needs it and then shared
+ * by all recipients, so that a broadcast only serialises the message once per format in use, and a
+ * message sent to text clients only is never encoded as a frame. Instances can be queued by any
+ * number of {@link OutboundQueue}s at the same time.
+ */
+public final class OutboundMessage {
+
+  /** Produces the message as a text command, without line terminator. */
+  private final Supplier<String> command;
+  /** Encodes the dedicated frame of the message, null if it is sent in a text frame. */
+  private final Supplier<byte[]> frameEncoder;
+  /** The message as a line, terminator included, null until a text client needs it. */
+  private volatile byte[] line;
+  /** The message as a frame, null until a binary client needs it. */
+  private volatile byte[] frame;
+
+  /**
+   * Creates a text command. Clients using the binary framing receive it in a text frame.
+   *
+   * @param theCommand The command, without line terminator
+   */
+  public OutboundMessage(final String theCommand) {
+    this(() -> theCommand, null);
+  }
+
+  /**
+   * Creates a message which has a dedicated frame, such as a position update. The encoders are
+   * called later, possibly by other threads, so they must only use values captured when the
+   * message is created.
+   *
+   * @param theCommand Produces the message as a text command, without line terminator
+   * @param theFrameEncoder Encodes the message with {@link WireCodec}, or null to send the command
+   *     in a text frame
+   */
+  public OutboundMessage(
+      final Supplier<String> theCommand, final Supplier<byte[]> theFrameEncoder) {
+    this.command = theCommand;
+    this.frameEncoder = theFrameEncoder;
+  }
+
+  /**
+   * Returns the encoding of the message for a client, encoding it on first use. The returned array
+   * is shared and must not be modified.
+   *
+   * @param binary Whether the client uses the binary framing
+   * @return the frame or the line
+   */
+  byte[] bytes(final boolean binary) {
+    return binary ? this.frame() : this.line();
+  }
+
+  /**
+   * Returns the message as a line. Two threads may both encode it the first time, which is
+   * harmless as the encodings are equal.
+   *
+   * @return the line, terminator included
+   */
+  private byte[] line() {
+    byte[] encoded = this.line;
+    if (encoded == null) {
+      encoded = (this.command.get() + "\n").getBytes(StandardCharsets.UTF_8);
+      this.line = encoded;
+    }
+    return encoded;
+  }
+
+  /**
+   * Returns the message as a frame, encoded like the line.
+   *
+   * @return the frame
+   */
+  private byte[] frame() {
+    byte[] encoded = this.frame;
+    if (encoded == null) {
+      encoded =
+          this.frameEncoder != null
+              ? this.frameEncoder.get()
+              : WireCodec.encodeText(this.command.get());
+      this.frame = encoded;
+    }
+    return encoded;
+  }
+}
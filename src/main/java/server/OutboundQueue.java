@@ -0,0 +1,135 @@
+package server;
+
+import java.util.ArrayDeque;
+import util.WireCodec;
+
+/**
+ * The messages waiting to be sent to a client. Messages are queued by any thread and handed to the
+ * writer of the connection on {@link #flush()}, which drains everything queued so far in a single
+ * write.
+ *
+ * <p>The queue is bounded: a client which doesn't read fast enough is reported by {@link
+ * #offer(OutboundMessage, boolean)} so that it can be disconnected instead of stalling its game.
+ * Replaceable messages (the position updates) are superseded by newer ones which haven't been
+ * written yet, so a slow client only receives the latest position.
+ */
+public class OutboundQueue {
+
+  /** A client with more unsent bytes than this is considered too slow. */
+  public static final int MAX_QUEUED_BYTES = 256 * 1024;
+
+  /**
+   * The messages in the order in which they were queued, already encoded. The arrays are shared
+   * with the {@link OutboundMessage}s and with the queues of the other recipients.
+   */
+  private final ArrayDeque<byte[]> messages = new ArrayDeque<>();
+  /** The replaceable message which hasn't been written yet, if any. */
+  private byte[] pendingReplaceable;
+  /** The number of bytes queued. */
+  private int queuedBytes = 0;
+  /** Whether the writer should write the queued messages. */
+  private boolean flushRequested = false;
+  /** Whether the messages are encoded as {@link WireCodec} frames. */
+  private boolean binary = false;
+  /** Set once the connection is closed, stops the writer. */
+  private boolean closed = false;
+
+  /**
+   * Queues a message in the negotiated format without flushing it.
+   *
+   * @param message The message to queue
+   * @param replaceable Whether a newer replaceable message supersedes this one
+   * @return false if the client is too slow and should be disconnected
+   */
+  public synchronized boolean offer(final OutboundMessage message, final boolean replaceable) {
+    if (this.closed) {
+      return true;
+    }
+    byte[] bytes = message.bytes(this.binary);
+
+    if (replaceable && this.pendingReplaceable != null
+        && this.messages.removeLastOccurrence(this.pendingReplaceable)) {
+      this.queuedBytes -= this.pendingReplaceable.length;
+    }
+    if (this.queuedBytes + bytes.length > MAX_QUEUED_BYTES) {
+      return false;
+    }
+    this.messages.add(bytes);
+    this.queuedBytes += bytes.length;
+    if (replaceable) {
+      this.pendingReplaceable = bytes;
+    }
+    return true;
+  }
+
+  /**
+   * Queues {@link ServerProtocol#BINARY_PROTOCOL_ENABLED} as the last text line and encodes every
+   * following message as a frame.
+   */
+  public synchronized void enableBinary() {
+    this.offer(new OutboundMessage(ServerProtocol.BINARY_PROTOCOL_ENABLED.toString()), false);
+    this.binary = true;
+    this.flush();
+  }
+
+  /** Asks the writer to write the queued messages. */
+  public synchronized void flush() {
+    this.flushRequested = true;
+    this.notifyAll();
+  }
+
+  /** Stops the writer. The queued messages are discarded. */
+  public synchronized void close() {
+    this.closed = true;
+    this.messages.clear();
+    this.notifyAll();
+  }
+
+  /**
+   * Whether messages are waiting to be written.
+   *
+   * @return true if the queue isn't empty
+   */
+  public synchronized boolean isEmpty() {
+    return this.messages.isEmpty();
+  }
+
+  /**
+   * Blocks until a flush has been requested and returns all queued messages. Used by the writers
+   * of blocking connections.
+   *
+   * @return the queued messages as one array, or null once the queue has been closed
+   * @throws InterruptedException If the writer is interrupted while waiting
+   */
+  public synchronized byte[] take() throws InterruptedException {
+    while (!this.closed && (!this.flushRequested || this.messages.isEmpty())) {
+      this.wait();
+    }
+    if (this.closed) {
+      return null;
+    }
+    return this.drain();
+  }
+
+  /**
+   * Returns all queued messages without blocking. Used by the {@link NioEventLoop}.
+   *
+   * @return the queued messages as one array, or null if the queue is empty
+   */
+  public synchronized byte[] drain() {
+    this.flushRequested = false;
+    if (this.messages.isEmpty()) {
+      return null;
+    }
+    byte[] coalesced = new byte[this.queuedBytes];
+    int offset = 0;
+    for (byte[] message : this.messages) {
+      System.arraycopy(message, 0, coalesced, offset, message.length);
+      offset += message.length;
+    }
+    this.messages.clear();
+    this.queuedBytes = 0;
+    this.pendingReplaceable = null;
+    return coalesced;
+  }
+}
@@ -1,7 +1,6 @@
 package server;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,12 +8,21 @@ import java.util.stream.Collectors;
 import java.util.Optional;
 import java.util.LinkedList;
 import java.util.AbstractMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.URISyntaxException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import java.io.IOException;
 import java.io.File;
@@ -26,23 +34,50 @@ import java.io.InputStream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import game.LevelRegistry;
+import util.ListDelta;
+import util.SortHighscores;
+import util.VersionedList;
 
 /**
  * The server class. This class is responsible for managing the server. It contains a list of all
  * clients, a list of all lobbies and a list of all games. It also contains a ServerSocket which is
- * used to listen for client connections.
+ * used to listen for client connections. In {@link ServerMode#NIO}, a ServerSocketChannel is used
+ * instead and the connections are served by a pool of {@link NioEventLoop}s.
  */
 public class Server implements Runnable {
 
   /** the port of the server. */
   private final int port;
-
-  /** An ArrayList for all clientHandlers. */
-  private final ArrayList<ClientHandler> clientHandlers = new ArrayList<>();
-  /** An ArrayList for the Threads of the clients. */
-  private final ArrayList<Thread> clientThreads = new ArrayList<>();
-  /** A HashMap for all lobbies with their names. */
-  private final HashMap<String, Lobby> lobbies = new HashMap<>();
+  /** How the client connections are handled. */
+  private final ServerMode mode;
+  /** Whether the games are simulated in the deterministic mode, see {@link ServerGame}. */
+  private volatile boolean deterministic = false;
+  /** The broadcast policy given to the new lobbies, null for the default one. */
+  private volatile BroadcastPolicy broadcastPolicy = null;
+
+  /** All connected clients, indexed by connection id and username. */
+  private final ClientRegistry clientRegistry = new ClientRegistry();
+  /** The tasks reading from the clients, in the modes with a thread per client. */
+  private final Map<ClientHandler, Future<?>> clientTasks = new ConcurrentHashMap<>();
+  /** Runs the clients and the heartbeats. Virtual threads in {@link ServerMode#VIRTUAL}. */
+  private final ExecutorService executor;
+  /** Pings the silent clients and removes the dead ones. */
+  private final HeartbeatService heartbeats;
+  /** The list of lobbies as last sent to the clients. */
+  private final VersionedList lobbyList = new VersionedList();
+  /** The list of clients as last sent to the clients. */
+  private final VersionedList clientList = new VersionedList();
+  /** The list of games as last sent to the clients, sorted by score. */
+  private final VersionedList gameList = new VersionedList(0, SortHighscores.ORDER);
+  /** Ticks all running games. */
+  private final TickScheduler tickScheduler =
+      new TickScheduler(Runtime.getRuntime().availableProcessors());
+  /**
+   * All lobbies by their names. Changed and listed by the client handlers concurrently, like the
+   * {@link ClientRegistry}, without external locking.
+   */
+  private final Map<String, Lobby> lobbies = new ConcurrentHashMap<>();
   /** A Map for the ServerGame used for the game state. */
   private Map<ServerGame, Map.Entry<Integer, Boolean>> games = new LinkedHashMap<>();
 
@@ -50,10 +85,12 @@ public class Server implements Runnable {
 
   /** The listener of the ServerSocket. */
   private ServerSocket listener;
+  /** The listener in {@link ServerMode#NIO}. */
+  private ServerSocketChannel channelListener;
+  /** The event loops serving the connections in {@link ServerMode#NIO}. */
+  private NioEventLoop[] eventLoops = new NioEventLoop[0];
   /** Used to try to connect the client to the server. */
   private boolean shuttingDown = false;
-  /** Used to know if clients are connected to the server. */
-  private boolean noClientConnected = true;
 
   /** The instance of the server. */
   private static Server instance;
@@ -69,7 +106,24 @@ public class Server implements Runnable {
    * @param serverPort The port which the server will listen on
    */
   public Server(final int serverPort) {
+    this(serverPort, ServerMode.THREADED);
+  }
+
+  /**
+   * Creates a new server handling its connections in the given mode.
+   *
+   * @param serverPort The port which the server will listen on
+   * @param serverMode How the client connections are handled
+   */
+  public Server(final int serverPort, final ServerMode serverMode) {
     this.port = serverPort;
+    this.mode = serverMode;
+    this.executor =
+        serverMode == ServerMode.VIRTUAL
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : Executors.newCachedThreadPool();
+    // The silent clients are removed through the server's executor, see connectionLost()
+    this.heartbeats = new HeartbeatService(ClientHandler::connectionLost);
     this.logger = LogManager.getLogger(Server.class);
     instance = this;
 
@@ -78,6 +132,13 @@ public class Server implements Runnable {
     } catch (IOException | URISyntaxException e) {
       throw new RuntimeException(e);
     }
+
+    // Read the levels now rather than when the first game starts
+    LevelRegistry levels = LevelRegistry.getDefault();
+    for (int i = 0; i < LevelRegistry.DIFFICULTIES.length; i++) {
+      this.logger.info(
+          "Loaded " + levels.getLevels(i).size() + " " + LevelRegistry.DIFFICULTIES[i] + " levels.");
+    }
   }
 
   /**
@@ -85,16 +146,17 @@ public class Server implements Runnable {
    * method is called.
    */
   public void run() {
+    if (this.mode == ServerMode.NIO) {
+      this.runNio();
+      return;
+    }
+
     try {
       this.listener = new ServerSocket(this.port);
-      Thread pingSender = new Thread(new ServerPingSender(this.clientHandlers, this));
+      this.execute(this.heartbeats);
 
       while (true) {
         if (!shuttingDown) {
-          if (this.noClientConnected) {
-            this.noClientConnected = false;
-            pingSender.start();
-          }
           try {
             Socket client = listener.accept();
             this.addClient(client);
@@ -116,18 +178,84 @@ public class Server implements Runnable {
   }
 
   /**
-   * Adds a client to the list of clients and starts a dedicated thread for the client.
+   * Accepts client connections in {@link ServerMode#NIO}. The accepted channels are distributed
+   * among the event loops in a round-robin fashion.
+   */
+  private void runNio() {
+    try {
+      this.channelListener = ServerSocketChannel.open();
+      this.channelListener.bind(new InetSocketAddress(this.port));
+
+      int numLoops = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+      this.eventLoops = new NioEventLoop[numLoops];
+      for (int i = 0; i < numLoops; i++) {
+        this.eventLoops[i] = new NioEventLoop(this);
+        this.execute(this.eventLoops[i]);
+      }
+      logger.info("Serving connections with " + numLoops + " NIO event loops.");
+
+      this.execute(this.heartbeats);
+
+      int next = 0;
+      while (!this.shuttingDown) {
+        try {
+          SocketChannel channel = this.channelListener.accept();
+          NioEventLoop loop = this.eventLoops[next];
+          next = (next + 1) % numLoops;
+
+          NioConnection connection = new NioConnection(channel, loop);
+          ClientHandler clientHandler = new ClientHandler(connection, this);
+          connection.setHandler(clientHandler);
+          this.registerClient(clientHandler);
+          loop.register(connection);
+        } catch (IOException e) {
+          if (this.shuttingDown) {
+            break;
+          }
+          logger.error("Unable to accept connection: " + e.getMessage());
+        }
+      }
+    } catch (IOException e) {
+      logger.error("Server exception: " + e.getMessage());
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Adds a client to the list of clients and starts a dedicated (possibly virtual) thread for the
+   * client.
    *
    * @param clientSocket The socket of the client
    * @throws IOException If the client socket is closed
    */
   private void addClient(final Socket clientSocket) throws IOException {
-    ClientHandler clientHandler = new ClientHandler(clientSocket, this);
-    this.clientHandlers.add(clientHandler);
+    SocketConnection connection = new SocketConnection(clientSocket, this::execute);
+    ClientHandler clientHandler = new ClientHandler(connection, this);
+    connection.setHandler(clientHandler);
+    this.registerClient(clientHandler);
+
+    this.clientTasks.put(clientHandler, this.execute(connection));
+  }
+
+  /**
+   * Runs a task on the executor of the server. Used for the clients and the heartbeats, so that
+   * they all run on virtual threads in {@link ServerMode#VIRTUAL}.
+   *
+   * @param task The task to run
+   * @return The future of the task, used to cancel it
+   */
+  protected Future<?> execute(final Runnable task) {
+    return this.executor.submit(task);
+  }
 
-    Thread clientThread = new Thread(clientHandler);
-    this.clientThreads.add(clientThread);
-    clientThread.start();
+  /**
+   * Adds a client to the list of clients and informs everyone of the new client.
+   *
+   * @param clientHandler The handler of the new client
+   */
+  private void registerClient(final ClientHandler clientHandler) {
+    this.clientRegistry.add(clientHandler);
+    this.heartbeats.register(clientHandler);
 
     logger.info("[Server] Connected to Client!");
     this.updateLobbyList();
@@ -136,18 +264,24 @@ public class Server implements Runnable {
 
   /**
    * Called from {@link ClientHandler} when a client disconnects ({@link
-   * client.ClientProtocol#EXIT}). Removes the client from the list of clients, from its lobby and
-   * interrupts the client's dedicated thread.
+   * client.ClientProtocol#EXIT}). Removes the client from the list of clients, from its lobby,
+   * closes its connection and cancels the client's dedicated task if it has one.
    *
    * @param client The client that disconnected
    */
   protected void removeClient(final ClientHandler client) {
+    if (!this.clientRegistry.remove(client)) {
+      // Already removed, e.g. by the heartbeats after an EXIT
+      return;
+    }
     client.setRunning(false);
     Optional<Lobby> lobby = Optional.ofNullable(client.getLobby());
     lobby.ifPresent(value -> value.removeClient(client));
-    this.clientThreads.get(this.clientHandlers.indexOf(client)).interrupt();
-    this.clientThreads.remove(this.clientHandlers.indexOf(client));
-    this.clientHandlers.remove(client);
+    client.disconnect();
+    Future<?> clientTask = this.clientTasks.remove(client);
+    if (clientTask != null) {
+      clientTask.cancel(true);
+    }
 
     logger.info("Client " + client.getUsername() + " disconnected");
     this.updateLobbyList();
@@ -160,38 +294,58 @@ public class Server implements Runnable {
    * @param lobby The lobby that should be removed
    */
   protected void removeLobby(final Lobby lobby) {
-    this.lobbies.remove(lobby.getName());
+    this.lobbies.remove(lobby.getName(), lobby);
     this.updateLobbyList();
     logger.info("The lobby " + lobby.getName() + " was removed because it was empty.");
   }
 
   /**
-   * Called from {@link ClientHandler} when a client disconnects.
+   * Called from {@link ServerMain} when the server is closed. Stops accepting connections,
+   * disconnects all clients (which ends their games) and waits for the tasks of the executor to
+   * finish.
    *
    * @throws IOException If the socket fails to close
    */
   protected void shutdown() throws IOException {
+    logger.info("Server shutting down.");
     this.shuttingDown = true;
-    this.listener.close();
-
-    for (Thread clientThread : this.clientThreads) {
-      clientThread.interrupt();
+    if (this.listener != null) {
+      this.listener.close();
+    }
+    if (this.channelListener != null) {
+      this.channelListener.close();
     }
-    for (ClientHandler client : this.clientHandlers) {
+    this.heartbeats.stop();
+
+    for (ClientHandler client : this.clientRegistry.clients()) {
       removeClient(client);
     }
+    for (NioEventLoop loop : this.eventLoops) {
+      loop.shutdown();
+    }
+    this.tickScheduler.shutdown();
+    logger.info("Commands received from the clients: " + ClientHandler.COMMANDS);
 
-    logger.info("Server shutting down.");
-    System.exit(0);
+    this.executor.shutdown();
+    try {
+      if (!this.executor.awaitTermination(5, TimeUnit.SECONDS)) {
+        logger.warn("Tasks still running after 5 seconds. Interrupting them.");
+        this.executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      this.executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    logger.info("Server shut down.");
   }
 
   /**
-   * Used by {@link ClientHandler} to list the clientHandlers.
+   * Used by {@link ClientHandler} to look up clients by username.
    *
-   * @return The list of clientHandlers
+   * @return The registry of the connected clients
    */
-  protected ArrayList<ClientHandler> getClientHandlers() {
-    return this.clientHandlers;
+  protected ClientRegistry getClientRegistry() {
+    return this.clientRegistry;
   }
 
   /** Sorts the games by the number of levels completed. */
@@ -208,23 +362,6 @@ public class Server implements Runnable {
                     Map.Entry::getKey, Map.Entry::getValue, (a, b) -> b, LinkedHashMap::new));
   }
 
-  /**
-   * Returns the name of the client for given username.
-   *
-   * @param username of the client
-   * @return The name of the client
-   */
-  protected ClientHandler getClientHandler(final String username) {
-    for (ClientHandler client : this.clientHandlers) {
-      if (client.getUsername() != null) {
-        if (client.getUsername().equals(username)) {
-          return client;
-        }
-      }
-    }
-    return null;
-  }
-
   /**
    * Called from {@link ClientHandler} when a client wants to create a lobby. Creates a new lobby
    * and adds the client to it.
@@ -235,17 +372,14 @@ public class Server implements Runnable {
    */
   protected void createLobby(
       final String lobbyName, final String password, final ClientHandler client) {
-    for (String lobby : this.lobbies.keySet()) {
-      if (lobby.equals(lobbyName)) {
-        // Lobby already exists
-        logger.warn("Lobby does already exist and cannot be created.");
-        return;
-      }
+    Lobby lobby = new Lobby(lobbyName, password);
+    lobby.setBroadcastPolicy(this.broadcastPolicy);
+    if (this.lobbies.putIfAbsent(lobbyName, lobby) != null) {
+      logger.warn("Lobby does already exist and cannot be created.");
+      return;
     }
-
-    this.lobbies.put(lobbyName, new Lobby(lobbyName, password));
     logger.info(client.getUsername() + " created lobby " + lobbyName + ".");
-    this.lobbies.get(lobbyName).addClient(client, password);
+    lobby.addClient(client, password);
   }
 
   /**
@@ -258,12 +392,10 @@ public class Server implements Runnable {
    */
   protected void joinLobby(
       final String lobbyName, final String password, final ClientHandler client) {
-    for (String lobby : this.lobbies.keySet()) {
-      if (lobby.equals(lobbyName)) {
-        this.lobbies.get(lobbyName).addClient(client, password);
-        this.lobbies.get(lobbyName).updateLobbyList();
-        return;
-      }
+    Lobby lobby = this.lobbies.get(lobbyName);
+    if (lobby != null) {
+      lobby.addClient(client, password);
+      lobby.updateLobbyList();
     }
   }
 
@@ -272,45 +404,184 @@ public class Server implements Runnable {
    * clients.
    */
   protected void updateLobbyList() {
-    synchronized (this.lobbies) {
-      Lobby[] lobbies = this.lobbies.values().toArray(Lobby[]::new);
-      for (int i = 0; i < lobbies.length; i++) {
-        if (lobbies[i].getNumPlayers() == 0) {
-          this.removeLobby(lobbies[i]);
-        }
-      }
-      for (ClientHandler client : this.clientHandlers) {
-        client.updateLobbyList();
+    for (Lobby lobby : this.lobbies.values()) {
+      if (lobby.getNumPlayers() == 0) {
+        this.removeLobby(lobby);
       }
     }
+    this.publish(this.lobbyList, this::listLobbyEntries, ServerProtocol.UPDATE_FULL_LIST_DELTA);
   }
 
-  /** Sends a message to all clients in the server containing the list of all clients. */
+  /** Sends a message to all clients in the server containing the changes to the list of clients. */
   protected void updateClientList() {
-    synchronized (this.clientHandlers) {
-      for (ClientHandler client : this.clientHandlers) {
-        client.updateClientList();
-      }
-    }
+    this.publish(
+        this.clientList, this::listClientEntries, ServerProtocol.UPDATE_CLIENT_LIST_DELTA);
   }
 
   /**
-   * Sends a message to all clients in the server containing the list of all games and their status
-   * (running or finished).
+   * Sends a message to all clients in the server containing the changes to the list of games and
+   * their status (running or finished).
    */
   private void updateGameList() {
     this.sortGames();
+    this.publish(this.gameList, this::getHighscoresCopy, ServerProtocol.UPDATE_GAME_LIST_DELTA);
+  }
+
+  /**
+   * Sends a message to every client in the server. The message is encoded once and the same bytes
+   * are queued for every client.
+   *
+   * @param message The message to send
+   */
+  protected void broadcast(final OutboundMessage message) {
+    for (ClientHandler client : this.clientRegistry.clients()) {
+      client.send(message);
+    }
+  }
+
+  /**
+   * Sends the full list of lobbies and their clients to a client. Called when the client opens the
+   * menu for the first time or has missed a delta.
+   *
+   * @param client The client to send the list to
+   */
+  protected void sendLobbyList(final ClientHandler client) {
+    this.sendSnapshot(
+        client,
+        this.lobbyList,
+        this::listLobbyEntries,
+        ServerProtocol.UPDATE_FULL_LIST,
+        ServerProtocol.UPDATE_FULL_LIST_DELTA,
+        ServerProtocol.SUBSEPARATOR.toString());
+  }
 
-    synchronized (this.clientHandlers) {
-      for (ClientHandler client : this.clientHandlers) {
-        client.updateGameList();
+  /**
+   * Sends the full list of clients to a client.
+   *
+   * @param client The client to send the list to
+   */
+  protected void sendClientList(final ClientHandler client) {
+    this.sendSnapshot(
+        client,
+        this.clientList,
+        this::listClientEntries,
+        ServerProtocol.UPDATE_CLIENT_LIST,
+        ServerProtocol.UPDATE_CLIENT_LIST_DELTA,
+        " ");
+  }
+
+  /**
+   * Sends the full list of games to a client.
+   *
+   * @param client The client to send the list to
+   */
+  protected void sendGameList(final ClientHandler client) {
+    this.sendSnapshot(
+        client,
+        this.gameList,
+        this::getHighscoresCopy,
+        ServerProtocol.UPDATE_GAME_LIST,
+        ServerProtocol.UPDATE_GAME_LIST_DELTA,
+        ServerProtocol.SUBSEPARATOR.toString());
+  }
+
+  /**
+   * Brings a list up to date and broadcasts the changes, tagged with the new sequence number. The
+   * list is locked while it is broadcast, so that the clients receive the deltas in order.
+   *
+   * @param list The list as last sent to the clients
+   * @param current Produces the current entries of the list
+   * @param deltaCommand The command of the delta
+   */
+  private void publish(
+      final VersionedList list,
+      final Supplier<List<String>> current,
+      final ServerProtocol deltaCommand) {
+    synchronized (list) {
+      ListDelta delta = list.update(current.get());
+      if (delta != null) {
+        this.broadcast(
+            new OutboundMessage(
+                deltaCommand.toString()
+                    + ServerProtocol.SEPARATOR
+                    + list.getSeq()
+                    + ServerProtocol.SEPARATOR
+                    + String.join(ServerProtocol.SUBSEPARATOR.toString(), delta.getAdded())
+                    + ServerProtocol.SEPARATOR
+                    + String.join(ServerProtocol.SUBSEPARATOR.toString(), delta.getRemoved())));
       }
     }
   }
 
   /**
-   * Produces an array of all lobbies and their clients. Called from {@link ClientHandler} each time
-   * the client list is updated. This list is then sent to the client.
+   * Sends a list with its sequence number to a client. Pending changes are published first, so
+   * that the snapshot is followed by the deltas of the next sequence numbers.
+   *
+   * @param client The client to send the list to
+   * @param list The list as last sent to the clients
+   * @param current Produces the current entries of the list
+   * @param snapshotCommand The command of the full list
+   * @param deltaCommand The command of the delta
+   * @param separator The separator of the entries in the full list
+   */
+  private void sendSnapshot(
+      final ClientHandler client,
+      final VersionedList list,
+      final Supplier<List<String>> current,
+      final ServerProtocol snapshotCommand,
+      final ServerProtocol deltaCommand,
+      final String separator) {
+    synchronized (list) {
+      this.publish(list, current, deltaCommand);
+      client.send(
+          new OutboundMessage(
+              snapshotCommand.toString()
+                  + ServerProtocol.SEPARATOR
+                  + list.getSeq()
+                  + ServerProtocol.SEPARATOR
+                  + String.join(separator, list.getEntries())));
+    }
+  }
+
+  /**
+   * Lists the lobbies as entries of the lobby list: the name of the lobby followed by the usernames
+   * of its clients, separated by spaces.
+   *
+   * @return the entries of the lobby list
+   */
+  private List<String> listLobbyEntries() {
+    List<String> entries = new ArrayList<>();
+    for (String[] lobbyInfo : this.listLobbies()) {
+      entries.add(String.join(" ", lobbyInfo));
+    }
+    return entries;
+  }
+
+  /**
+   * Lists the usernames of all clients.
+   *
+   * @return the entries of the client list
+   */
+  private List<String> listClientEntries() {
+    return this.clientRegistry.clients().stream()
+        .map(client -> String.valueOf(client.getUsername()))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Copies the highscores, so that they can be compared with the list last sent to the clients.
+   *
+   * @return the entries of the game list
+   */
+  private List<String> getHighscoresCopy() {
+    synchronized (this.highscores) {
+      return new ArrayList<>(this.highscores);
+    }
+  }
+
+  /**
+   * Produces an array of all lobbies and their clients. Called from {@link #listLobbyEntries()}
+   * each time the lobby list is updated.
    *
    * @return An array of all lobbies and their clients
    */
@@ -328,6 +599,44 @@ public class Server implements Runnable {
     return lobbyInfos.toArray(new String[0][0]);
   }
 
+  /**
+   * Returns the scheduler which ticks the running games. Used by {@link Lobby}.
+   *
+   * @return the tick scheduler of the server
+   */
+  protected TickScheduler getTickScheduler() {
+    return this.tickScheduler;
+  }
+
+  /**
+   * Whether the games started from now on are simulated in the deterministic mode.
+   *
+   * @return true if the games are deterministic
+   */
+  public boolean isDeterministic() {
+    return this.deterministic;
+  }
+
+  /**
+   * Sets whether the games started from now on are simulated in the deterministic mode. Set by
+   * {@link ServerMain} before the server is started.
+   *
+   * @param isDeterministic whether the games are deterministic
+   */
+  public void setDeterministic(final boolean isDeterministic) {
+    this.deterministic = isDeterministic;
+  }
+
+  /**
+   * Sets when the games of the lobbies created from now on broadcast their state. Set by {@link
+   * ServerMain} before the server is started.
+   *
+   * @param policy The policy, or null for {@link BroadcastPolicy#defaultPolicy(boolean)}
+   */
+  public void setBroadcastPolicy(final BroadcastPolicy policy) {
+    this.broadcastPolicy = policy;
+  }
+
   /**
    * Called from {@link ClientHandler} for the logger and from {@link Lobby} to update the lists.
    *
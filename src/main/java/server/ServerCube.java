@@ -1,10 +1,8 @@
 package server;
 
 import game.Block;
-import game.Colours;
 import game.Cube;
 import game.Vector2D;
-import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 
 /**
@@ -12,17 +10,20 @@ import javafx.scene.paint.Color;
  * Used to handle the logic of the cube on the server side.
  */
 public class ServerCube extends Cube {
+  /** The game in which the cube is played. Informed of deaths, jumps and completed levels. */
+  private final ServerGame game;
   /** Lock so that the nextLevel method is only called once.*/
   private boolean nextLevelCalled = false;
 
   /**
    * Creates a cube.
    *
-   * @param gameRoot The pane which the cube will be moving on
    * @param spawnPosition The position which the cube will spawn at
+   * @param theGame The game in which the cube is played
    */
-  public ServerCube(final Pane gameRoot, final Vector2D spawnPosition) {
-    super(gameRoot, spawnPosition);
+  public ServerCube(final Vector2D spawnPosition, final ServerGame theGame) {
+    super(spawnPosition);
+    this.game = theGame;
   }
 
   /**
@@ -34,10 +35,9 @@ public class ServerCube extends Cube {
    */
   @Override
   public void checkCoinCollision(final Block block) {
-    if (block.getColour().equals(Colours.TRANSPARENT.getHex())
-            && !nextLevelCalled) {
+    if (block.isCoin() && !nextLevelCalled) {
       nextLevelCalled = true;
-      ServerGame.getInstance().nextLevel();
+      this.game.nextLevel();
     }
   }
 
@@ -49,9 +49,7 @@ public class ServerCube extends Cube {
    */
   @Override
   public void die() {
-    if (ServerGame.getInstance() != null)  {
-      ServerGame.getInstance().die();
-    }
+    this.game.die();
   }
 
   /**
@@ -66,7 +64,7 @@ public class ServerCube extends Cube {
     super.jump(colour);
 
     if (jumping) {
-      ServerGame.getInstance().jumpUpdate();
+      this.game.jumpUpdate();
     }
   }
 }
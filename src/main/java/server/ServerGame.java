@@ -3,19 +3,89 @@ package server;
 import game.Block;
 import game.GameConstants;
 import game.Level;
+import game.LevelLayout;
+import game.LevelRegistry;
+import game.NeighbourBuffer;
 import game.Vector2D;
-import java.io.File;
-import java.io.IOException;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import javafx.scene.layout.Pane;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import javafx.scene.paint.Color;
+import util.WireCodec;
+
+/**
+ * The class which handles the logic of the game for the server. The game is ticked by the {@link
+ * TickScheduler} of the server.
+ *
+ * <p>In the deterministic mode, the state of the cube is rounded to {@link game.FixedPoint} values
+ * after every tick. A client simulating the same ticks from the same state reaches exactly the same
+ * state, so by default the position is only broadcast when an input or an event of the game
+ * changes it. Otherwise, the {@link BroadcastPolicy} of the lobby decides when the position is
+ * broadcast besides these changes. The updates carry the tick at which the cube was in the sent
+ * state.
+ *
+ * <p>The clients predict the effect of their inputs and tag them with the tick at which they have
+ * applied them. An input is applied at that tick if it arrives in time, and acknowledged to its
+ * sender with the tick at which it has been applied, so that the client can reconcile its
+ * prediction with the state broadcast afterwards.
+ */
+public class ServerGame {
+  /** The maximum number of ticks by which an input can be scheduled ahead of the game. */
+  private static final int MAX_INPUT_LEAD = TickScheduler.TICK_RATE / 2;
 
-/** The class which handles the logic of the game for the server. */
-public class ServerGame implements Runnable {
-  // Pane that contains the game
-  private Pane gameRoot;
+  /**
+   * A space bar input or another command of a player, e.g. a cheat, applied at the beginning of a
+   * tick.
+   */
+  private static final class PlayerInput {
+    /** The player who pressed the space bar or sent the command. */
+    private final ClientHandler client;
+    /** The command, run at the beginning of the next tick, null for a space bar input. */
+    private final Consumer<ServerGame> command;
+    /** The sequence number given by the client, 0 if the input wasn't predicted. */
+    private final int sequence;
+    /** The order in which the inputs have been received, breaks ties between inputs. */
+    private final long order;
+    /** The tick at which the input is applied. */
+    private long tick;
+
+    /**
+     * Creates an input.
+     *
+     * @param theClient The player who pressed the space bar
+     * @param theSequence The sequence number given by the client
+     * @param theOrder The order in which the input has been received
+     * @param theTick The tick at which the client has applied the input
+     */
+    private PlayerInput(
+        final ClientHandler theClient,
+        final int theSequence,
+        final long theOrder,
+        final long theTick) {
+      this.client = theClient;
+      this.command = null;
+      this.sequence = theSequence;
+      this.order = theOrder;
+      this.tick = theTick;
+    }
+
+    /**
+     * Creates a command.
+     *
+     * @param theClient The player who sent the command
+     * @param theCommand The command
+     * @param theOrder The order in which the command has been received
+     */
+    private PlayerInput(
+        final ClientHandler theClient, final Consumer<ServerGame> theCommand, final long theOrder) {
+      this.client = theClient;
+      this.command = theCommand;
+      this.sequence = 0;
+      this.order = theOrder;
+      this.tick = 0;
+    }
+  }
 
   // Used to store the grid of blocks, null if no block is present
   private Level level;
@@ -31,11 +101,35 @@ public class ServerGame implements Runnable {
               Color.valueOf("#fccf78")));
 
   private final HashMap<ClientHandler, Color> clientColours;
+  /** The inputs and commands received since the last tick, in the order of their arrival. */
+  private final Queue<PlayerInput> receivedInputs = new ConcurrentLinkedQueue<>();
+  /** The inputs waiting for their tick, only accessed by the thread running the game. */
+  private final PriorityQueue<PlayerInput> scheduledInputs =
+      new PriorityQueue<>(
+          Comparator.<PlayerInput>comparingLong(input -> input.tick)
+              .thenComparingLong(input -> input.order));
+  /** The number of inputs received, see {@link PlayerInput#order}. */
+  private final AtomicLong numInputs = new AtomicLong();
 
   // In-Game variables
   private ServerCube player;
-  /** Whether the cube is currently moving */
-  public boolean cubeMoving = false;
+  /** The blocks around the cube, refilled every tick. */
+  private final NeighbourBuffer neighbourBuffer = new NeighbourBuffer();
+  /** Whether the state of the cube is rounded after every tick and only broadcast on changes. */
+  private final boolean deterministic;
+  /** The number of ticks simulated since the game has started. */
+  private long tick = 0;
+  /**
+   * Whether the state of the cube has been changed by something else than the simulation, so that
+   * it is broadcast at the end of the tick.
+   */
+  private boolean stateChanged = false;
+  /** Decides when the state is broadcast besides the changes made by inputs and events. */
+  private final BroadcastPolicy broadcastPolicy;
+  /** The tick at which the state has last been broadcast. */
+  private long lastBroadcastTick = 0;
+  /** The number of times the state has been broadcast. */
+  private long numBroadcasts = 0;
 
   private int lives = GameConstants.DEFAULT_LIVES.getValue();
 
@@ -46,11 +140,8 @@ public class ServerGame implements Runnable {
   private int levelsCompleted = 0;
   private String levelDifficulty;
 
-  /** The instance of the game */
-  public static ServerGame instance;
-
   /** The boolean used for the game loop */
-  protected boolean running = true;
+  protected volatile boolean running = true;
   private boolean hasCheated = false;
   private boolean immortal = false;
   private int previousLives = 3;
@@ -63,29 +154,104 @@ public class ServerGame implements Runnable {
    * @param lobby The lobby in which the game is played
    */
   public ServerGame(HashMap<ClientHandler, Color> clientsAndColours, String gameId, Lobby lobby) {
+    this(clientsAndColours, gameId, lobby, false);
+  }
+
+  /**
+   * Creates a new game, optionally in the deterministic mode.
+   *
+   * @param clientsAndColours The clients and their respective colours
+   * @param gameId The number of the game
+   * @param lobby The lobby in which the game is played
+   * @param deterministic Whether the game is simulated in the deterministic mode
+   */
+  public ServerGame(
+      HashMap<ClientHandler, Color> clientsAndColours,
+      String gameId,
+      Lobby lobby,
+      boolean deterministic) {
+    this(
+        clientsAndColours,
+        gameId,
+        lobby,
+        deterministic,
+        BroadcastPolicy.defaultPolicy(deterministic));
+  }
+
+  /**
+   * Creates a new game broadcasting its state with the given policy.
+   *
+   * @param clientsAndColours The clients and their respective colours
+   * @param gameId The number of the game
+   * @param lobby The lobby in which the game is played
+   * @param deterministic Whether the game is simulated in the deterministic mode
+   * @param broadcastPolicy Decides when the state is broadcast besides the changes
+   */
+  public ServerGame(
+      HashMap<ClientHandler, Color> clientsAndColours,
+      String gameId,
+      Lobby lobby,
+      boolean deterministic,
+      BroadcastPolicy broadcastPolicy) {
     this.clientColours = clientsAndColours;
     this.clients = new ArrayList<>(clientColours.keySet());
     this.gameId = gameId;
+    this.deterministic = deterministic;
+    this.broadcastPolicy = broadcastPolicy;
 
     this.lobby = lobby;
-    instance = this;
   }
 
   /** Sends a position update to all clients, so they can move the cube to its current position. */
   protected void cubePositionUpdate() {
+    double positionX = player.getPosition().getX();
+    double positionY = player.getPosition().getY();
+    double velocityX = player.getVelocity().getX();
+    double velocityY = player.getVelocity().getY();
+    int accelerationAngle = player.accelerationAngle;
+    long updateTick = this.tick;
+    boolean moving = player.moving;
+    OutboundMessage message =
+        new OutboundMessage(
+            () ->
+                ServerProtocol.POSITION_UPDATE
+                    + ServerProtocol.SEPARATOR.toString()
+                    + positionX
+                    + ServerProtocol.SEPARATOR
+                    + positionY
+                    + ServerProtocol.SEPARATOR
+                    + velocityX
+                    + ServerProtocol.SEPARATOR
+                    + velocityY
+                    + ServerProtocol.SEPARATOR
+                    + accelerationAngle
+                    + ServerProtocol.SEPARATOR
+                    + updateTick
+                    + ServerProtocol.SEPARATOR
+                    + moving,
+            () ->
+                WireCodec.encodePositionUpdate(
+                    positionX,
+                    positionY,
+                    velocityX,
+                    velocityY,
+                    accelerationAngle,
+                    updateTick,
+                    moving));
     for (ClientHandler client : clients) {
-      client.positionUpdate(
-          ServerProtocol.POSITION_UPDATE
-              + ServerProtocol.SEPARATOR.toString()
-              + player.getPosition().getX()
-              + ServerProtocol.SEPARATOR
-              + player.getPosition().getY()
-              + ServerProtocol.SEPARATOR
-              + player.getVelocity().getX()
-              + ServerProtocol.SEPARATOR
-              + player.getVelocity().getY()
-              + ServerProtocol.SEPARATOR
-              + player.accelerationAngle);
+      client.positionUpdate(message);
+    }
+    this.lastBroadcastTick = this.tick;
+    this.numBroadcasts++;
+  }
+
+  /**
+   * Writes the updates queued for the clients during the tick. Called by the {@link TickScheduler}
+   * after every wake-up, so that the updates of a tick leave in a single write per client.
+   */
+  protected void flushUpdates() {
+    for (ClientHandler client : clients) {
+      client.flush();
     }
   }
 
@@ -94,13 +260,15 @@ public class ServerGame implements Runnable {
    * That way, they can update their UI accordingly.
    */
   private void gameStatusUpdate() {
+    OutboundMessage message =
+        new OutboundMessage(
+            ServerProtocol.GAME_STATUS_UPDATE
+                + ServerProtocol.SEPARATOR.toString()
+                + this.lives
+                + ServerProtocol.SEPARATOR
+                + this.levelsCompleted);
     for (ClientHandler client : clients) {
-      client.gameStatusUpdate(
-          ServerProtocol.GAME_STATUS_UPDATE
-              + ServerProtocol.SEPARATOR.toString()
-              + this.lives
-              + ServerProtocol.SEPARATOR
-              + this.levelsCompleted);
+      client.gameStatusUpdate(message);
     }
   }
 
@@ -109,32 +277,81 @@ public class ServerGame implements Runnable {
    * their movement.
    */
   protected void jumpUpdate() {
+    double rotationPointX = player.rotationPoint.getX();
+    double rotationPointY = player.rotationPoint.getY();
+    long jumpTick = this.tick;
+    OutboundMessage message =
+        new OutboundMessage(
+            () ->
+                ServerProtocol.JUMP_UPDATE
+                    + ServerProtocol.SEPARATOR.toString()
+                    + rotationPointX
+                    + ServerProtocol.SEPARATOR
+                    + rotationPointY
+                    + ServerProtocol.SEPARATOR
+                    + jumpTick,
+            () -> WireCodec.encodeJumpUpdate(rotationPointX, rotationPointY, jumpTick));
     for (ClientHandler client : clients) {
-      client.jumpUpdate(
-          ServerProtocol.JUMP_UPDATE
-              + ServerProtocol.SEPARATOR.toString()
-              + player.rotationPoint.getX()
-              + ServerProtocol.SEPARATOR
-              + player.rotationPoint.getY());
+      client.jumpUpdate(message);
     }
-    cubePositionUpdate();
+    this.stateChanged = true;
   }
 
   /**
-   * Called every frame and handles the game logic
+   * Called every tick by the {@link TickScheduler} and handles the game logic. The inputs received
+   * for this tick are applied first. The state is broadcast at the end of the tick if it has been
+   * changed by an input or an event, or if the {@link BroadcastPolicy} asks for it.
    *
-   * @param dt The time since the last frame
+   * @param dt The duration of a tick
    */
   public void update(double dt) {
+    PlayerInput input;
+    while ((input = this.receivedInputs.poll()) != null) {
+      if (input.command != null) {
+        // Commands aren't predicted by the clients, so they are run as soon as they are received
+        input.command.accept(this);
+        continue;
+      }
+      // Inputs can't be applied in the past, nor be held back for long
+      input.tick = Math.max(this.tick, Math.min(input.tick, this.tick + MAX_INPUT_LEAD));
+      this.scheduledInputs.add(input);
+    }
+    while (!this.scheduledInputs.isEmpty() && this.scheduledInputs.peek().tick <= this.tick) {
+      this.applyInput(this.scheduledInputs.poll());
+    }
     // Potentially add pause update if wished
-    this.gameUpdate(dt);
+    boolean motionChanged = this.gameUpdate(dt);
+    this.tick++;
+
+    if (this.stateChanged
+        || this.broadcastPolicy.shouldBroadcast(
+            this.player, motionChanged, this.tick - this.lastBroadcastTick)) {
+      this.stateChanged = false;
+      this.cubePositionUpdate();
+    }
   }
 
-  /** The update method that is called if the game is not paused. Handles the game logic. */
-  private void gameUpdate(double dt) {
+  /**
+   * The update method that is called if the game is not paused. Handles the game logic.
+   *
+   * @return whether the motion of the cube has changed abruptly: a velocity component has changed
+   *     its sign or stopped (a collision, a fall) or the acceleration has been rotated
+   */
+  private boolean gameUpdate(double dt) {
+    int previousAngle = player.accelerationAngle;
+    double previousSignX = Math.signum(player.getVelocity().getX());
+    double previousSignY = Math.signum(player.getVelocity().getY());
+
     Block[] neighbourBlocks =
-        this.level.getNeighbourBlocks(player.getPosition().getX(), player.getPosition().getY());
+        this.level.getNeighbourBlocks(
+            player.getPosition().getX(), player.getPosition().getY(), this.neighbourBuffer);
     player.move(neighbourBlocks, dt);
+    if (this.deterministic) {
+      player.quantise();
+    }
+    return player.accelerationAngle != previousAngle
+        || Math.signum(player.getVelocity().getX()) != previousSignX
+        || Math.signum(player.getVelocity().getY()) != previousSignY;
   }
 
   /**
@@ -142,27 +359,21 @@ public class ServerGame implements Runnable {
    * player Creates the stars Will create the coin to finish the game
    */
   public void initialiseContent() {
-    // Create empty pane to which the game will virtually be added
-    gameRoot = new Pane();
-
-    try {
-      this.load_level();
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
+    this.load_level();
   }
 
   /** Loads the level */
-  private void load_level() throws IOException {
+  private void load_level() {
     // Inform clients of the game status
     this.gameStatusUpdate();
 
-    // Get a random level path
-    String levelPath = this.getRandomLevelPath();
-    this.sendLevelPath(levelPath);
+    // Get a random level, parsed when the registry was loaded
+    LevelLayout layout = this.getRandomLevel();
+    this.levelDifficulty = layout.getDifficulty();
+    this.sendLevelPath(layout.getPath());
 
     // Load the level
-    this.level = new Level(levelPath, 50, gameRoot);
+    this.level = new Level(layout, 50);
     this.level.setBlockColours(new ArrayList<>(clientColours.values()));
     this.sendCriticalBlocks();
 
@@ -177,71 +388,98 @@ public class ServerGame implements Runnable {
    * @param position The initial position of the player
    * */
    public void load_player(Vector2D position) {
-    player = new ServerCube(gameRoot, position); // creates the player
+    player = new ServerCube(position, this); // creates the player
     player.start_position = position.copy();
     player.resetMovement();
 
-    this.cubeMoving = false;
+    this.stateChanged = true;
   }
 
-  /** Runnable run method. This method is called when the thread is started. */
-  @Override
-  public void run() {
-    this.initialiseContent();
-
-    long previousTime = System.nanoTime();
-    long clientUpdateTime = System.nanoTime();
-    long now;
-    int FPS = 120;
-    double dt;
-
-    while (this.running) {
-      now = System.nanoTime();
-      dt = (now - previousTime) * 1e-9; // Time since last frame in seconds
-
-      if (dt > (double) 1 / FPS) {
-        dt = dt > 1 ? 1 : dt; // Limit skipped frames
+  /**
+   * A client has pressed the space bar and predicted its effect at the given tick. The input is
+   * handled at the beginning of that tick, or of the next one if it has already passed, on the
+   * thread running the game.
+   *
+   * @param client - The client that pressed the space bar.
+   * @param sequence - The sequence number of the input, acknowledged once it has been applied
+   *     unless it is 0.
+   * @param inputTick - The tick at which the client has applied the input, 0 to apply it at the
+   *     next tick.
+   */
+  public void spaceBarPressed(ClientHandler client, int sequence, long inputTick) {
+    this.receivedInputs.add(
+        new PlayerInput(client, sequence, this.numInputs.getAndIncrement(), inputTick));
+  }
 
-        previousTime = now;
+  /**
+   * A client has sent a command to the game which isn't a space bar input, e.g. a cheat or the end
+   * of the game. The command changes the level, the cube or the lives, which the tick reads, so it
+   * is queued with the inputs and run at the beginning of the next tick, on the thread running the
+   * game.
+   *
+   * @param client - The client that sent the command.
+   * @param command - The command, e.g. {@link #skipLevel()}.
+   */
+  public void commandReceived(ClientHandler client, Consumer<ServerGame> command) {
+    this.receivedInputs.add(new PlayerInput(client, command, this.numInputs.getAndIncrement()));
+  }
 
-        update(dt);
-      }
+  /**
+   * Handles a space bar input with the rules of {@link game.Cube#applyInput(Color)}: the cube is
+   * started if it isn't moving yet, otherwise it jumps. Predicted inputs are acknowledged.
+   *
+   * @param input - The input to apply.
+   */
+  private void applyInput(PlayerInput input) {
+    boolean wasMoving = this.player.moving;
+    this.player.applyInput(clientColours.get(input.client));
+    if (!wasMoving) {
+      this.stateChanged = true;
+    }
 
-      if ((now - clientUpdateTime) * 1e-9 > (double) 1 / 10) {
-        clientUpdateTime = System.nanoTime();
-        cubePositionUpdate();
-      }
+    if (input.sequence > 0) {
+      input.client.inputAck(
+          new OutboundMessage(
+              ServerProtocol.INPUT_ACK
+                  + ServerProtocol.SEPARATOR.toString()
+                  + input.sequence
+                  + ServerProtocol.SEPARATOR
+                  + input.tick));
     }
-    this.endGame();
   }
 
   /**
-   * A client has pressed the space bar. If the cube isn't moving yet, its speed is initialised.
-   * Otherwise, a jump request is handled.
+   * Whether the game is simulated in the deterministic mode.
    *
-   * @param client - The client that pressed the space bar.
+   * @return true if the state is rounded after every tick and only broadcast on changes
    */
-  public void spaceBarPressed(ClientHandler client) {
-    if (!cubeMoving) {
-      this.player.initialiseSpeed();
-      this.cubeMoving = true;
-    } else {
-      this.player.jump(clientColours.get(client));
-    }
+  public boolean isDeterministic() {
+    return this.deterministic;
   }
 
   /**
-   * @return The name of the game instance concerned.
+   * Returns the number of ticks simulated since the game has started.
+   *
+   * @return the current tick
    */
-  protected String getGameId() {
-    return gameId;
+  public long getTick() {
+    return this.tick;
   }
 
   /**
-   * @return The game instance.
+   * Returns the number of times the state has been broadcast since the game has started.
+   *
+   * @return the number of position updates sent to every client
    */
-  public static ServerGame getInstance() {
-    return instance;
+  public long getNumBroadcasts() {
+    return this.numBroadcasts;
+  }
+
+  /**
+   * @return The name of the game instance concerned.
+   */
+  protected String getGameId() {
+    return gameId;
   }
 
   /**
@@ -250,7 +488,7 @@ public class ServerGame implements Runnable {
    */
   public void die() {
     this.player.resetMovement();
-    this.cubeMoving = false;
+    this.stateChanged = true;
 
     if (!immortal) {
       this.lives--;
@@ -283,8 +521,9 @@ public class ServerGame implements Runnable {
           .append(block.getColour().toString());
     }
 
+    OutboundMessage message = new OutboundMessage(command.toString());
     for (ClientHandler client : clients) {
-      client.sendCriticalBlocks(command.toString());
+      client.sendCriticalBlocks(message);
     }
   }
 
@@ -294,8 +533,11 @@ public class ServerGame implements Runnable {
    * @param levelPath The path of the level.
    */
   private void sendLevelPath(String levelPath) {
+    OutboundMessage message =
+        new OutboundMessage(
+            ServerProtocol.LOAD_LEVEL.toString() + ServerProtocol.SEPARATOR + levelPath);
     for (ClientHandler client : clients) {
-      client.sendLevelPath(levelPath);
+      client.sendLevelPath(message);
     }
   }
 
@@ -307,6 +549,15 @@ public class ServerGame implements Runnable {
     this.lobby.endGame();
   }
 
+  /**
+   * Returns the cube of the players.
+   *
+   * @return The cube, null before the first level has been loaded.
+   */
+  protected ServerCube getPlayer() {
+    return this.player;
+  }
+
   /**
    * @return The ClientHandlers of the players in the game.
    */
@@ -315,75 +566,22 @@ public class ServerGame implements Runnable {
   }
 
   /**
-   * Gets a random level path from the level's folder.
+   * Picks a random level from the {@link LevelRegistry}. The difficulty is drawn according to
+   * {@link #difficultyProbabilities}.
    *
-   * @return The path to the level.
+   * @return The layout of the level.
    */
-  private String getRandomLevelPath() throws IOException {
-    boolean found = false;
-    String path = null;
-    File dir;
-    String difficulty;
-
-    while (!found) {
-      int random = (int) (Math.random() * 100);
-      ArrayList<String> levelNames = new ArrayList<>();
-
-      if (random < difficultyProbabilities[0]) {
-        difficulty = "easy/";
-      } else if (random < difficultyProbabilities[1]) {
-        difficulty = "medium/";
-      } else {
-        difficulty = "hard/";
-      }
-
-      //////////////////////////////////////////////////////////
-      String dirPath = "levels/" + difficulty;
-      File jarFile = new File(getClass().getProtectionDomain().getCodeSource().getLocation().getPath());
-
-      // If the server is being run from a jar file
-      if(jarFile.getPath().endsWith(".jar")) {
-        final JarFile jar = new JarFile(jarFile);
-        final Enumeration<JarEntry> entries = jar.entries();
-
-        while(entries.hasMoreElements()) {
-          final String name = entries.nextElement().getName();
-          if (name.startsWith(dirPath) && !name.equals(dirPath)) {
-            levelNames.add(name);
-          }
-        }
-        jar.close();
-
-        if (levelNames.size() > 0) {
-          int randomFile = (int) (Math.random() * levelNames.size());
-          path = "/" + levelNames.get(randomFile);
-          this.levelDifficulty = difficulty.replace("/", "");
-          found = true;
-        }
-      }
-
-      else { // If the server is being run from an IDE
-        dir =
-            new File(
-                Objects.requireNonNull(getClass().getResource("/" + dirPath)).getPath());
-
-        File[] files = dir.listFiles((dir1, name) -> name.endsWith(".csv"));
-
-        if (files != null) {
-          if (files.length > 0) {
-            int randomFile = (int) (Math.random() * files.length);
-            path = "/levels/" + dir.getName() + "/" + files[randomFile].getName();
-            this.levelDifficulty = dir.getName();
-            found = true;
-          }
-        }
-      }
-
-      /////////////////////////////////////////////////
+  private LevelLayout getRandomLevel() {
+    int random = (int) (Math.random() * 100);
+    int difficulty = 0;
+    int threshold = difficultyProbabilities[0];
+    while (random >= threshold && difficulty < difficultyProbabilities.length - 1) {
+      difficulty++;
+      threshold += difficultyProbabilities[difficulty];
     }
     // Use this to test a specific level
-    //return "/levels/easy/level_13.csv";
-    return path;
+    //return LevelRegistry.getDefault().getLayout("/levels/easy/level_13.csv");
+    return LevelRegistry.getDefault().randomLevel(difficulty);
   }
 
   /**
@@ -406,11 +604,7 @@ public class ServerGame implements Runnable {
       this.lives = Integer.MAX_VALUE;
     }
 
-    try {
-      this.load_level();
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
+    this.load_level();
 
     if (!hasCheated) {
       this.levelsCompleted++;
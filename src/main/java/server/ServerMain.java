@@ -12,9 +12,15 @@ public class ServerMain {
 
   /**
    * Starts the server. If the port number is invalid,
-   * the default port 9090 is used.
+   * the default port 9090 is used. An optional second argument selects
+   * the {@link ServerMode} (<code>threaded</code>, <code>nio</code> or <code>virtual</code>).
+   * The following arguments are options: with <code>deterministic</code>, the games are
+   * simulated in the deterministic mode, see {@link ServerGame}, and
+   * <code>broadcast=policy</code> selects the {@link BroadcastPolicy} of the lobbies, see
+   * {@link BroadcastPolicy#fromName(String)}.
    *
-   * @param args The port number of the server.
+   * @param args The port number of the server, optionally its mode
+   *             and options.
    */
   public static void main(final String[] args) {
     Logger logger = LogManager.getLogger(ServerMain.class);
@@ -33,7 +39,34 @@ public class ServerMain {
       logger.warn("Port number must be an integer. Using default port 9090.");
     }
 
-    Server server = new Server(PORT);
+    ServerMode mode = ServerMode.THREADED;
+    if (args.length > 1) {
+      mode = ServerMode.fromName(args[1]);
+      if (mode == null) {
+        mode = ServerMode.THREADED;
+        logger.warn("Unknown server mode " + args[1] + ". Using mode " + mode + ".");
+      }
+    }
+    logger.info("Starting server in mode " + mode);
+
+    Server server = new Server(PORT, mode);
+    for (int i = 2; i < args.length; i++) {
+      if (args[i].equalsIgnoreCase("deterministic")) {
+        server.setDeterministic(true);
+        logger.info("Games are simulated in the deterministic mode.");
+      } else if (args[i].toLowerCase().startsWith("broadcast=")) {
+        String name = args[i].substring("broadcast=".length());
+        BroadcastPolicy policy = BroadcastPolicy.fromName(name);
+        if (policy == null) {
+          logger.warn("Unknown broadcast policy " + name + ". Using the default policy.");
+        } else {
+          server.setBroadcastPolicy(policy);
+          logger.info("Lobbies broadcast the games with the policy " + name + ".");
+        }
+      } else {
+        logger.warn("Unknown option " + args[i] + ".");
+      }
+    }
     Thread serverThread = new Thread(server);
     serverThread.start();
 
@@ -0,0 +1,37 @@
+package server;
+
+/**
+ * The ways in which the server can handle its client connections. The mode is chosen upon startup
+ * in {@link ServerMain}.
+ */
+public enum ServerMode {
+  /**
+   * Every client is served by two dedicated threads blocking on its socket, one reading and one
+   * writing. See {@link SocketConnection}.
+   */
+  THREADED,
+  /**
+   * Clients are served by a small pool of NIO event loops. See {@link NioEventLoop}.
+   */
+  NIO,
+  /**
+   * The reader and the writer of every client and the heartbeat service run on virtual threads,
+   * so that idle clients only cost a few kilobytes of heap instead of platform thread stacks.
+   */
+  VIRTUAL;
+
+  /**
+   * Returns the mode with the given name (case-insensitive).
+   *
+   * @param name The name of the mode
+   * @return The mode, or null if no mode has this name
+   */
+  public static ServerMode fromName(final String name) {
+    for (ServerMode mode : values()) {
+      if (mode.name().equalsIgnoreCase(name)) {
+        return mode;
+      }
+    }
+    return null;
+  }
+}
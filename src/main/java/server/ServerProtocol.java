@@ -1,6 +1,7 @@
 package server;
 
 import client.ClientProtocol;
+import util.ProtocolNames;
 
 /**
  * Server protocol for Hues in the Air
@@ -65,24 +66,39 @@ public enum ServerProtocol {
   /** A client has successfully exited the lobby. */
   LOBBY_EXITED(1),
 
-  /** Send a list of all lobbies and the clients they contain. */
-  UPDATE_FULL_LIST(1),
+  /** Send a list of all lobbies and the clients they contain,
+   *  preceded by its sequence number. */
+  UPDATE_FULL_LIST(2),
 
-  /** Send a list of all clients in the server.
-   * Used for the client list in the menu. */
-  UPDATE_CLIENT_LIST(1),
+  /** The changes to the list of lobbies since the previous sequence number:
+   *  the sequence number, the added and the removed lobbies. */
+  UPDATE_FULL_LIST_DELTA(3),
+
+  /** Send a list of all clients in the server, preceded by its sequence
+   * number. Used for the client list in the menu. */
+  UPDATE_CLIENT_LIST(2),
+
+  /** The changes to the list of clients since the previous sequence number:
+   *  the sequence number, the added and the removed clients. */
+  UPDATE_CLIENT_LIST_DELTA(3),
 
   /** Sends the list of clients in the lobby. */
   UPDATE_LOBBY_LIST(1),
 
-  /** Sends the list of games that have been played or are being played. */
-  UPDATE_GAME_LIST(1),
+  /** Sends the list of games that have been played or are being played,
+   *  preceded by its sequence number. */
+  UPDATE_GAME_LIST(2),
+
+  /** The changes to the list of games since the previous sequence number:
+   *  the sequence number, the added and the removed games. */
+  UPDATE_GAME_LIST_DELTA(3),
 
   /** Sets the ready status of a client to true or false. */
   TOGGLE_READY_STATUS(1),
 
-  /** Informs the client that the game is starting. */
-  START_GAME(0),
+  /** Informs the client that the game is starting,
+   *  and whether it is simulated in the deterministic mode. */
+  START_GAME(1),
 
   /** Signal regularly sent from server to client to confirm connection. */
   SERVER_PING(0),
@@ -94,21 +110,44 @@ public enum ServerProtocol {
   GAME_ENDED(0),
   /** Sends the critical blocks and their colour to the client. */
   SEND_CRITICAL_BLOCKS(1),
-  /** Updates the position of the cube for the client. */
-  POSITION_UPDATE(5),
+  /** Updates the position of the cube for the client,
+   *  followed by the tick of the game at which the cube was there
+   *  and whether the cube has been started. */
+  POSITION_UPDATE(7),
   /** The cube has just jumped. Informs the client
-   *  of the coordinates of the rotation point. */
-  JUMP_UPDATE(2),
+   *  of the coordinates of the rotation point and of the tick of the jump. */
+  JUMP_UPDATE(3),
+  /** An input of the client has been applied: its sequence number
+   *  and the tick at which it has been applied. */
+  INPUT_ACK(2),
   /**
    * Informs the players in the game of how many lives they have left
    * and how many levels they have completed.
    */
   GAME_STATUS_UPDATE(2),
   /** Tells the client to load new level. */
-  LOAD_LEVEL(1);
+  LOAD_LEVEL(1),
+  /** The last line sent as text: every following message is a {@link util.WireCodec} frame. */
+  BINARY_PROTOCOL_ENABLED(0),
+  /** The client speaks another version of the protocol, followed by the
+   *  {@link #VERSION} of the server. The connection is closed afterwards. */
+  PROTOCOL_MISMATCH(1);
+
+  /**
+   * The version of the protocol, announced by the client with
+   * {@link ClientProtocol#PROTOCOL_VERSION}. It is raised whenever the
+   * arguments of a command change, as the client and the server must agree
+   * on every command: version 1 is the protocol before the version was
+   * announced, version 2 added the ticks and the sequence numbers to the
+   * game updates, the inputs and the lists.
+   */
+  public static final int VERSION = 2;
   /** The number of arguments. */
   private final int numArgs;
 
+  /** The commands by their name. */
+  private static final ProtocolNames<ServerProtocol> NAMES = new ProtocolNames<>(values());
+
   /** Initialises the command.
    * @param numbArgs the number of arguments
    */
@@ -126,4 +165,14 @@ public enum ServerProtocol {
   public int getNumArgs() {
     return this.numArgs;
   }
+
+  /**
+   * Returns the command with the given name, e.g. the first field of a received line.
+   *
+   * @param name The name of the command
+   * @return the command, or null if there is no command with this name
+   */
+  public static ServerProtocol fromName(final CharSequence name) {
+    return NAMES.lookup(name);
+  }
 }
@@ -0,0 +1,114 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.Executor;
+
+/**
+ * A blocking connection to a client, read by the client's dedicated thread, see {@link #run()}.
+ * The queued messages are written by a second task, so that a full socket buffer only blocks that
+ * task. Each client therefore takes two threads of the server's executor: two platform threads in
+ * {@link ServerMode#THREADED}, two virtual threads in {@link ServerMode#VIRTUAL}. The writer thread
+ * mostly waits for flushes; {@link ServerMode#NIO} avoids both threads.
+ */
+public class SocketConnection implements ClientConnection, Runnable {
+
+  /** The client's socket. */
+  private final Socket socket;
+  /** Input stream. */
+  private final BufferedReader in;
+  /** Output stream, only written by the writer task. */
+  private final OutputStream out;
+  /** The messages waiting to be written. */
+  private final OutboundQueue outbound = new OutboundQueue();
+  /** Runs the task writing the queued messages. */
+  private final Executor writerExecutor;
+  /** The handler to which received lines are dispatched. */
+  private ClientHandler handler;
+
+  /**
+   * Wraps the socket of a client. The writer is started once the handler has been set.
+   *
+   * @param clientSocket The client's socket
+   * @param theWriterExecutor Runs the task writing the queued messages
+   * @throws IOException If getInputStream() or getOutputStream() fails
+   */
+  public SocketConnection(final Socket clientSocket, final Executor theWriterExecutor)
+      throws IOException {
+    this.socket = clientSocket;
+    this.in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+    this.out = clientSocket.getOutputStream();
+    this.writerExecutor = theWriterExecutor;
+  }
+
+  /**
+   * Sets the handler to which received lines are dispatched and starts the writer. Must be called
+   * before the reader is started.
+   *
+   * @param clientHandler The handler of this connection
+   */
+  protected void setHandler(final ClientHandler clientHandler) {
+    this.handler = clientHandler;
+    this.writerExecutor.execute(this::writeQueued);
+  }
+
+  /**
+   * The reader task, run by the client's dedicated thread: dispatches every received line to the
+   * handler until the stream ends, the connection fails or the client is removed.
+   */
+  @Override
+  public void run() {
+    try {
+      String line;
+      while (this.handler.isRunning() && (line = this.in.readLine()) != null) {
+        this.handler.receive(line);
+      }
+    } catch (IOException e) {
+      // The connection is lost, or has been closed because the client was removed
+    }
+    this.handler.connectionLost();
+  }
+
+  @Override
+  public boolean queue(final OutboundMessage message, final boolean replaceable) {
+    return this.outbound.offer(message, replaceable);
+  }
+
+  @Override
+  public void flush() {
+    this.outbound.flush();
+  }
+
+  @Override
+  public void enableBinaryFraming() {
+    this.outbound.enableBinary();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.outbound.close();
+    this.socket.close();
+    this.in.close();
+  }
+
+  /**
+   * The writer task: writes the flushed messages until the connection is closed. If a write fails,
+   * the connection is lost and the client is removed.
+   */
+  private void writeQueued() {
+    try {
+      byte[] bytes;
+      while ((bytes = this.outbound.take()) != null) {
+        this.out.write(bytes);
+        this.out.flush();
+      }
+    } catch (IOException e) {
+      this.handler.connectionLost();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
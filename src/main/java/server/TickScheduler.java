@@ -0,0 +1,185 @@
+package server;
+
+import game.GameConstants;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Drives all running {@link ServerGame}s at a fixed simulation rate from a small pool of worker
+ * threads. Each game is woken up once per tick period; if it has fallen behind (e.g. because the
+ * workers were busy), it runs up to {@link #MAX_CATCH_UP_TICKS} ticks in a row, as long as its tick
+ * budget isn't spent, and then skips the rest of its backlog instead of spiralling further behind.
+ */
+public class TickScheduler {
+
+  /** The number of simulation ticks per second. */
+  public static final int TICK_RATE = GameConstants.TICK_RATE.getValue();
+  /** The duration of a tick in seconds, passed to {@link ServerGame#update(double)}. */
+  public static final double TICK_DURATION = 1.0 / TICK_RATE;
+
+  /** The duration of a tick in nanoseconds. */
+  private static final long TICK_NANOS = 1_000_000_000L / TICK_RATE;
+  /**
+   * The time a game may spend on one wake-up. No further catch-up tick is started once it is spent,
+   * so that a slow game doesn't hold up the other games of its worker.
+   */
+  private static final long TICK_BUDGET_NANOS = TICK_NANOS / 2;
+  /** The maximum number of ticks run in one wake-up to catch up with the clock. */
+  private static final int MAX_CATCH_UP_TICKS = 5;
+  /** The minimum time between two reports of the skipped ticks and overruns of a game. */
+  private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  /** The workers running the ticks. */
+  private final ScheduledExecutorService workers;
+  /** The scheduled ticks of every running game. */
+  private final Map<ServerGame, ScheduledFuture<?>> games = new ConcurrentHashMap<>();
+
+  private final Logger LOGGER = LogManager.getLogger(getClass());
+
+  /**
+   * Creates a scheduler with the given number of worker threads.
+   *
+   * @param numWorkers The number of worker threads
+   */
+  public TickScheduler(final int numWorkers) {
+    AtomicInteger workerCount = new AtomicInteger();
+    this.workers =
+        Executors.newScheduledThreadPool(
+            numWorkers,
+            task -> {
+              Thread worker = new Thread(task, "game-tick-" + workerCount.getAndIncrement());
+              worker.setDaemon(true);
+              return worker;
+            });
+  }
+
+  /**
+   * Initialises a game and starts ticking it. Called from {@link Lobby} when a game starts.
+   *
+   * @param game The game to run
+   */
+  public void schedule(final ServerGame game) {
+    game.initialiseContent();
+    ScheduledFuture<?> future =
+        this.workers.scheduleAtFixedRate(
+            new GameTicker(game), TICK_NANOS, TICK_NANOS, TimeUnit.NANOSECONDS);
+    this.games.put(game, future);
+    LOGGER.info("Game " + game.getGameId() + " scheduled. " + this.games.size() + " games running.");
+  }
+
+  /**
+   * Stops ticking a game. Called from {@link Lobby} when a game has ended.
+   *
+   * @param game The game to stop
+   */
+  public void cancel(final ServerGame game) {
+    ScheduledFuture<?> future = this.games.remove(game);
+    if (future != null) {
+      future.cancel(false);
+    }
+  }
+
+  /**
+   * Returns the number of games currently being ticked.
+   *
+   * @return the number of running games
+   */
+  public int getNumGames() {
+    return this.games.size();
+  }
+
+  /** Stops all games. Called when the server shuts down. */
+  public void shutdown() {
+    this.workers.shutdownNow();
+    this.games.clear();
+  }
+
+  /** Runs the ticks of a single game and keeps track of its clock. */
+  private class GameTicker implements Runnable {
+    /** The game which is ticked. */
+    private final ServerGame game;
+    /** The time of the previous wake-up. */
+    private long previousTime = System.nanoTime();
+    /** Time which has passed but hasn't been simulated yet. */
+    private long accumulator = 0;
+    /** The ticks skipped since the last report. */
+    private long skippedTicks = 0;
+    /** The wake-ups which have exceeded the tick budget since the last report. */
+    private int overruns = 0;
+    /** The time of the last report, see {@link #REPORT_INTERVAL_NANOS}. */
+    private long lastReport = this.previousTime;
+
+    /**
+     * Creates the ticker of a game.
+     *
+     * @param theGame The game to tick
+     */
+    GameTicker(final ServerGame theGame) {
+      this.game = theGame;
+    }
+
+    /** Runs the ticks which are due. */
+    @Override
+    public void run() {
+      long now = System.nanoTime();
+      this.accumulator += now - this.previousTime;
+      this.previousTime = now;
+
+      try {
+        int ticks = 0;
+        while (this.accumulator >= TICK_NANOS
+            && ticks < MAX_CATCH_UP_TICKS
+            && game.running
+            && (ticks == 0 || System.nanoTime() - now < TICK_BUDGET_NANOS)) {
+          this.game.update(TICK_DURATION);
+          this.accumulator -= TICK_NANOS;
+          ticks++;
+        }
+
+        if (this.accumulator >= TICK_NANOS) {
+          this.skippedTicks += this.accumulator / TICK_NANOS;
+          this.accumulator %= TICK_NANOS;
+        }
+        this.game.flushUpdates();
+      } catch (RuntimeException e) {
+        // An exception would silently stop the periodic task, so it is logged and swallowed
+        LOGGER.error("Game " + this.game.getGameId() + " failed to tick.", e);
+      }
+
+      long end = System.nanoTime();
+      if (end - now > TICK_BUDGET_NANOS) {
+        this.overruns++;
+      }
+      this.report(end);
+    }
+
+    /**
+     * Logs the ticks skipped and the overruns of the game, at most once per {@link
+     * #REPORT_INTERVAL_NANOS}, as a game which has fallen behind would otherwise log on every
+     * wake-up.
+     *
+     * @param now The current time
+     */
+    private void report(final long now) {
+      if ((this.skippedTicks == 0 && this.overruns == 0)
+          || now - this.lastReport < REPORT_INTERVAL_NANOS) {
+        return;
+      }
+      LOGGER.warn(
+          "Game " + this.game.getGameId() + " skipped " + this.skippedTicks
+              + " ticks to catch up and exceeded its tick budget " + this.overruns
+              + " times in the last " + TimeUnit.NANOSECONDS.toSeconds(now - this.lastReport)
+              + " s.");
+      this.skippedTicks = 0;
+      this.overruns = 0;
+      this.lastReport = now;
+    }
+  }
+}
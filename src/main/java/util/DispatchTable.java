@@ -0,0 +1,251 @@
+package util;
+
+import java.lang.reflect.Array;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Runs the handler of the command of a received line. The handlers, the number of arguments and
+ * the checks of the arguments of the commands are kept in arrays indexed by the ordinal of the
+ * command, computed once per protocol, so a line is dispatched with a name lookup and an array
+ * access. A malformed line is rejected before its handler runs, without throwing an exception.
+ *
+ * <p>The table counts the commands it has dispatched, as well as the lines it has rejected, and
+ * lists the counts in {@link #toString()}, which the server and the client log when they shut
+ * down. The handlers are registered before the table is shared; dispatching is then thread-safe as far as
+ * the handlers are.
+ *
+ * @param <E> The enum of the protocol
+ * @param <C> The receiver of the commands, e.g. the connection
+ */
+public final class DispatchTable<E extends Enum<E>, C> {
+
+  /** Runs a command. */
+  @FunctionalInterface
+  public interface Handler<C> {
+    /**
+     * Runs a command whose number of arguments and arguments have been checked.
+     *
+     * @param context The receiver of the command
+     * @param command The command followed by its arguments
+     */
+    void handle(C context, ProtocolTokenizer command);
+  }
+
+  /** What has become of a dispatched line. */
+  public enum Outcome {
+    /** The handler of the command has run. */
+    HANDLED,
+    /** The first field isn't a command of the protocol. */
+    UNKNOWN,
+    /** The number of arguments or one of the arguments is wrong. */
+    MALFORMED,
+    /** The command has no handler on this side of the connection. */
+    UNHANDLED
+  }
+
+  /** The commands of the protocol, indexed by ordinal. */
+  private final E[] commands;
+  /** Looks up the commands by their name, returning null for an unknown name. */
+  private final Function<CharSequence, E> lookup;
+  /** The number of arguments of every command. */
+  private final int[] numArgs;
+  /** The handler of every command, null if it has none. */
+  private final Handler<C>[] handlers;
+  /** The check of the arguments of every command, null if any argument is valid. */
+  private final Predicate<ProtocolTokenizer>[] arguments;
+  /** The number of lines handled for every command. */
+  private final AtomicLongArray counts;
+  /** The number of lines whose command is unknown. */
+  private final AtomicLong unknown = new AtomicLong();
+  /** The number of lines of a known command which have been rejected. */
+  private final AtomicLong malformed = new AtomicLong();
+  /** The number of lines of a command without handler. */
+  private final AtomicLong unhandled = new AtomicLong();
+
+  /**
+   * Creates a table without handlers.
+   *
+   * @param commands The commands of the protocol, i.e. {@code values()}
+   * @param theLookup Looks up a command by its name, e.g. {@code ClientProtocol::fromName}
+   * @param numArgsOf The number of arguments of a command, e.g. {@code
+   *     ClientProtocol::getNumArgs}
+   */
+  public DispatchTable(
+      final E[] commands,
+      final Function<CharSequence, E> theLookup,
+      final ToIntFunction<E> numArgsOf) {
+    this.commands = commands.clone();
+    this.lookup = theLookup;
+    this.numArgs = new int[commands.length];
+    for (E command : commands) {
+      this.numArgs[command.ordinal()] = numArgsOf.applyAsInt(command);
+    }
+    this.handlers = newArray(Handler.class, commands.length);
+    this.arguments = newArray(Predicate.class, commands.length);
+    this.counts = new AtomicLongArray(commands.length);
+  }
+
+  /**
+   * Creates an array of a generic type, which Java can't create directly.
+   *
+   * @param rawType The class of the elements, without type arguments
+   * @param length The length of the array
+   * @param <T> The type of the elements, with type arguments
+   * @return an array of nulls
+   */
+  // The raw class is only used to create the array, and the array only ever holds instances of
+  // T, which differs from the raw type by its erased type arguments alone
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static <T> T[] newArray(final Class rawType, final int length) {
+    return (T[]) Array.newInstance(rawType, length);
+  }
+
+  /**
+   * Registers the handler of a command whose arguments are all valid, e.g. strings.
+   *
+   * @param command The command
+   * @param handler The handler
+   * @return this table
+   */
+  public DispatchTable<E, C> on(final E command, final Handler<C> handler) {
+    return this.on(command, null, handler);
+  }
+
+  /**
+   * Registers the handler of a command and the check of its arguments, e.g. that a field is a
+   * number. The handler only runs if the check passes.
+   *
+   * @param command The command
+   * @param check The check of the command, whose number of arguments is right, or null
+   * @param handler The handler
+   * @return this table
+   */
+  public DispatchTable<E, C> on(
+      final E command, final Predicate<ProtocolTokenizer> check, final Handler<C> handler) {
+    if (this.handlers[command.ordinal()] != null) {
+      throw new IllegalStateException(command + " already has a handler");
+    }
+    this.handlers[command.ordinal()] = handler;
+    this.arguments[command.ordinal()] = check;
+    return this;
+  }
+
+  /**
+   * Runs the handler of a line.
+   *
+   * @param context The receiver of the command
+   * @param command The tokenized line
+   * @return whether the handler has run, or why not
+   */
+  public Outcome dispatch(final C context, final ProtocolTokenizer command) {
+    E protocol = this.lookup.apply(command.field(0));
+    if (protocol == null) {
+      this.unknown.incrementAndGet();
+      return Outcome.UNKNOWN;
+    }
+    int index = protocol.ordinal();
+    Handler<C> handler = this.handlers[index];
+    if (handler == null) {
+      this.unhandled.incrementAndGet();
+      return Outcome.UNHANDLED;
+    }
+    Predicate<ProtocolTokenizer> check = this.arguments[index];
+    if (command.size() - 1 != this.numArgs[index] || check != null && !check.test(command)) {
+      this.malformed.incrementAndGet();
+      return Outcome.MALFORMED;
+    }
+    this.counts.incrementAndGet(index);
+    handler.handle(context, command);
+    return Outcome.HANDLED;
+  }
+
+  /**
+   * Returns whether a command has a handler.
+   *
+   * @param command The command
+   * @return true if lines of the command are handled
+   */
+  public boolean handles(final E command) {
+    return this.handlers[command.ordinal()] != null;
+  }
+
+  /**
+   * Returns the number of lines handled for a command.
+   *
+   * @param command The command
+   * @return the number of lines
+   */
+  public long getCount(final E command) {
+    return this.counts.get(command.ordinal());
+  }
+
+  /**
+   * Returns the number of lines whose command is unknown.
+   *
+   * @return the number of lines
+   */
+  public long getUnknownCount() {
+    return this.unknown.get();
+  }
+
+  /**
+   * Returns the number of lines rejected for their arguments.
+   *
+   * @return the number of lines
+   */
+  public long getMalformedCount() {
+    return this.malformed.get();
+  }
+
+  /**
+   * Returns the number of lines of a command which isn't handled on this side.
+   *
+   * @return the number of lines
+   */
+  public long getUnhandledCount() {
+    return this.unhandled.get();
+  }
+
+  /**
+   * Lists the number of lines handled for every command.
+   *
+   * @return the counts, indexed by the ordinal of the commands
+   */
+  public long[] getCounts() {
+    long[] snapshot = new long[this.counts.length()];
+    for (int i = 0; i < snapshot.length; i++) {
+      snapshot[i] = this.counts.get(i);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Lists the commands which have been handled with their counts, followed by the rejected lines.
+   *
+   * @return e.g. {@code handled [SET_USERNAME 1, SPACE_BAR_PRESSED 2], unknown 0, malformed 1,
+   *     unhandled 0}
+   */
+  @Override
+  public String toString() {
+    StringJoiner handled = new StringJoiner(", ", "[", "]");
+    for (E command : this.commands) {
+      long count = this.counts.get(command.ordinal());
+      if (count > 0) {
+        handled.add(command + " " + count);
+      }
+    }
+    return "handled "
+        + handled
+        + ", unknown "
+        + this.getUnknownCount()
+        + ", malformed "
+        + this.getMalformedCount()
+        + ", unhandled "
+        + this.getUnhandledCount();
+  }
+}
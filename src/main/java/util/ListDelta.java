@@ -0,0 +1,135 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between two versions of a list of entries, such as the list of clients sent to
+ * the menu. The lists are treated as multisets: a changed entry is removed in its old form and
+ * added in its new form.
+ */
+public final class ListDelta {
+
+  /** The entries which have been added. */
+  private final List<String> added;
+  /** The entries which have been removed, one occurrence each. */
+  private final List<String> removed;
+
+  /**
+   * Creates a delta.
+   *
+   * @param addedEntries The entries which have been added
+   * @param removedEntries The entries which have been removed
+   */
+  public ListDelta(final List<String> addedEntries, final List<String> removedEntries) {
+    this.added = Collections.unmodifiableList(addedEntries);
+    this.removed = Collections.unmodifiableList(removedEntries);
+  }
+
+  /**
+   * Computes the delta which turns one version of a list into another.
+   *
+   * @param previous The previous version
+   * @param current The current version
+   * @return the delta, empty if both versions contain the same entries
+   */
+  public static ListDelta between(final List<String> previous, final List<String> current) {
+    Map<String, Integer> counts = new HashMap<>();
+    for (String entry : previous) {
+      counts.merge(entry, 1, Integer::sum);
+    }
+
+    List<String> addedEntries = new ArrayList<>();
+    for (String entry : current) {
+      Integer count = counts.get(entry);
+      if (count == null) {
+        addedEntries.add(entry);
+      } else if (count == 1) {
+        counts.remove(entry);
+      } else {
+        counts.put(entry, count - 1);
+      }
+    }
+
+    List<String> removedEntries = new ArrayList<>();
+    for (String entry : previous) {
+      Integer count = counts.get(entry);
+      if (count != null) {
+        removedEntries.add(entry);
+        if (count == 1) {
+          counts.remove(entry);
+        } else {
+          counts.put(entry, count - 1);
+        }
+      }
+    }
+    return new ListDelta(addedEntries, removedEntries);
+  }
+
+  /**
+   * Decodes a delta from the two arguments of a delta command.
+   *
+   * @param addedEntries The added entries, joined by the separator
+   * @param removedEntries The removed entries, joined by the separator
+   * @param separator The separator of the entries (a literal, not a regex)
+   * @return the delta
+   */
+  public static ListDelta decode(
+      final String addedEntries, final String removedEntries, final String separator) {
+    return new ListDelta(split(addedEntries, separator), split(removedEntries, separator));
+  }
+
+  /**
+   * Whether both versions contain the same entries.
+   *
+   * @return true if nothing has been added or removed
+   */
+  public boolean isEmpty() {
+    return this.added.isEmpty() && this.removed.isEmpty();
+  }
+
+  /**
+   * Returns the entries which have been added.
+   *
+   * @return the added entries
+   */
+  public List<String> getAdded() {
+    return this.added;
+  }
+
+  /**
+   * Returns the entries which have been removed.
+   *
+   * @return the removed entries
+   */
+  public List<String> getRemoved() {
+    return this.removed;
+  }
+
+  /**
+   * Applies the delta to a list. The added entries are appended, see {@link VersionedList} for the
+   * lists whose order matters.
+   *
+   * @param entries The list, modified in place
+   */
+  public void applyTo(final List<String> entries) {
+    for (String entry : this.removed) {
+      entries.remove(entry);
+    }
+    entries.addAll(this.added);
+  }
+
+  /**
+   * Splits a list of entries, an empty string being an empty list.
+   *
+   * @param joined The joined entries
+   * @param separator The separator of the entries (a literal, not a regex)
+   * @return the entries
+   */
+  public static List<String> split(final String joined, final String separator) {
+    return ProtocolTokenizer.split(joined, separator);
+  }
+}
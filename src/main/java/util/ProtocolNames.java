@@ -0,0 +1,71 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Looks up the commands of a protocol by their name, e.g. the first field of a {@link
+ * ProtocolTokenizer}. The table is computed once per protocol. Unlike {@link Enum#valueOf(Class,
+ * String)}, the name may be any character sequence and an unknown name gives null instead of an
+ * exception, which is costly to throw for every malformed line.
+ *
+ * @param <E> The enum of the protocol
+ */
+public final class ProtocolNames<E extends Enum<E>> {
+
+  /** The commands, at the slot of the hash of their name or after it. */
+  private final E[] table;
+  /** Maps a hash to a slot. */
+  private final int mask;
+
+  /**
+   * Computes the table of a protocol.
+   *
+   * @param commands The commands of the protocol, i.e. {@code values()}
+   */
+  public ProtocolNames(final E[] commands) {
+    int capacity = Integer.highestOneBit(Math.max(commands.length, 1) * 4);
+    // Copied to create an array of the enum type
+    this.table = Arrays.copyOf(commands, capacity);
+    Arrays.fill(this.table, null);
+    this.mask = capacity - 1;
+    for (E command : commands) {
+      int slot = hash(command.name()) & this.mask;
+      while (this.table[slot] != null) {
+        slot = (slot + 1) & this.mask;
+      }
+      this.table[slot] = command;
+    }
+  }
+
+  /**
+   * Returns the command with the given name.
+   *
+   * @param name The name of the command, case-sensitive
+   * @return the command, or null if the protocol has no command with this name
+   */
+  public E lookup(final CharSequence name) {
+    int slot = hash(name) & this.mask;
+    E command;
+    while ((command = this.table[slot]) != null) {
+      if (command.name().contentEquals(name)) {
+        return command;
+      }
+      slot = (slot + 1) & this.mask;
+    }
+    return null;
+  }
+
+  /**
+   * Hashes a name as {@link String#hashCode()}, spreading the high bits.
+   *
+   * @param name The name
+   * @return the hash
+   */
+  private static int hash(final CharSequence name) {
+    int hash = 0;
+    for (int i = 0; i < name.length(); i++) {
+      hash = 31 * hash + name.charAt(i);
+    }
+    return hash ^ (hash >>> 16);
+  }
+}
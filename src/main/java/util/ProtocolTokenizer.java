@@ -0,0 +1,400 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits the commands of the protocol into their fields without regular expressions. The line is
+ * scanned for the separator once and only the bounds of the fields are kept, so the fields can be
+ * compared, looked up and parsed without creating a string for each of them. A tokenizer is reused
+ * for every line read by a connection and isn't thread-safe.
+ *
+ * <p>Unlike {@link String#split(String)}, the separator is a literal (the separators of the
+ * protocol contain the regex metacharacter {@code .}) and empty trailing fields are kept.
+ */
+public final class ProtocolTokenizer {
+
+  /** The separator of the fields. */
+  private final String separator;
+  /** The line which has been tokenized. */
+  private String line = "";
+  /** The index at which every field begins. */
+  private int[] starts = new int[8];
+  /** The index after the end of every field. */
+  private int[] ends = new int[8];
+  /** The number of fields of the line. */
+  private int size = 0;
+  /** The views returned by {@link #field(int)}, reused for every line. */
+  private Field[] fields = new Field[0];
+
+  /**
+   * Creates a tokenizer.
+   *
+   * @param theSeparator The separator of the fields, e.g. {@code ServerProtocol.SEPARATOR}
+   */
+  public ProtocolTokenizer(final String theSeparator) {
+    if (theSeparator.isEmpty()) {
+      throw new IllegalArgumentException("The separator must not be empty");
+    }
+    this.separator = theSeparator;
+  }
+
+  /**
+   * Splits a line into its fields, replacing the fields of the previous line.
+   *
+   * @param theLine The line, without line terminator
+   * @return the number of fields, at least one
+   */
+  public int tokenize(final String theLine) {
+    this.line = theLine;
+    this.size = 0;
+    int start = 0;
+    int end;
+    while ((end = theLine.indexOf(this.separator, start)) >= 0) {
+      this.add(start, end);
+      start = end + this.separator.length();
+    }
+    this.add(start, theLine.length());
+    return this.size;
+  }
+
+  /**
+   * Appends the bounds of a field.
+   *
+   * @param start The index at which the field begins
+   * @param end The index after the end of the field
+   */
+  private void add(final int start, final int end) {
+    if (this.size == this.starts.length) {
+      this.starts = Arrays.copyOf(this.starts, 2 * this.size);
+      this.ends = Arrays.copyOf(this.ends, 2 * this.size);
+    }
+    this.starts[this.size] = start;
+    this.ends[this.size] = end;
+    this.size++;
+  }
+
+  /**
+   * Returns the number of fields of the line.
+   *
+   * @return the number of fields
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Returns the line which has been tokenized.
+   *
+   * @return the line
+   */
+  public String getLine() {
+    return this.line;
+  }
+
+  /**
+   * Returns a view of a field, valid until the next line is tokenized.
+   *
+   * @param index The index of the field
+   * @return the field, without copying its characters
+   */
+  public CharSequence field(final int index) {
+    this.checkIndex(index);
+    if (this.fields.length < this.size) {
+      int oldLength = this.fields.length;
+      this.fields = Arrays.copyOf(this.fields, Math.max(this.size, this.starts.length));
+      for (int i = oldLength; i < this.fields.length; i++) {
+        this.fields[i] = new Field(i);
+      }
+    }
+    return this.fields[index];
+  }
+
+  /**
+   * Returns a field as a string.
+   *
+   * @param index The index of the field
+   * @return the field
+   */
+  public String get(final int index) {
+    this.checkIndex(index);
+    return this.line.substring(this.starts[index], this.ends[index]);
+  }
+
+  /**
+   * Returns the fields as strings, as {@link String#split(String, int)} with a negative limit.
+   *
+   * @return the fields
+   */
+  public String[] toArray() {
+    String[] array = new String[this.size];
+    for (int i = 0; i < this.size; i++) {
+      array[i] = this.get(i);
+    }
+    return array;
+  }
+
+  /**
+   * Returns the fields as a list of strings, an empty line being an empty list.
+   *
+   * @return the fields
+   */
+  public List<String> toList() {
+    List<String> list = new ArrayList<>(this.size);
+    if (this.line.isEmpty()) {
+      return list;
+    }
+    for (int i = 0; i < this.size; i++) {
+      list.add(this.get(i));
+    }
+    return list;
+  }
+
+  /**
+   * Parses a field as an int without creating a string.
+   *
+   * @param index The index of the field
+   * @return the value
+   * @throws NumberFormatException If the field isn't an int
+   */
+  public int parseInt(final int index) {
+    this.checkIndex(index);
+    return Integer.parseInt(this.line, this.starts[index], this.ends[index], 10);
+  }
+
+  /**
+   * Parses a field as a long without creating a string.
+   *
+   * @param index The index of the field
+   * @return the value
+   * @throws NumberFormatException If the field isn't a long
+   */
+  public long parseLong(final int index) {
+    this.checkIndex(index);
+    return Long.parseLong(this.line, this.starts[index], this.ends[index], 10);
+  }
+
+  /**
+   * Parses a field as a double.
+   *
+   * @param index The index of the field
+   * @return the value
+   * @throws NumberFormatException If the field isn't a double
+   */
+  public double parseDouble(final int index) {
+    // The JDK has no parser for a range of characters
+    return Double.parseDouble(this.get(index));
+  }
+
+  /**
+   * Parses a field as a boolean, as {@link Boolean#parseBoolean(String)}.
+   *
+   * @param index The index of the field
+   * @return true if the field is "true", ignoring the case
+   */
+  public boolean parseBoolean(final int index) {
+    this.checkIndex(index);
+    int length = this.ends[index] - this.starts[index];
+    return length == 4 && this.line.regionMatches(true, this.starts[index], "true", 0, 4);
+  }
+
+  /**
+   * Whether a field can be parsed by {@link #parseInt(int)}, checked without an exception.
+   *
+   * @param index The index of the field
+   * @return true if the field is a decimal int
+   */
+  public boolean isInt(final int index) {
+    return this.isInteger(index, Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Whether a field can be parsed by {@link #parseLong(int)}, checked without an exception.
+   *
+   * @param index The index of the field
+   * @return true if the field is a decimal long
+   */
+  public boolean isLong(final int index) {
+    return this.isInteger(index, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Whether a field is a decimal integer within bounds, scanned as {@link Long#parseLong(String)}
+   * does: the value is accumulated negatively, as the negative range is the larger one.
+   *
+   * @param index The index of the field
+   * @param min The smallest value allowed
+   * @param max The largest value allowed
+   * @return true if the field is an integer between min and max
+   */
+  private boolean isInteger(final int index, final long min, final long max) {
+    this.checkIndex(index);
+    int i = this.starts[index];
+    int end = this.ends[index];
+    if (i < end && (this.line.charAt(i) == '-' || this.line.charAt(i) == '+')) {
+      i++;
+    }
+    if (i == end) {
+      return false;
+    }
+    long limit = this.line.charAt(this.starts[index]) == '-' ? min : -max;
+    long multiplyLimit = limit / 10;
+    long result = 0;
+    for (; i < end; i++) {
+      int digit = Character.digit(this.line.charAt(i), 10);
+      if (digit < 0 || result < multiplyLimit) {
+        return false;
+      }
+      result *= 10;
+      if (result < limit + digit) {
+        return false;
+      }
+      result -= digit;
+    }
+    return true;
+  }
+
+  /**
+   * Whether a field can be parsed by {@link #parseDouble(int)}, checked without an exception. Only
+   * the decimal notation written by {@link Double#toString(double)} and the like is accepted: an
+   * optional sign, digits with an optional point and an optional exponent, or NaN and Infinity.
+   *
+   * @param index The index of the field
+   * @return true if the field is a decimal double
+   */
+  public boolean isDouble(final int index) {
+    this.checkIndex(index);
+    int i = this.starts[index];
+    int end = this.ends[index];
+    if (i < end && (this.line.charAt(i) == '-' || this.line.charAt(i) == '+')) {
+      i++;
+    }
+    int length = end - i;
+    if (this.line.startsWith("NaN", i) || this.line.startsWith("Infinity", i)) {
+      return length == (this.line.charAt(i) == 'N' ? 3 : 8);
+    }
+    int digits = 0;
+    while (i < end && isDigit(this.line.charAt(i))) {
+      i++;
+      digits++;
+    }
+    if (i < end && this.line.charAt(i) == '.') {
+      i++;
+      while (i < end && isDigit(this.line.charAt(i))) {
+        i++;
+        digits++;
+      }
+    }
+    if (digits == 0) {
+      return false;
+    }
+    if (i < end && (this.line.charAt(i) == 'e' || this.line.charAt(i) == 'E')) {
+      i++;
+      if (i < end && (this.line.charAt(i) == '-' || this.line.charAt(i) == '+')) {
+        i++;
+      }
+      int exponentDigits = 0;
+      while (i < end && isDigit(this.line.charAt(i))) {
+        i++;
+        exponentDigits++;
+      }
+      if (exponentDigits == 0) {
+        return false;
+      }
+    }
+    return i == end;
+  }
+
+  /**
+   * Whether a character is an ASCII digit.
+   *
+   * @param c The character
+   * @return true for 0 to 9
+   */
+  private static boolean isDigit(final char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Checks that a field exists.
+   *
+   * @param index The index of the field
+   */
+  private void checkIndex(final int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException("Field " + index + " of " + this.size);
+    }
+  }
+
+  /**
+   * Counts the fields of a line without tokenizing it.
+   *
+   * @param line The line
+   * @param separator The separator of the fields
+   * @return the number of fields, at least one
+   */
+  public static int count(final String line, final String separator) {
+    int count = 1;
+    int index = 0;
+    while ((index = line.indexOf(separator, index)) >= 0) {
+      count++;
+      index += separator.length();
+    }
+    return count;
+  }
+
+  /**
+   * Splits a list of entries, an empty string being an empty list.
+   *
+   * @param joined The joined entries
+   * @param separator The separator of the entries
+   * @return the entries
+   */
+  public static List<String> split(final String joined, final String separator) {
+    ProtocolTokenizer tokenizer = new ProtocolTokenizer(separator);
+    tokenizer.tokenize(joined);
+    return tokenizer.toList();
+  }
+
+  /** A field of the line, read through the bounds kept by the tokenizer. */
+  private final class Field implements CharSequence {
+    /** The index of the field. */
+    private final int index;
+
+    /**
+     * Creates the view of a field.
+     *
+     * @param theIndex The index of the field
+     */
+    private Field(final int theIndex) {
+      this.index = theIndex;
+    }
+
+    @Override
+    public int length() {
+      return ends[this.index] - starts[this.index];
+    }
+
+    @Override
+    public char charAt(final int i) {
+      if (i < 0 || i >= this.length()) {
+        throw new IndexOutOfBoundsException(i);
+      }
+      return line.charAt(starts[this.index] + i);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+      if (start < 0 || end > this.length() || start > end) {
+        throw new IndexOutOfBoundsException(start + ", " + end);
+      }
+      return line.substring(starts[this.index] + start, starts[this.index] + end);
+    }
+
+    @Override
+    public String toString() {
+      return line.substring(starts[this.index], ends[this.index]);
+    }
+  }
+}
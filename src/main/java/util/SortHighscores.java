@@ -1,26 +1,38 @@
 package util;
 
 import java.util.Arrays;
+import java.util.Comparator;
 
 /** Sorts an array of highscores in descending order. */
 public class SortHighscores {
+    /**
+     * Orders the highscores by the integer values of the second word in each element, in descending
+     * order. Equal scores are ordered by their text, so that the order is total and every list of
+     * the same highscores is sorted the same way, see {@link VersionedList}.
+     */
+    public static final Comparator<String> ORDER =
+            Comparator.comparingInt(SortHighscores::score).reversed()
+                    .thenComparing(Comparator.naturalOrder());
+
     /**
      * Sorts an array in descending order depending on the integer values of the second word in each
      * element.
      * @param highscores the highscores to sort
      */
     public static void sort(String[] highscores) {
-        Arrays.sort(
-                highscores,
-                (str1, str2) -> {
-                    try {
-                        int int1 = Integer.parseInt(str1.split(" ")[1]);
-                        int int2 = Integer.parseInt(str2.split(" ")[1]);
+        Arrays.sort(highscores, ORDER);
+    }
 
-                        return Integer.compare(int2, int1);
-                    } catch (Exception e) {
-                        return 0;
-                    }
-                });
+    /**
+     * Reads the score of a highscore.
+     * @param highscore the name of the game followed by its score
+     * @return the score, 0 if it is missing or isn't a number
+     */
+    private static int score(String highscore) {
+        try {
+            return Integer.parseInt(highscore.split(" ")[1]);
+        } catch (RuntimeException e) {
+            return 0;
+        }
     }
 }
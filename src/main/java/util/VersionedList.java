@@ -0,0 +1,134 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A list of entries with a sequence number which is incremented on every change. The server
+ * publishes the changes as {@link ListDelta}s tagged with the new sequence number, the client
+ * applies them to its copy and notices a lost or out of order delta by the gap in the numbers.
+ *
+ * <p>The deltas don't carry the positions of the entries: an added entry is appended. A list whose
+ * order matters, e.g. the highscores, is given an order in which both sides keep it sorted, so that
+ * a list brought up to date by deltas is in the same order as a snapshot.
+ */
+public class VersionedList {
+
+  /** The current entries. */
+  private final List<String> entries = new ArrayList<>();
+  /** The sequence number of the current entries, -1 if the list hasn't been received yet. */
+  private int seq;
+  /** The order of the entries, a total one, or null to keep them in the order they were added. */
+  private final Comparator<String> order;
+
+  /** Creates an empty list at sequence number 0. Used by the server. */
+  public VersionedList() {
+    this(0);
+  }
+
+  /**
+   * Creates an empty list.
+   *
+   * @param initialSeq The initial sequence number, -1 for a list which still needs a snapshot
+   */
+  public VersionedList(final int initialSeq) {
+    this(initialSeq, null);
+  }
+
+  /**
+   * Creates an empty list which is kept sorted. The server and the clients must use the same order.
+   *
+   * @param initialSeq The initial sequence number, -1 for a list which still needs a snapshot
+   * @param theOrder The order of the entries, which must be total, or null for none
+   */
+  public VersionedList(final int initialSeq, final Comparator<String> theOrder) {
+    this.seq = initialSeq;
+    this.order = theOrder;
+  }
+
+  /**
+   * Returns the sequence number of the current entries.
+   *
+   * @return the sequence number
+   */
+  public synchronized int getSeq() {
+    return this.seq;
+  }
+
+  /**
+   * Returns a copy of the current entries.
+   *
+   * @return the entries
+   */
+  public synchronized List<String> getEntries() {
+    return new ArrayList<>(this.entries);
+  }
+
+  /**
+   * Whether a snapshot has been received. Always true on the server.
+   *
+   * @return true if the sequence number is valid
+   */
+  public synchronized boolean isSynced() {
+    return this.seq >= 0;
+  }
+
+  /**
+   * Replaces the entries by their current version. Used by the server.
+   *
+   * @param current The current entries
+   * @return the delta, tagged with the incremented sequence number, or null if nothing has changed
+   */
+  public synchronized ListDelta update(final List<String> current) {
+    ListDelta delta = ListDelta.between(this.entries, current);
+    if (delta.isEmpty()) {
+      return null;
+    }
+    this.entries.clear();
+    this.entries.addAll(current);
+    this.sort();
+    this.seq++;
+    return delta;
+  }
+
+  /**
+   * Replaces the entries by a snapshot received from the server.
+   *
+   * @param snapshotSeq The sequence number of the snapshot
+   * @param snapshot The entries of the snapshot
+   */
+  public synchronized void reset(final int snapshotSeq, final List<String> snapshot) {
+    this.entries.clear();
+    this.entries.addAll(snapshot);
+    this.sort();
+    this.seq = snapshotSeq;
+  }
+
+  /**
+   * Applies a delta received from the server if it directly follows the current entries. Deltas
+   * which are older than the current entries (e.g. sent before a snapshot) are ignored.
+   *
+   * @param deltaSeq The sequence number of the delta
+   * @param delta The delta
+   * @return false if a delta has been missed and a new snapshot is needed
+   */
+  public synchronized boolean apply(final int deltaSeq, final ListDelta delta) {
+    if (!this.isSynced() || deltaSeq > this.seq + 1) {
+      return false;
+    }
+    if (deltaSeq == this.seq + 1) {
+      delta.applyTo(this.entries);
+      this.sort();
+      this.seq = deltaSeq;
+    }
+    return true;
+  }
+
+  /** Sorts the entries if the list has an order. */
+  private void sort() {
+    if (this.order != null) {
+      this.entries.sort(this.order);
+    }
+  }
+}
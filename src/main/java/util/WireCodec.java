@@ -0,0 +1,182 @@
+package util;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary framing shared by the server and the client. It is negotiated with {@link
+ * client.ClientProtocol#REQUEST_BINARY_PROTOCOL}: once the server has answered with {@link
+ * server.ServerProtocol#BINARY_PROTOCOL_ENABLED}, every message it sends is a frame instead of a
+ * line.
+ *
+ * <p>A frame consists of a one byte opcode, the length of the payload as a four byte integer and
+ * the payload. The frequent game updates have fixed-width payloads; every other command is sent as
+ * a text frame containing the usual {@code <&!>}-separated command. All numbers are big-endian.
+ */
+public final class WireCodec {
+
+  /** The payload is a UTF-8 encoded text command. */
+  public static final int OPCODE_TEXT = 1;
+  /**
+   * The payload is a position update: four doubles, an int, the tick as a long and whether the
+   * cube has been started as a byte.
+   */
+  public static final int OPCODE_POSITION_UPDATE = 2;
+  /** The payload is a jump update: two doubles and the tick as a long. */
+  public static final int OPCODE_JUMP_UPDATE = 3;
+
+  /** The number of bytes preceding the payload. */
+  public static final int HEADER_LENGTH = 5;
+  /** The length of the payload of a position update. */
+  public static final int POSITION_UPDATE_LENGTH =
+      4 * Double.BYTES + Integer.BYTES + Long.BYTES + Byte.BYTES;
+  /** The length of the payload of a jump update. */
+  public static final int JUMP_UPDATE_LENGTH = 2 * Double.BYTES + Long.BYTES;
+  /** Payloads longer than this are considered corrupt. */
+  public static final int MAX_PAYLOAD_LENGTH = 1024 * 1024;
+
+  /** Not instantiable. */
+  private WireCodec() {}
+
+  /**
+   * Encodes a text command as a frame.
+   *
+   * @param command The command, without line terminator
+   * @return the frame
+   */
+  public static byte[] encodeText(final String command) {
+    byte[] payload = command.getBytes(StandardCharsets.UTF_8);
+    return header(OPCODE_TEXT, payload.length).put(payload).array();
+  }
+
+  /**
+   * Encodes a position update of the cube as a frame.
+   *
+   * @param positionX The x coordinate of the cube
+   * @param positionY The y coordinate of the cube
+   * @param velocityX The x component of the velocity
+   * @param velocityY The y component of the velocity
+   * @param accelerationAngle The angle of the acceleration in degrees
+   * @param tick The tick of the game at which the cube was in this state
+   * @param moving Whether the cube has been started
+   * @return the frame
+   */
+  public static byte[] encodePositionUpdate(
+      final double positionX,
+      final double positionY,
+      final double velocityX,
+      final double velocityY,
+      final int accelerationAngle,
+      final long tick,
+      final boolean moving) {
+    return header(OPCODE_POSITION_UPDATE, POSITION_UPDATE_LENGTH)
+        .putDouble(positionX)
+        .putDouble(positionY)
+        .putDouble(velocityX)
+        .putDouble(velocityY)
+        .putInt(accelerationAngle)
+        .putLong(tick)
+        .put((byte) (moving ? 1 : 0))
+        .array();
+  }
+
+  /**
+   * Encodes a jump update, i.e. the rotation point of the cube, as a frame.
+   *
+   * @param rotationPointX The x coordinate of the rotation point
+   * @param rotationPointY The y coordinate of the rotation point
+   * @param tick The tick of the game at which the cube jumped
+   * @return the frame
+   */
+  public static byte[] encodeJumpUpdate(
+      final double rotationPointX, final double rotationPointY, final long tick) {
+    return header(OPCODE_JUMP_UPDATE, JUMP_UPDATE_LENGTH)
+        .putDouble(rotationPointX)
+        .putDouble(rotationPointY)
+        .putLong(tick)
+        .array();
+  }
+
+  /**
+   * Reads the payload of a text frame whose header has already been read.
+   *
+   * @param in The stream positioned at the start of the payload
+   * @param length The length of the payload
+   * @return the text command
+   * @throws IOException If the stream ends or the length is invalid
+   */
+  public static String readText(final DataInputStream in, final int length) throws IOException {
+    checkLength(length);
+    byte[] payload = new byte[length];
+    in.readFully(payload);
+    return new String(payload, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Skips the payload of a frame which the reader doesn't understand.
+   *
+   * @param in The stream positioned at the start of the payload
+   * @param length The length of the payload
+   * @throws IOException If the stream ends or the length is invalid
+   */
+  public static void skip(final DataInputStream in, final int length) throws IOException {
+    checkLength(length);
+    in.skipNBytes(length);
+  }
+
+  /**
+   * Reads a line terminated by '\n' byte by byte, so that no bytes following the line are
+   * consumed. Used before the binary framing has been enabled.
+   *
+   * @param in The stream to read from
+   * @return the line without its terminator, or null if the stream has ended
+   * @throws IOException If the stream fails or the line is too long
+   */
+  public static String readLine(final InputStream in) throws IOException {
+    byte[] line = new byte[128];
+    int length = 0;
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b < 0) {
+        return length == 0 ? null : new String(line, 0, length, StandardCharsets.UTF_8);
+      }
+      if (length == line.length) {
+        checkLength(length * 2);
+        byte[] larger = new byte[length * 2];
+        System.arraycopy(line, 0, larger, 0, length);
+        line = larger;
+      }
+      line[length++] = (byte) b;
+    }
+    if (length > 0 && line[length - 1] == '\r') {
+      length--;
+    }
+    return new String(line, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Allocates a frame and writes its header.
+   *
+   * @param opcode The opcode of the frame
+   * @param length The length of the payload
+   * @return a buffer positioned after the header
+   */
+  private static ByteBuffer header(final int opcode, final int length) {
+    return ByteBuffer.allocate(HEADER_LENGTH + length).put((byte) opcode).putInt(length);
+  }
+
+  /**
+   * Checks that a payload length announced by the peer is sane.
+   *
+   * @param length The length to check
+   * @throws IOException If the length is negative or too large
+   */
+  private static void checkLength(final int length) throws IOException {
+    if (length < 0 || length > MAX_PAYLOAD_LENGTH) {
+      throw new IOException("Invalid payload length: " + length);
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package client;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the JitterMeter class.
+ */
+class JitterMeterTest {
+
+    private final JitterMeter meter = new JitterMeter();
+
+    @Test
+    void measuresTheJitter() { // from the transit times, whatever the offset of the clocks
+        meter.recordArrival(0.0, 100.0);
+        meter.recordArrival(0.1, 100.1);
+        assertEquals(0, meter.getJitter());
+
+        meter.recordArrival(0.2, 100.36);
+        assertEquals(0.16 / 16, meter.getJitter(), 1e-9);
+        assertEquals(0.16, meter.getMaxJitter(), 1e-9);
+        assertEquals(3, meter.getArrivals());
+    }
+}
@@ -0,0 +1,72 @@
+package client;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the SnapshotBuffer class.
+ */
+class SnapshotBufferTest {
+
+    private final SnapshotBuffer buffer = new SnapshotBuffer();
+
+    @Test
+    void interpolatesBetweenStates() { // the cube moves smoothly between two ticks
+        buffer.add(1.0, 0, 100, 0, 0, 80);
+        buffer.add(1.5, 50, 50, 0, 0, 10);
+
+        assertTrue(buffer.sample(1.25));
+        assertEquals(25, buffer.getX(), 1e-9);
+        assertEquals(75, buffer.getY(), 1e-9);
+        assertEquals(90, buffer.getRotation(), 1e-9); // turning to 100 degrees looks the same as 10
+        assertEquals(0, buffer.getExtrapolations());
+    }
+
+    @Test
+    void extrapolatesForAShortTime() { // if the drawn time is newer than the newest state
+        assertFalse(buffer.sample(0));
+        buffer.add(1.0, 0, 0, 100, -20, 0);
+
+        assertTrue(buffer.sample(1.1));
+        assertEquals(10, buffer.getX(), 1e-9);
+        assertEquals(-2, buffer.getY(), 1e-9);
+        buffer.sample(10);
+        assertEquals(100 * SnapshotBuffer.MAX_EXTRAPOLATION, buffer.getX(), 1e-9);
+        assertEquals(2, buffer.getExtrapolations());
+        buffer.sample(0); // older than the oldest state
+        assertEquals(0, buffer.getX());
+    }
+
+    @Test
+    void replacesStatesSimulatedAgain() { // after a correction of the server
+        buffer.add(1.0, 0, 0, 0, 0, 0);
+        buffer.add(2.0, 10, 0, 0, 0, 0);
+        buffer.add(3.0, 20, 0, 0, 0, 0);
+        buffer.add(2.0, 40, 0, 0, 0, 0);
+
+        buffer.sample(1.5);
+        assertEquals(20, buffer.getX(), 1e-9);
+        buffer.sample(2.5);
+        assertEquals(40, buffer.getX(), 1e-9);
+    }
+
+    @Test
+    void keepsTheNewestStates() { // older states are overwritten
+        for (int i = 0; i < 2 * SnapshotBuffer.CAPACITY; i++) {
+            buffer.add(i, i, 0, 0, 0, 0);
+        }
+
+        buffer.sample(0);
+        assertEquals(SnapshotBuffer.CAPACITY, buffer.getX());
+        buffer.sample(100.5);
+        assertEquals(100.5, buffer.getX(), 1e-9);
+    }
+
+    @Test
+    void rejectsNegativeDelays() {
+        buffer.setDelay(0.1);
+        assertEquals(0.1, buffer.getDelay());
+        assertThrows(IllegalArgumentException.class, () -> buffer.setDelay(-1));
+    }
+}
@@ -0,0 +1,79 @@
+package client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the UpdateQueue class.
+ */
+class UpdateQueueTest {
+
+    // The batches handed to the JavaFX thread, run by the tests
+    private final List<Runnable> batches = new ArrayList<>();
+    private final UpdateQueue queue = new UpdateQueue(batches::add);
+    private final List<String> applied = new ArrayList<>();
+
+    private void runBatches() {
+        List<Runnable> scheduled = new ArrayList<>(batches);
+        batches.clear();
+        scheduled.forEach(Runnable::run);
+    }
+
+    @Test
+    void appliesUpdatesInBatches() { // one runnable for a burst of updates
+        for (int i = 0; i < 1000; i++) {
+            String update = "chat " + i;
+            queue.add(() -> applied.add(update));
+        }
+
+        assertEquals(1, batches.size());
+        runBatches();
+        assertEquals(1000, applied.size());
+        assertEquals("chat 999", applied.get(999));
+        assertEquals(1, queue.getNumBatches());
+
+        queue.add(() -> applied.add("next"));
+        assertEquals(1, batches.size()); // a new batch once the last one has started
+    }
+
+    @Test
+    void replacesSupersededUpdates() { // only the newest position and list are applied
+        queue.replace("position", () -> applied.add("position 1"));
+        queue.add(() -> applied.add("jump"));
+        queue.replace("list", () -> applied.add("list 1"));
+        queue.addReplaceable("list", () -> applied.add("list 1 change"));
+        queue.replace("position", () -> applied.add("position 2"));
+        queue.replace("list", () -> applied.add("list 2"));
+        queue.addReplaceable("list", () -> applied.add("list 2 change"));
+        runBatches();
+
+        assertEquals(List.of("jump", "position 2", "list 2", "list 2 change"), applied);
+        assertEquals(3, queue.getNumReplaced());
+    }
+
+    @Test
+    void keepsUpdatesOfAnAppliedBatch() { // nothing is replaced once it has been applied
+        queue.replace("position", () -> applied.add("position 1"));
+        runBatches();
+        queue.replace("position", () -> applied.add("position 2"));
+        runBatches();
+
+        assertEquals(List.of("position 1", "position 2"), applied);
+        assertEquals(0, queue.getNumReplaced());
+    }
+
+    @Test
+    void continuesAfterAFailingUpdate() {
+        queue.add(() -> {
+            throw new IllegalStateException("no game");
+        });
+        queue.add(() -> applied.add("after"));
+        runBatches();
+
+        assertEquals(List.of("after"), applied);
+    }
+}
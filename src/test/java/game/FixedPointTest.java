@@ -0,0 +1,80 @@
+package game;
+
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the deterministic simulation mode: fixed ticks and fixed-point state.
+ */
+class FixedPointTest {
+
+    // A floor with a spawn cell above it
+    static final String LEVEL = "0000000000\n0000000000\n0300000000\n2222222222\n";
+    static final double TICK = 1.0 / GameConstants.TICK_RATE.getValue();
+
+    /**
+     * A cube without a client or a server.
+     */
+    static class TestCube extends Cube {
+        TestCube(Vector2D spawnPosition) {
+            super(spawnPosition);
+        }
+
+        @Override
+        public void checkCoinCollision(Block block) {
+        }
+
+        @Override
+        public void die() {
+        }
+    }
+
+    /**
+     * Simulates a cube which starts moving at the first tick and jumps at the given tick, and
+     * returns its positions and velocities after every tick.
+     */
+    static double[][] simulate(int numTicks, int jumpTick) {
+        Level level = new Level(new LevelLayout("test", "easy", LEVEL), 50);
+        level.setPlatformColour(0, 3, Color.RED);
+        NeighbourBuffer buffer = new NeighbourBuffer();
+        Cube cube = new TestCube(new Vector2D(50, 100));
+        cube.initialiseSpeed();
+
+        double[][] states = new double[numTicks][];
+        for (int tick = 0; tick < numTicks; tick++) {
+            if (tick == jumpTick) {
+                cube.jump(Color.RED);
+            }
+            cube.move(level.getNeighbourBlocks(
+                    cube.getPosition().getX(), cube.getPosition().getY(), buffer), TICK);
+            cube.quantise();
+            states[tick] = new double[] {
+                    cube.getPosition().getX(), cube.getPosition().getY(),
+                    cube.getVelocity().getX(), cube.getVelocity().getY()};
+        }
+        return states;
+    }
+
+    @Test
+    void snapsToTheGrid() {
+        assertEquals(256, FixedPoint.toFixed(1.0));
+        assertEquals(FixedPoint.RESOLUTION, FixedPoint.snap(0.6 * FixedPoint.RESOLUTION));
+        assertEquals(-2.5, FixedPoint.snap(-2.5));
+    }
+
+    @Test
+    void simulationsWithTheSameInputsAgree() { // e.g. the server and a client
+        double[][] first = simulate(240, 60);
+        double[][] second = simulate(240, 60);
+
+        for (int tick = 0; tick < first.length; tick++) {
+            assertArrayEquals(first[tick], second[tick], "tick " + tick);
+            for (double value : first[tick]) {
+                assertEquals(value, FixedPoint.snap(value), "tick " + tick); // exactly on the grid
+            }
+        }
+        assertNotEquals(first[59][1], first[90][1]); // the cube has jumped
+    }
+}
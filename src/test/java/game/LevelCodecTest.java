@@ -0,0 +1,96 @@
+package game;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the binary level format of the LevelCodec class.
+ */
+class LevelCodecTest {
+
+    // Two platforms joined at the bottom, a separate platform, a coin and a spawn cell
+    static final String LEVEL = "11111\n12022\n12022\n12223\n14002\n";
+
+    @Test
+    void labelsPlatforms() { // coloured blocks touching each other form a platform
+        LevelLayout layout = new LevelLayout("test", "easy", LEVEL);
+
+        assertEquals(2, layout.getPlatformCount());
+        assertEquals(0, layout.getPlatformId(1, 1));
+        assertEquals(0, layout.getPlatformId(3, 1)); // joined to the first one on the 4th row
+        assertEquals(1, layout.getPlatformId(4, 4));
+        assertEquals(-1, layout.getPlatformId(0, 0));
+    }
+
+    @Test
+    void labelsLongPlatformsWithoutRecursion() { // a single winding platform covering the level
+        int size = 1000;
+        StringBuilder level = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                boolean connector = i % 4 == 1 ? j == size - 1 : j == 0;
+                level.append(i % 2 == 0 || connector ? '2' : '0');
+            }
+            level.append('\n');
+        }
+        LevelLayout layout = new LevelLayout("test", "hard", level.toString());
+
+        assertEquals(1, layout.getPlatformCount());
+        assertEquals(0, layout.getPlatformId(size - 1, size - 2));
+        assertEquals(0, layout.getPlatformStartX(0));
+        assertEquals(0, layout.getPlatformStartY(0));
+    }
+
+    @Test
+    void roundTrip() { // a decoded level is the same as the parsed one
+        LevelLayout parsed = new LevelLayout("test", "easy", LEVEL);
+        LevelLayout decoded =
+                LevelCodec.decode("test", "easy", ByteBuffer.wrap(LevelCodec.encode(parsed)));
+
+        assertEquals(parsed.getWidth(), decoded.getWidth());
+        assertEquals(parsed.getHeight(), decoded.getHeight());
+        assertEquals(parsed.getPlatformCount(), decoded.getPlatformCount());
+        assertEquals(parsed.getSpawnX(), decoded.getSpawnX());
+        assertEquals(parsed.getSpawnY(), decoded.getSpawnY());
+        assertEquals(parsed.getCoinX(), decoded.getCoinX());
+        assertEquals(parsed.getCoinY(), decoded.getCoinY());
+        for (int i = 0; i < parsed.getHeight(); i++) {
+            for (int j = 0; j < parsed.getWidth(); j++) {
+                assertEquals(parsed.getCell(j, i), decoded.getCell(j, i));
+                assertEquals(parsed.getPlatformId(j, i), decoded.getPlatformId(j, i));
+            }
+        }
+    }
+
+    @Test
+    void packsFourCellsPerByte() { // 25 cells take 7 bytes
+        byte[] encoded = LevelCodec.encode(new LevelLayout("test", "easy", LEVEL));
+        int numColoured = 10;
+
+        assertEquals(34 + 7 + numColoured * 4, encoded.length);
+    }
+
+    @Test
+    void rejectsTruncatedLevels() { // a broken file must not be loaded as an empty level
+        byte[] encoded = LevelCodec.encode(new LevelLayout("test", "easy", LEVEL));
+        ByteBuffer truncated = ByteBuffer.wrap(encoded, 0, encoded.length - 1);
+
+        assertThrows(IllegalArgumentException.class, () -> LevelCodec.decode("test", "easy", truncated));
+    }
+
+    @Test
+    void rejectsHugeDimensionsBeforeAllocating() { // a corrupt header must not exhaust the heap
+        byte[] encoded = LevelCodec.encode(new LevelLayout("test", "easy", LEVEL));
+        ByteBuffer header = ByteBuffer.wrap(encoded);
+        header.putInt(6, 100_000).putInt(10, 100_000);
+
+        assertThrows(IllegalArgumentException.class, () -> LevelCodec.decode("test", "easy", header));
+
+        header.putInt(6, 1000).putInt(10, 1000);
+        ByteBuffer large = ByteBuffer.wrap(encoded);
+        assertThrows(IllegalArgumentException.class, () -> LevelCodec.decode("test", "easy", large));
+    }
+}
@@ -0,0 +1,109 @@
+package game;
+
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the LevelRegistry and LevelLayout classes.
+ */
+class LevelRegistryTest {
+
+    @Test
+    void parsesCells() { // each character of the level file is a cell
+        LevelLayout layout = new LevelLayout("test", "easy", "1111\n1342\n10x\n");
+
+        assertEquals(4, layout.getWidth());
+        assertEquals(3, layout.getHeight());
+        assertEquals(LevelLayout.WHITE, layout.getCell(0, 0));
+        assertEquals(LevelLayout.COLOURED, layout.getCell(3, 1));
+        assertEquals(LevelLayout.EMPTY, layout.getCell(2, 2)); // invalid character
+        assertEquals(LevelLayout.EMPTY, layout.getCell(3, 2)); // missing character
+        assertEquals(1, layout.getSpawnX());
+        assertEquals(1, layout.getSpawnY());
+        assertEquals(2, layout.getCoinX());
+        assertEquals(1, layout.getCoinY());
+    }
+
+    @Test
+    void levelsShareTheirLayoutButNotTheirColours() { // colours are chosen per game
+        LevelLayout layout = new LevelLayout("test", "easy", "222\n234\n");
+        Level first = new Level(layout, 50);
+        Level second = new Level(layout, 50);
+        first.setPlatformColour(0, 0, Color.RED);
+
+        assertSame(first.getLayout(), second.getLayout());
+        assertEquals(Color.RED, first.getColour(1, 0));
+        assertNull(second.getColour(1, 0));
+        assertNull(first.getBlock(1, 1)); // spawn
+        assertEquals(100, first.getBlock(2, 1).getX()); // coin
+        assertArrayEquals(new int[] {1, 1}, first.playerSpawnIdx);
+    }
+
+    @Test
+    void coloursWholePlatforms() { // every block of a platform has the colour of its first block
+        Level level = new Level(new LevelLayout("test", "easy", "2202\n0222\n2000\n"), 50);
+        ArrayList<Color> colours = new ArrayList<>(List.of(Color.RED, Color.BLUE));
+        level.setBlockColours(colours);
+
+        assertEquals(2, level.getCriticalBlocks().size());
+        assertArrayEquals(new int[] {0, 0}, level.getCriticalBlocks().get(0).getIndex());
+        assertArrayEquals(new int[] {0, 2}, level.getCriticalBlocks().get(1).getIndex());
+        Color platformColour = level.getColour(0, 0);
+        assertNotNull(platformColour);
+        assertEquals(platformColour, level.getCriticalBlocks().get(0).getColour());
+        for (int[] cell : new int[][] {{1, 0}, {3, 0}, {1, 1}, {2, 1}, {3, 1}}) {
+            assertEquals(platformColour, level.getBlock(cell[0], cell[1]).getColour());
+        }
+    }
+
+    @Test
+    void neighboursOutsideTheLevelAreEmpty() { // the cube may touch the border of the level
+        Level level = new Level(new LevelLayout("test", "easy", "12\n21\n"), 50);
+        Block[] neighbours = level.getNeighbourBlocks(10, 10);
+
+        for (int i = 0; i < 4; i++) {
+            assertNull(neighbours[i]); // top row and left column
+        }
+        assertNull(neighbours[6]);
+        assertEquals(Colours.WHITE.getHex(), neighbours[4].getColour());
+        assertEquals(50, neighbours[7].getY());
+        assertEquals(0, neighbours[7].getX());
+        assertEquals(50, neighbours[8].getX());
+    }
+
+    @Test
+    void callerBuffersAreIndependent() { // each simulation queries the level with its own buffer
+        Level level = new Level(new LevelLayout("test", "easy", "111\n101\n111\n"), 50);
+        NeighbourBuffer first = new NeighbourBuffer();
+        NeighbourBuffer second = new NeighbourBuffer();
+        Block[] firstBlocks = level.getNeighbourBlocks(75, 75, first);
+        Block corner = firstBlocks[0];
+        level.getNeighbourBlocks(-100, -100, second);
+
+        assertSame(firstBlocks, first.getBlocks());
+        assertEquals(0, corner.getX()); // unchanged by the query with the other buffer
+        assertNull(firstBlocks[4]); // empty centre
+        for (Block block : second.getBlocks()) {
+            assertNull(block); // far outside the level
+        }
+        assertSame(corner, level.getNeighbourBlocks(125, 75, first)[0]); // the blocks are reused
+        assertEquals(50, corner.getX());
+    }
+
+    @Test
+    void findsTheLevelsOfEveryDifficulty() { // the levels are read from the resources once
+        LevelRegistry registry = LevelRegistry.getDefault();
+
+        for (int i = 0; i < LevelRegistry.DIFFICULTIES.length; i++) {
+            assertFalse(registry.getLevels(i).isEmpty(), LevelRegistry.DIFFICULTIES[i]);
+            LevelLayout layout = registry.randomLevel(i);
+            assertEquals(LevelRegistry.DIFFICULTIES[i], layout.getDifficulty());
+            assertSame(layout, registry.getLayout(layout.getPath()));
+        }
+    }
+}
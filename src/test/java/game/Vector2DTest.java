@@ -0,0 +1,40 @@
+package game;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the in-place operations of the Vector2D class.
+ */
+class Vector2DTest {
+
+    @Test
+    void scaleAddMatchesAddAndMultiply() { // the fused operation gives the same result
+        Vector2D velocity = new Vector2D(3, -4);
+        Vector2D acceleration = new Vector2D(0.5, 2);
+        Vector2D expected = Vector2D.add(velocity, acceleration.multiply(0.25));
+        velocity.scaleAdd(acceleration, 0.25);
+
+        assertTrue(expected.equals(velocity));
+    }
+
+    @Test
+    void rightAnglesAreExact() { // no rounding errors from the trigonometry
+        int[] angles = {0, 90, 180, 270, 360, -90};
+        double[][] directions = {{0, 1}, {1, 0}, {0, -1}, {-1, 0}, {0, 1}, {-1, 0}};
+        Vector2D vector = new Vector2D(0, 0);
+
+        for (int i = 0; i < angles.length; i++) {
+            vector.setDirection(angles[i], 2);
+            assertEquals(2 * directions[i][0], vector.getX(), String.valueOf(angles[i]));
+            assertEquals(2 * directions[i][1], vector.getY(), String.valueOf(angles[i]));
+        }
+    }
+
+    @Test
+    void otherAnglesUseTrigonometry() {
+        assertEquals(Math.sin(Math.toRadians(45)), Vector2D.directionX(45), 1e-12);
+        assertEquals(Math.cos(Math.toRadians(45)), Vector2D.directionY(45), 1e-12);
+    }
+}
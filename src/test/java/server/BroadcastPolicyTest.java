@@ -0,0 +1,76 @@
+package server;
+
+import game.Cube;
+import game.Vector2D;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the policies deciding when the state of a game is broadcast.
+ */
+class BroadcastPolicyTest {
+
+    private static final int TICKS_PER_SECOND = TickScheduler.TICK_RATE;
+
+    @Test
+    void adaptsTheRateToTheCube() { // rarely when idle, often when rotating
+        AdaptiveBroadcastPolicy policy = new AdaptiveBroadcastPolicy(1, 4, 20);
+        Cube cube = new ServerCube(new Vector2D(0, 0), null);
+
+        assertFalse(policy.shouldBroadcast(cube, false, TICKS_PER_SECOND - 1));
+        assertTrue(policy.shouldBroadcast(cube, false, TICKS_PER_SECOND));
+        assertTrue(policy.shouldBroadcast(cube, true, 1)); // a collision
+        cube.moving = true;
+        assertFalse(policy.shouldBroadcast(cube, false, TICKS_PER_SECOND / 4 - 1));
+        assertTrue(policy.shouldBroadcast(cube, false, TICKS_PER_SECOND / 4));
+        cube.rotating = true;
+        assertTrue(policy.shouldBroadcast(cube, false, TICKS_PER_SECOND / 20));
+    }
+
+    @Test
+    void fixedRateIgnoresTheCube() {
+        Cube cube = new ServerCube(new Vector2D(0, 0), null);
+
+        BroadcastPolicy policy = new FixedRateBroadcastPolicy(10);
+
+        assertTrue(policy.shouldBroadcast(cube, false, TICKS_PER_SECOND / 10));
+        assertFalse(policy.shouldBroadcast(cube, true, 1));
+        policy = FixedRateBroadcastPolicy.CHANGES_ONLY;
+        assertFalse(policy.shouldBroadcast(cube, true, Long.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> new FixedRateBroadcastPolicy(-1));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveBroadcastPolicy(0, 4, 20));
+    }
+
+    @Test
+    void findsThePoliciesByName() { // as given to ServerMain
+        assertSame(AdaptiveBroadcastPolicy.DEFAULT, BroadcastPolicy.fromName("Adaptive"));
+        assertSame(FixedRateBroadcastPolicy.CHANGES_ONLY, BroadcastPolicy.fromName("changes"));
+        assertInstanceOf(FixedRateBroadcastPolicy.class, BroadcastPolicy.fromName("10"));
+        assertNull(BroadcastPolicy.fromName("-1"));
+        assertNull(BroadcastPolicy.fromName("often"));
+    }
+
+    @Test
+    void halvesTheTrafficOfAMovingCube() { // compared to the former fixed rate of 10 Hz
+        long fixed = countBroadcasts(new FixedRateBroadcastPolicy(10));
+        long adaptive = countBroadcasts(AdaptiveBroadcastPolicy.DEFAULT);
+
+        assertTrue(adaptive * 2 < fixed, adaptive + " of " + fixed);
+    }
+
+    /**
+     * Starts the cube and counts the broadcasts of 20 seconds of a game.
+     */
+    private static long countBroadcasts(BroadcastPolicy policy) {
+        SinglePlayerGame fixture = new SinglePlayerGame("game", false, policy).initialised();
+        ServerGame game = fixture.game;
+        game.setImmortal();
+        game.spaceBarPressed(fixture.client, 0, 0);
+
+        for (int i = 0; i < 20 * TICKS_PER_SECOND; i++) {
+            game.update(TickScheduler.TICK_DURATION);
+        }
+        return game.getNumBroadcasts();
+    }
+}
@@ -0,0 +1,32 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the broadcasts of a game simulated in the deterministic mode.
+ */
+class DeterministicModeTest {
+
+    @Test
+    void onlyBroadcastsChanges() { // the clients simulate the ticks between two changes themselves
+        SinglePlayerGame fixture = new SinglePlayerGame("game", true).initialised();
+        ServerGame game = fixture.game;
+        RecordingConnection connection = fixture.connection;
+
+        for (int i = 0; i < 2 * TickScheduler.TICK_RATE; i++) {
+            game.update(TickScheduler.TICK_DURATION);
+        }
+        assertEquals(1, connection.count(ServerProtocol.POSITION_UPDATE)); // the spawn
+        assertEquals("1", connection.last(ServerProtocol.POSITION_UPDATE)[6]);
+
+        game.spaceBarPressed(fixture.client, 0, 0); // starts moving
+        game.update(TickScheduler.TICK_DURATION);
+
+        String[] update = connection.last(ServerProtocol.POSITION_UPDATE);
+        assertEquals(2, connection.count(ServerProtocol.POSITION_UPDATE));
+        assertEquals(String.valueOf(game.getTick()), update[6]);
+        assertEquals(game.getPlayer().getPosition().getX(), Double.parseDouble(update[1]));
+    }
+}
@@ -0,0 +1,72 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the ticks at which the server applies the inputs predicted by the clients.
+ */
+class InputSchedulingTest {
+
+    private final SinglePlayerGame fixture = new SinglePlayerGame("game", true).initialised();
+    private final ServerGame game = fixture.game;
+    private final ClientHandler client = fixture.client;
+    private final RecordingConnection connection = fixture.connection;
+
+    @Test
+    void appliesInputsAtTheirPredictedTick() { // the client runs ahead of the server
+        game.spaceBarPressed(client, 1, 5);
+
+        for (int i = 0; i < 5; i++) {
+            game.update(TickScheduler.TICK_DURATION);
+            assertFalse(game.getPlayer().moving);
+        }
+        game.update(TickScheduler.TICK_DURATION);
+
+        assertTrue(game.getPlayer().moving);
+        String[] ack = connection.last(ServerProtocol.INPUT_ACK);
+        assertEquals("1", ack[1]);
+        assertEquals("5", ack[2]);
+        String[] update = connection.last(ServerProtocol.POSITION_UPDATE);
+        assertEquals("6", update[6]); // the state at the beginning of the next tick
+        assertEquals("true", update[7]);
+    }
+
+    @Test
+    void appliesLateInputsAtTheCurrentTick() { // and tells the client to correct its prediction
+        for (int i = 0; i < 10; i++) {
+            game.update(TickScheduler.TICK_DURATION);
+        }
+        game.spaceBarPressed(client, 2, 3);
+        game.update(TickScheduler.TICK_DURATION);
+
+        assertTrue(game.getPlayer().moving);
+        assertEquals("10", connection.last(ServerProtocol.INPUT_ACK)[2]);
+    }
+
+    @Test
+    void runsCommandsOnTheTickThread() { // a cheat doesn't change the game in the middle of a tick
+        game.commandReceived(client, ServerGame::setImmortal);
+        assertNotEquals(String.valueOf(Integer.MAX_VALUE),
+                connection.last(ServerProtocol.GAME_STATUS_UPDATE)[1]);
+
+        game.update(TickScheduler.TICK_DURATION);
+
+        assertEquals(String.valueOf(Integer.MAX_VALUE),
+                connection.last(ServerProtocol.GAME_STATUS_UPDATE)[1]);
+    }
+
+    @Test
+    void limitsHowFarAheadInputsAreScheduled() { // a wrong tick can't delay the input for long
+        game.spaceBarPressed(client, 3, Long.MAX_VALUE);
+
+        for (int i = 0; i <= TickScheduler.TICK_RATE / 2; i++) {
+            game.update(TickScheduler.TICK_DURATION);
+        }
+
+        assertTrue(game.getPlayer().moving);
+        String[] ack = connection.last(ServerProtocol.INPUT_ACK);
+        assertEquals(String.valueOf(TickScheduler.TICK_RATE / 2), ack[2]);
+    }
+}
@@ -0,0 +1,34 @@
+package server;
+
+import client.ClientProtocol;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the version of the protocol announced by the clients.
+ */
+class ProtocolVersionTest {
+
+    private static final String SEPARATOR = ServerProtocol.SEPARATOR.toString();
+
+    private final RecordingConnection connection = new RecordingConnection();
+    private final ClientHandler client = new ClientHandler(connection, null);
+
+    @Test
+    void answersPingsBeforeTheVersion() { // pings have the same shape in every version
+        client.receive(ClientProtocol.CLIENT_PING.toString());
+
+        assertEquals(1, connection.messages.size());
+        assertEquals(ServerProtocol.SERVER_PONG.toString(), connection.messages.get(0));
+    }
+
+    @Test
+    void acceptsTheCommandsOfTheSameVersion() {
+        client.receive(ClientProtocol.PROTOCOL_VERSION + SEPARATOR + ServerProtocol.VERSION);
+        // A rejected client would be removed from the server, which this test doesn't have
+        assertDoesNotThrow(() -> client.receive(ClientProtocol.EXIT_LOBBY.toString()));
+
+        assertNull(connection.last(ServerProtocol.PROTOCOL_MISMATCH));
+    }
+}
@@ -0,0 +1,53 @@
+package server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A connection which records the messages queued for the client instead of sending them.
+ */
+class RecordingConnection implements ClientConnection {
+    final List<String> messages = new ArrayList<>();
+
+    @Override
+    public synchronized boolean queue(OutboundMessage message, boolean replaceable) {
+        String line = new String(message.bytes(false), StandardCharsets.UTF_8);
+        this.messages.add(line.substring(0, line.length() - 1));
+        return true;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void enableBinaryFraming() {
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    /**
+     * Returns the arguments of the last message sent with the given command.
+     */
+    synchronized String[] last(ServerProtocol command) {
+        for (int i = this.messages.size() - 1; i >= 0; i--) {
+            String[] split = this.messages.get(i).split(ServerProtocol.SEPARATOR.toString());
+            if (split[0].equals(command.toString())) {
+                return split;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of messages sent with the given command.
+     */
+    synchronized int count(ServerProtocol command) {
+        String prefix = command.toString() + ServerProtocol.SEPARATOR;
+        return (int) this.messages.stream().filter(m -> m.startsWith(prefix)).count();
+    }
+}
@@ -0,0 +1,74 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Soak tests running many games in the same server process. Each game has a single client whose
+ * connection records the messages it is sent, so that the messages of the games can be told apart.
+ */
+class ServerGameIsolationTest {
+
+    @Test
+    void deathsAreRoutedToTheirOwnGame() { // every cube must inform its own game of its deaths
+        int numGames = 100;
+        ServerGame[] games = new ServerGame[numGames];
+        RecordingConnection[] connections = new RecordingConnection[numGames];
+
+        for (int i = 0; i < numGames; i++) {
+            SinglePlayerGame fixture = new SinglePlayerGame("game" + i, false).initialised();
+            games[i] = fixture.game;
+            connections[i] = fixture.connection;
+        }
+
+        // Two deaths at most, so that no game ends
+        for (int i = 0; i < numGames; i++) {
+            for (int deaths = 0; deaths < i % 3; deaths++) {
+                games[i].getPlayer().die();
+            }
+        }
+
+        for (int i = 0; i < numGames; i++) {
+            String[] status = connections[i].last(ServerProtocol.GAME_STATUS_UPDATE);
+            assertNotNull(status);
+            assertEquals(String.valueOf(3 - i % 3), status[1], "lives of game " + i);
+        }
+    }
+
+    @Test
+    void manyGamesTickConcurrently() throws InterruptedException { // no game is starved under load
+        int numGames = 200;
+        TickScheduler scheduler = new TickScheduler(4);
+        ServerGame[] games = new ServerGame[numGames];
+        RecordingConnection[] connections = new RecordingConnection[numGames];
+
+        try {
+            for (int i = 0; i < numGames; i++) {
+                SinglePlayerGame fixture = new SinglePlayerGame("game" + i, false);
+                games[i] = fixture.game;
+                connections[i] = fixture.connection;
+                // Immortal games can't end, as they don't belong to a lobby
+                games[i].setImmortal();
+                scheduler.schedule(games[i]);
+                games[i].spaceBarPressed(fixture.client, 0, 0);
+            }
+            assertEquals(numGames, scheduler.getNumGames());
+
+            Thread.sleep(2000);
+        } finally {
+            for (ServerGame game : games) {
+                if (game != null) {
+                    scheduler.cancel(game);
+                }
+            }
+            scheduler.shutdown();
+        }
+
+        // 10 broadcasts per second, with a generous margin for slow machines
+        for (int i = 0; i < numGames; i++) {
+            int updates = connections[i].count(ServerProtocol.POSITION_UPDATE);
+            assertTrue(updates >= 5, "game " + i + " only sent " + updates + " position updates");
+        }
+    }
+}
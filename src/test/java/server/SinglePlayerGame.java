@@ -0,0 +1,42 @@
+package server;
+
+import javafx.scene.paint.Color;
+
+import java.util.HashMap;
+
+/**
+ * A game outside of any lobby with a single player, whose connection records the messages it is
+ * sent. Shared by the tests of {@link ServerGame}.
+ */
+class SinglePlayerGame {
+    /** The connection of the player. */
+    final RecordingConnection connection = new RecordingConnection();
+    /** The player. */
+    final ClientHandler client = new ClientHandler(connection, null);
+    /** The game, whose level isn't loaded until {@link #initialised()} or a scheduler does it. */
+    final ServerGame game;
+
+    /**
+     * Creates a game with the given broadcast policy.
+     */
+    SinglePlayerGame(String gameId, boolean deterministic, BroadcastPolicy policy) {
+        HashMap<ClientHandler, Color> clients = new HashMap<>();
+        clients.put(client, ServerGame.blockColours.get(0));
+        this.game = new ServerGame(clients, gameId, null, deterministic, policy);
+    }
+
+    /**
+     * Creates a game with the default broadcast policy.
+     */
+    SinglePlayerGame(String gameId, boolean deterministic) {
+        this(gameId, deterministic, BroadcastPolicy.defaultPolicy(deterministic));
+    }
+
+    /**
+     * Loads the first level.
+     */
+    SinglePlayerGame initialised() {
+        this.game.initialiseContent();
+        return this;
+    }
+}
@@ -0,0 +1,83 @@
+package util;
+
+import client.ClientProtocol;
+import org.junit.jupiter.api.Test;
+import server.ServerProtocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the DispatchTable class.
+ */
+class DispatchTableTest {
+
+    private static final String SEPARATOR = ServerProtocol.SEPARATOR.toString();
+
+    /** The commands run by the table, with their arguments. */
+    private final List<String> handled = new ArrayList<>();
+
+    private final DispatchTable<ClientProtocol, List<String>> table =
+            new DispatchTable<ClientProtocol, List<String>>(
+                    ClientProtocol.values(), ClientProtocol::fromName, ClientProtocol::getNumArgs)
+                .on(ClientProtocol.SET_USERNAME, (log, command) -> log.add("name " + command.get(1)))
+                .on(ClientProtocol.SPACE_BAR_PRESSED,
+                    command -> command.isInt(1) && command.isLong(2),
+                    (log, command) -> log.add("jump " + command.parseInt(1)
+                            + " " + command.parseLong(2)));
+
+    private DispatchTable.Outcome dispatch(String line) {
+        ProtocolTokenizer tokenizer = new ProtocolTokenizer(SEPARATOR);
+        tokenizer.tokenize(line);
+        return this.table.dispatch(this.handled, tokenizer);
+    }
+
+    @Test
+    void runsTheHandlerOfTheCommand() {
+        assertEquals(DispatchTable.Outcome.HANDLED, dispatch("SET_USERNAME<&!>alice"));
+        assertEquals(DispatchTable.Outcome.HANDLED, dispatch("SPACE_BAR_PRESSED<&!>3<&!>120"));
+        assertEquals(DispatchTable.Outcome.HANDLED, dispatch("SPACE_BAR_PRESSED<&!>4<&!>121"));
+
+        assertEquals(List.of("name alice", "jump 3 120", "jump 4 121"), this.handled);
+        assertEquals(1, this.table.getCount(ClientProtocol.SET_USERNAME));
+        assertEquals(2, this.table.getCount(ClientProtocol.SPACE_BAR_PRESSED));
+        assertEquals(0, this.table.getCount(ClientProtocol.EXIT));
+    }
+
+    @Test
+    void rejectsMalformedLinesBeforeTheHandler() { // without throwing
+        assertEquals(DispatchTable.Outcome.UNKNOWN, dispatch("NOT_A_COMMAND<&!>1"));
+        assertEquals(DispatchTable.Outcome.UNKNOWN, dispatch(""));
+        assertEquals(DispatchTable.Outcome.MALFORMED, dispatch("SET_USERNAME"));
+        assertEquals(DispatchTable.Outcome.MALFORMED, dispatch("SET_USERNAME<&!>a<&!>b"));
+        assertEquals(DispatchTable.Outcome.MALFORMED, dispatch("SPACE_BAR_PRESSED<&!>x<&!>120"));
+        assertEquals(DispatchTable.Outcome.MALFORMED,
+                dispatch("SPACE_BAR_PRESSED<&!>3<&!>99999999999999999999"));
+        assertEquals(DispatchTable.Outcome.UNHANDLED, dispatch("EXIT"));
+
+        assertTrue(this.handled.isEmpty());
+        assertEquals(2, this.table.getUnknownCount());
+        assertEquals(4, this.table.getMalformedCount());
+        assertEquals(1, this.table.getUnhandledCount());
+        assertEquals(0, this.table.getCount(ClientProtocol.SPACE_BAR_PRESSED));
+    }
+
+    @Test
+    void listsTheCounts() { // as logged on shutdown
+        dispatch("SPACE_BAR_PRESSED<&!>3<&!>120");
+        dispatch("SET_USERNAME");
+
+        assertEquals("handled [SPACE_BAR_PRESSED 1], unknown 0, malformed 1, unhandled 0",
+                this.table.toString());
+    }
+
+    @Test
+    void registersOneHandlerPerCommand() {
+        assertTrue(this.table.handles(ClientProtocol.SET_USERNAME));
+        assertFalse(this.table.handles(ClientProtocol.EXIT));
+        assertThrows(IllegalStateException.class,
+                () -> this.table.on(ClientProtocol.SET_USERNAME, (log, command) -> { }));
+    }
+}
@@ -0,0 +1,111 @@
+package util;
+
+import client.ClientProtocol;
+import org.junit.jupiter.api.Test;
+import server.ServerProtocol;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the ProtocolTokenizer and ProtocolNames classes.
+ */
+class ProtocolTokenizerTest {
+
+    private static final String SEPARATOR = ServerProtocol.SEPARATOR.toString();
+
+    @Test
+    void splitsLikeSplitWithANegativeLimit() { // empty fields are kept
+        String[] lines = {
+            "POSITION_UPDATE<&!>1.5<&!>-2.0<&!>0<&!>0<&!>90<&!>42<&!>true",
+            "SEND_PUBLIC_MESSAGE<&!>bob<&!>",
+            "<&!><&!>",
+            "EXIT",
+            "",
+        };
+        ProtocolTokenizer tokenizer = new ProtocolTokenizer(SEPARATOR);
+
+        for (String line : lines) {
+            assertEquals(line.split(SEPARATOR, -1).length, tokenizer.tokenize(line), line);
+            assertArrayEquals(line.split(SEPARATOR, -1), tokenizer.toArray(), line);
+            assertEquals(tokenizer.size(), ProtocolTokenizer.count(line, SEPARATOR), line);
+        }
+    }
+
+    @Test
+    void parsesFieldsInPlace() {
+        ProtocolTokenizer tokenizer = new ProtocolTokenizer(SEPARATOR);
+        tokenizer.tokenize("POSITION_UPDATE<&!>1.5<&!>-2.0<&!>0<&!>0<&!>-90<&!>4200000000<&!>TRUE");
+
+        assertEquals("1.5", tokenizer.field(1).toString());
+        assertEquals(4, tokenizer.field(2).length());
+        assertEquals('-', tokenizer.field(2).charAt(0));
+        assertEquals(1.5, tokenizer.parseDouble(1));
+        assertEquals(-90, tokenizer.parseInt(5));
+        assertEquals(4200000000L, tokenizer.parseLong(6));
+        assertTrue(tokenizer.parseBoolean(7));
+        assertFalse(tokenizer.parseBoolean(4));
+        assertThrows(NumberFormatException.class, () -> tokenizer.parseInt(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> tokenizer.get(8));
+    }
+
+    @Test
+    void validatesNumbersWithoutExceptions() { // agrees with the parsers on every field
+        String[] fields = {
+            "0", "-0", "+7", "2147483647", "2147483648", "-2147483648", "-2147483649",
+            "9223372036854775807", "9223372036854775808", "-9223372036854775808", "",
+            "-", "+", "1a", " 1", "1.5", "-2.0", ".5", "5.", ".", "1e10", "1.5E-3", "1e",
+            "1e+", "NaN", "-Infinity", "Infinity", "Inf", "NaNa", "0x10", "1d", "true",
+        };
+        ProtocolTokenizer tokenizer = new ProtocolTokenizer(SEPARATOR);
+        tokenizer.tokenize(String.join(SEPARATOR, fields));
+
+        for (int i = 0; i < fields.length; i++) {
+            String field = fields[i];
+            assertEquals(parses(() -> Integer.parseInt(field)), tokenizer.isInt(i), field);
+            assertEquals(parses(() -> Long.parseLong(field)), tokenizer.isLong(i), field);
+            // Stricter than Double.parseDouble, which also reads hexadecimal and suffixes
+            boolean decimal = parses(() -> Double.parseDouble(field))
+                    && !field.startsWith("0x") && !field.endsWith("d") && !field.startsWith(" ");
+            assertEquals(decimal, tokenizer.isDouble(i), field);
+        }
+    }
+
+    /**
+     * Whether a parser accepts its input.
+     */
+    private static boolean parses(Runnable parser) {
+        try {
+            parser.run();
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @Test
+    void treatsSeparatorsAsLiterals() { // the separators contain the regex metacharacter "."
+        List<String> blocks = ProtocolTokenizer.split("1<&..>2<&.>3<&..>4<&x>", "<&.>");
+
+        assertEquals(List.of("1<&..>2", "3<&..>4<&x>"), blocks);
+        assertEquals(List.of(), ProtocolTokenizer.split("", "<&.>"));
+    }
+
+    @Test
+    void looksUpCommandsByName() { // without exceptions for unknown names
+        ProtocolNames<ServerProtocol> names = new ProtocolNames<>(ServerProtocol.values());
+        ProtocolTokenizer tokenizer = new ProtocolTokenizer(SEPARATOR);
+
+        for (ServerProtocol protocol : ServerProtocol.values()) {
+            tokenizer.tokenize(protocol.name() + SEPARATOR + "argument");
+            assertSame(protocol, names.lookup(tokenizer.field(0)));
+        }
+        for (ClientProtocol protocol : ClientProtocol.values()) {
+            assertSame(protocol, ClientProtocol.fromName(protocol.name()));
+        }
+        assertNull(ServerProtocol.fromName("position_update"));
+        assertNull(ServerProtocol.fromName(""));
+        assertNull(ClientProtocol.fromName("POSITION_UPDATE"));
+    }
+}
@@ -0,0 +1,42 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the VersionedList class.
+ */
+class VersionedListTest {
+
+    @Test
+    void keepsSortedListsInTheOrderOfTheSnapshot() { // e.g. the highscores after a delta
+        VersionedList server = new VersionedList(0, SortHighscores.ORDER);
+        VersionedList client = new VersionedList(-1, SortHighscores.ORDER);
+        server.update(List.of("game1 3 true", "game2 1 true"));
+        client.reset(server.getSeq(), server.getEntries());
+
+        ListDelta delta = server.update(List.of("game1 3 true", "game2 5 false", "game3 3 true"));
+        assertTrue(client.apply(server.getSeq(), delta));
+
+        assertEquals(List.of("game2 5 false", "game1 3 true", "game3 3 true"), client.getEntries());
+        assertEquals(server.getEntries(), client.getEntries());
+    }
+
+    @Test
+    void asksForASnapshotAfterAMissedDelta() {
+        VersionedList server = new VersionedList();
+        VersionedList client = new VersionedList(-1);
+        assertFalse(client.apply(1, new ListDelta(List.of("alice"), List.of())));
+
+        server.update(List.of("alice"));
+        client.reset(server.getSeq(), server.getEntries());
+        server.update(List.of("alice", "bob"));
+        ListDelta missed = server.update(List.of("bob"));
+
+        assertFalse(client.apply(server.getSeq(), missed));
+        assertEquals(List.of("alice"), client.getEntries());
+    }
+}